@@ -13,6 +13,8 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import hudson.FilePath;
 
+import io.jenkins.plugins.prism.PrismEvents.FilePermissionEvent;
+
 /**
  * Enforces security restrictions for viewing files in Jenkins. Some plugins copy source code files to Jenkins' build
  * folder so that these files can be rendered in the user interface together with build results (coverage, warnings,
@@ -56,6 +58,27 @@ public class FilePermissionEnforcer {
      * @return {@code true} if the file is in the workspace, {@code false} otherwise
      */
     public boolean isInWorkspace(final String fileName, final FilePath workspace, final Set<String> permittedDirectories) {
+        long start = System.nanoTime();
+        var event = new FilePermissionEvent();
+        event.begin();
+        boolean isPermitted = false;
+        try {
+            isPermitted = isInPermittedDirectory(fileName, workspace, permittedDirectories);
+            return isPermitted;
+        }
+        finally {
+            PrismMetrics.getInstance().stop(PrismMetrics.PERMISSION, start);
+            if (event.shouldCommit()) {
+                event.fileName = fileName;
+                event.permittedDirectories = permittedDirectories.size();
+                event.permitted = isPermitted;
+                event.commit();
+            }
+        }
+    }
+
+    private boolean isInPermittedDirectory(final String fileName, final FilePath workspace,
+            final Set<String> permittedDirectories) {
         String sourceFile = PATH_UTIL.getAbsolutePath(fileName);
         Set<String> permittedAbsolutePaths = permittedDirectories.stream()
                 .map(PATH_UTIL::getAbsolutePath)
@@ -0,0 +1,249 @@
+package io.jenkins.plugins.prism;
+
+/**
+ * Writes compact HTML markup directly into a character buffer. In contrast to a DOM based HTML builder, no tree of tag
+ * objects is created and the content is neither copied into intermediate strings nor formatted afterward. The buffer
+ * is reused by subsequent writers of the same platform thread, as long as it does not exceed a capacity of 256K
+ * characters (512 KB). Larger buffers are released, so each thread of a pool retains at most this capacity. Virtual
+ * threads render a single view only, so their buffer is never reused and will be released with the thread.
+ *
+ * <p>
+ * Text content and attribute values are escaped, raw content is appended as is. The caller is responsible for
+ * writing well-formed markup: each tag that has been opened with {@link #startTag(String, String...)} must be
+ * completed with {@link #closeStartTag()} and closed with {@link #endTag(String)}.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+final class HtmlWriter {
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<>();
+
+    /**
+     * Creates a new writer that uses the buffer of the current thread, if available.
+     *
+     * @return the writer
+     */
+    static HtmlWriter create() {
+        StringBuilder buffer = BUFFER.get();
+        if (buffer == null) {
+            return new HtmlWriter(new StringBuilder(INITIAL_CAPACITY));
+        }
+        BUFFER.remove(); // a nested writer of the same thread must not use the same buffer
+        buffer.setLength(0);
+        return new HtmlWriter(buffer);
+    }
+
+    private final StringBuilder html;
+
+    private HtmlWriter(final StringBuilder html) {
+        this.html = html;
+    }
+
+    /**
+     * Writes the start of an opening tag with the specified classes. Attributes may be added using
+     * {@link #attribute(String, Object)} before the tag is completed with {@link #closeStartTag()}.
+     *
+     * @param tag
+     *         the name of the tag
+     * @param classes
+     *         the classes of the element, might be empty
+     *
+     * @return this
+     */
+    HtmlWriter startTag(final String tag, final String... classes) {
+        html.append('<').append(tag);
+        if (classes.length > 0) {
+            html.append(" class=\"");
+            for (int i = 0; i < classes.length; i++) {
+                if (i > 0) {
+                    html.append(' ');
+                }
+                appendEscaped(classes[i], 0, classes[i].length());
+            }
+            html.append('"');
+        }
+        return this;
+    }
+
+    /**
+     * Writes an attribute of the current opening tag.
+     *
+     * @param name
+     *         the name of the attribute
+     * @param value
+     *         the value of the attribute, will be escaped
+     *
+     * @return this
+     */
+    HtmlWriter attribute(final String name, final Object value) {
+        String text = String.valueOf(value);
+        html.append(' ').append(name).append("=\"");
+        appendEscaped(text, 0, text.length());
+        html.append('"');
+        return this;
+    }
+
+    /**
+     * Completes the current opening tag.
+     *
+     * @return this
+     */
+    HtmlWriter closeStartTag() {
+        html.append('>');
+        return this;
+    }
+
+    /**
+     * Writes a closing tag.
+     *
+     * @param tag
+     *         the name of the tag
+     *
+     * @return this
+     */
+    HtmlWriter endTag(final String tag) {
+        html.append("</").append(tag).append('>');
+        return this;
+    }
+
+    /**
+     * Writes an element with the specified classes and text content.
+     *
+     * @param tag
+     *         the name of the tag
+     * @param text
+     *         the text content, will be escaped
+     * @param classes
+     *         the classes of the element, might be empty
+     *
+     * @return this
+     */
+    HtmlWriter element(final String tag, final CharSequence text, final String... classes) {
+        return startTag(tag, classes).closeStartTag().text(text).endTag(tag);
+    }
+
+    /**
+     * Writes the specified text. Special HTML characters will be escaped.
+     *
+     * @param text
+     *         the text
+     *
+     * @return this
+     */
+    HtmlWriter text(final CharSequence text) {
+        return text(text, 0, text.length());
+    }
+
+    /**
+     * Writes the specified range of the text. Special HTML characters will be escaped.
+     *
+     * @param text
+     *         the text
+     * @param start
+     *         the index of the first character to write
+     * @param end
+     *         the index after the last character to write
+     *
+     * @return this
+     */
+    HtmlWriter text(final CharSequence text, final int start, final int end) {
+        appendEscaped(text, start, end);
+        return this;
+    }
+
+    /**
+     * Writes the specified markup without escaping.
+     *
+     * @param markup
+     *         the markup
+     *
+     * @return this
+     */
+    HtmlWriter raw(final CharSequence markup) {
+        html.append(markup);
+        return this;
+    }
+
+    /**
+     * Writes the specified range of the markup without escaping.
+     *
+     * @param markup
+     *         the markup
+     * @param start
+     *         the index of the first character to write
+     * @param end
+     *         the index after the last character to write
+     *
+     * @return this
+     */
+    HtmlWriter raw(final CharSequence markup, final int start, final int end) {
+        html.append(markup, start, end);
+        return this;
+    }
+
+    /**
+     * Writes the specified character without escaping.
+     *
+     * @param character
+     *         the character
+     *
+     * @return this
+     */
+    HtmlWriter raw(final char character) {
+        html.append(character);
+        return this;
+    }
+
+    /**
+     * Writes the specified number without creating an intermediate string.
+     *
+     * @param number
+     *         the number
+     *
+     * @return this
+     */
+    HtmlWriter raw(final int number) {
+        html.append(number);
+        return this;
+    }
+
+    /**
+     * Returns the written markup. The buffer of this writer will be released for reuse, so this writer must not be
+     * used afterward.
+     *
+     * @return the markup
+     */
+    String toHtml() {
+        String markup = html.toString();
+        if (html.capacity() <= MAX_RETAINED_CAPACITY) {
+            html.setLength(0);
+            BUFFER.set(html);
+        }
+        return markup;
+    }
+
+    private void appendEscaped(final CharSequence text, final int start, final int end) {
+        int unescaped = start;
+        for (int position = start; position < end; position++) {
+            String entity = getEntity(text.charAt(position));
+            if (entity != null) {
+                html.append(text, unescaped, position).append(entity);
+                unescaped = position + 1;
+            }
+        }
+        html.append(text, unescaped, end);
+    }
+
+    @SuppressWarnings("PMD.AvoidReturningNull")
+    private static String getEntity(final char c) {
+        return switch (c) {
+            case '<' -> "&lt;";
+            case '>' -> "&gt;";
+            case '&' -> "&amp;";
+            case '"' -> "&quot;";
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,143 @@
+package io.jenkins.plugins.prism;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.regex.Pattern;
+
+/**
+ * Decorates the lines of a source code file with CSS classes, e.g., to show the coverage of each line or the results
+ * of a profiler. The decorations are defined by primitive arrays or a {@link BitSet} and a small palette of CSS
+ * classes, so even decorations of very large files require no object per line. Subsequent lines with the same CSS
+ * class are wrapped into a single element when the source code is rendered.
+ *
+ * <p>
+ * The following CSS classes are provided by this plugin: {@code prism-line-covered}, {@code prism-line-partial}, and
+ * {@code prism-line-missed}. Plugins can use their own CSS classes as well.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+public final class LineDecorations {
+    private static final Pattern CSS_CLASS = Pattern.compile("-?[_a-zA-Z][_a-zA-Z0-9-]*");
+    private static final int MAX_PALETTE_SIZE = 64;
+
+    /** Decorations that do not decorate any line. */
+    public static final LineDecorations NONE = new LineDecorations(line -> 0);
+
+    /**
+     * Creates decorations that assign a CSS class of the palette to each line. The element {@code n} of the array
+     * defines the decoration of line {@code n + 1}: the value {@code 0} means no decoration, the value {@code i}
+     * selects the CSS class {@code palette[i - 1]}. Other values are ignored.
+     *
+     * @param paletteIndexes
+     *         the index of the CSS class in the palette for each line (starting with line 1)
+     * @param palette
+     *         the CSS classes
+     *
+     * @return the decorations
+     * @throws IllegalArgumentException
+     *         if the palette is too large or contains invalid CSS class names
+     */
+    public static LineDecorations fromPalette(final int[] paletteIndexes, final String... palette) {
+        int[] indexes = Arrays.copyOf(paletteIndexes, paletteIndexes.length);
+        return new LineDecorations(line -> line > 0 && line <= indexes.length ? indexes[line - 1] : 0, palette);
+    }
+
+    /**
+     * Creates decorations that show the coverage of each line. The element {@code n} of the array contains the
+     * number of hits of line {@code n + 1}: lines with a negative value are not decorated (since they contain no
+     * code), lines without hits get the CSS class {@code missedClass}, and lines with hits get the CSS class
+     * {@code coveredClass}.
+     *
+     * @param hits
+     *         the number of hits for each line (starting with line 1)
+     * @param missedClass
+     *         the CSS class of lines without hits
+     * @param coveredClass
+     *         the CSS class of lines with hits
+     *
+     * @return the decorations
+     * @throws IllegalArgumentException
+     *         if the CSS class names are invalid
+     */
+    public static LineDecorations fromHits(final int[] hits, final String missedClass, final String coveredClass) {
+        int[] counts = Arrays.copyOf(hits, hits.length);
+        return new LineDecorations(line -> {
+            if (line < 1 || line > counts.length || counts[line - 1] < 0) {
+                return 0;
+            }
+            return counts[line - 1] == 0 ? 1 : 2;
+        }, missedClass, coveredClass);
+    }
+
+    /**
+     * Creates decorations that assign the same CSS class to a set of lines. Bit {@code n} of the set represents line
+     * {@code n}.
+     *
+     * @param lines
+     *         the lines to decorate
+     * @param cssClass
+     *         the CSS class of the decorated lines
+     *
+     * @return the decorations
+     * @throws IllegalArgumentException
+     *         if the CSS class name is invalid
+     */
+    public static LineDecorations fromLines(final BitSet lines, final String cssClass) {
+        BitSet decorated = (BitSet) lines.clone();
+        return new LineDecorations(line -> line >= 0 && decorated.get(line) ? 1 : 0, cssClass);
+    }
+
+    private final PaletteLookup lookup;
+    private final String[] palette;
+
+    private LineDecorations(final PaletteLookup lookup, final String... palette) {
+        if (palette.length > MAX_PALETTE_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                    "Palette contains %d CSS classes, only %d are supported", palette.length, MAX_PALETTE_SIZE));
+        }
+        for (String cssClass : palette) {
+            if (cssClass == null || !CSS_CLASS.matcher(cssClass).matches()) {
+                throw new IllegalArgumentException(String.format("Invalid CSS class name '%s'", cssClass));
+            }
+        }
+        this.lookup = lookup;
+        this.palette = palette.clone();
+    }
+
+    /**
+     * Returns whether these decorations do not decorate any line.
+     *
+     * @return {@code true} if no line is decorated, {@code false} otherwise
+     */
+    public boolean isEmpty() {
+        return palette.length == 0;
+    }
+
+    /**
+     * Returns the CSS class of the specified line.
+     *
+     * @param line
+     *         the line number (starting with 1)
+     *
+     * @return the CSS class, or {@code null} if the line is not decorated
+     */
+    @CheckForNull
+    public String getCssClass(final int line) {
+        int index = lookup.getPaletteIndex(line);
+        if (index < 1 || index > palette.length) {
+            return null;
+        }
+        return palette[index - 1];
+    }
+
+    /**
+     * Returns the index of the CSS class in the palette for a line.
+     */
+    @FunctionalInterface
+    private interface PaletteLookup {
+        int getPaletteIndex(int line);
+    }
+}
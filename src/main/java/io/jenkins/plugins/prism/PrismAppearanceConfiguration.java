@@ -1,8 +1,13 @@
 package io.jenkins.plugins.prism;
 
+import org.apache.commons.lang3.StringUtils;
+
 import edu.hm.hafner.util.VisibleForTesting;
 import edu.umd.cs.findbugs.annotations.NonNull;
 
+import java.util.Arrays;
+import java.util.Optional;
+
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.verb.POST;
 import org.jenkinsci.Symbol;
@@ -11,6 +16,7 @@ import hudson.util.ListBoxModel;
 import jenkins.appearance.AppearanceCategory;
 import jenkins.model.GlobalConfigurationCategory;
 import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
 
 import io.jenkins.plugins.util.GlobalConfigurationFacade;
 import io.jenkins.plugins.util.GlobalConfigurationItem;
@@ -29,6 +35,11 @@ import io.jenkins.plugins.util.JenkinsFacade;
  *      <b>Theme</b>: Prism supports several themes that can be used to adapt the look and feel. You can configure the
  *      default theme used for all Jenkins jobs.
  *     </li>
+ *     <li>
+ *      <b>Dark mode theme</b>: An optional theme that is used if the browser prefers a dark color scheme. If not set,
+ *      the theme above is used in light and dark mode. If neither a theme nor a dark mode theme has been selected, then
+ *      the theme is chosen by the <a href="https://plugins.jenkins.io/theme-manager/">theme manager</a> of Jenkins.
+ *     </li>
  * </ul>
  *
  * @author Ullrich Hafner
@@ -37,6 +48,7 @@ import io.jenkins.plugins.util.JenkinsFacade;
 @Symbol("prism")
 public class PrismAppearanceConfiguration extends GlobalConfigurationItem {
     private PrismTheme theme = PrismTheme.PRISM;
+    private String darkTheme = StringUtils.EMPTY;
     private final JenkinsFacade jenkins;
 
     /**
@@ -94,6 +106,72 @@ public class PrismAppearanceConfiguration extends GlobalConfigurationItem {
         return theme;
     }
 
+    /**
+     * Sets the theme to be used when rendering the source code with prism and the browser prefers a dark color scheme.
+     *
+     * @param darkTheme
+     *         the name of the theme to use, or an empty string to use the same theme as in light mode
+     */
+    @DataBoundSetter
+    public void setDarkTheme(final String darkTheme) {
+        this.darkTheme = findTheme(darkTheme).map(PrismTheme::name).orElse(StringUtils.EMPTY);
+
+        save();
+    }
+
+    public String getDarkTheme() {
+        return StringUtils.defaultString(darkTheme);
+    }
+
+    private static Optional<PrismTheme> findTheme(final String name) {
+        return Arrays.stream(PrismTheme.values()).filter(theme -> theme.name().equals(name)).findAny();
+    }
+
+    /**
+     * Returns the URL of the combined stylesheet of the selected theme, relative to the root URL of Jenkins. The URL
+     * contains a hash of the content so that the stylesheet can be cached by browsers forever.
+     *
+     * @return the URL of the stylesheet
+     */
+    public String getStylesheetUrl() {
+        return PrismStylesheet.of(getTheme()).getUrl();
+    }
+
+    /**
+     * Returns the URL of the combined stylesheet of the dark mode theme, relative to the root URL of Jenkins.
+     *
+     * @return the URL of the stylesheet, or an empty string if no dark mode theme has been selected
+     */
+    public String getDarkStylesheetUrl() {
+        return findTheme(getDarkTheme()).map(PrismStylesheet::of).map(PrismStylesheet::getUrl)
+                .orElse(StringUtils.EMPTY);
+    }
+
+    /**
+     * Returns the URLs of the combined stylesheets of all themes, relative to the root URL of Jenkins. The URLs are
+     * mapped by the file names of the themes, so that the browser can select the stylesheet of the theme that has been
+     * chosen by the theme manager of Jenkins.
+     *
+     * @return the URLs of the stylesheets as a JSON object
+     */
+    public String getThemeStylesheetUrls() {
+        var urls = new JSONObject();
+        for (PrismTheme available : PrismTheme.values()) {
+            urls.put(available.getFileName(), PrismStylesheet.of(available).getUrl());
+        }
+        return urls.toString();
+    }
+
+    /**
+     * Returns whether the theme manager of Jenkins selects the theme. This is the case if the default theme is used
+     * and no dark mode theme has been selected.
+     *
+     * @return {@code true} if the theme manager selects the theme, {@code false} otherwise
+     */
+    public boolean isThemeManagerEnabled() {
+        return getTheme() == PrismTheme.PRISM && StringUtils.isEmpty(darkTheme);
+    }
+
     /**
      * Returns all available themes.
      *
@@ -107,4 +185,19 @@ public class PrismAppearanceConfiguration extends GlobalConfigurationItem {
         }
         return options;
     }
+
+    /**
+     * Returns all available themes for the dark mode.
+     *
+     * @return a model with all available themes
+     */
+    @POST
+    public ListBoxModel doFillDarkThemeItems() {
+        ListBoxModel options = new ListBoxModel();
+        if (jenkins.hasPermission(Jenkins.ADMINISTER)) {
+            options.add(Messages.PrismTheme_SameAsTheme(), StringUtils.EMPTY);
+            options.addAll(PrismTheme.getAllDisplayNames());
+        }
+        return options;
+    }
 }
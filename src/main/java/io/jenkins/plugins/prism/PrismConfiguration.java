@@ -36,6 +36,30 @@ import io.jenkins.plugins.util.GlobalConfigurationItem;
  *      that are allowed to be shown in Jenkins user interface here. Note, that such a directory must be an absolute path
  *      on the agent that executes the build.
  *     </li>
+ *     <li>
+ *      <b>Source code retention</b>: the limits used by the {@link SourceCodeRetention} strategies
+ *      {@link SourceCodeRetention#LAST_BUILDS}, {@link SourceCodeRetention#LAST_DAYS}, and
+ *      {@link SourceCodeRetention#DISK_QUOTA}.
+ *     </li>
+ *     <li>
+ *      <b>Maximum rendered size</b>: source code views stop reading a file after this number of kilobytes. The
+ *      remaining lines can be loaded on demand.
+ *     </li>
+ *     <li>
+ *      <b>Rendering tiers</b>: the sizes of source code files (number of lines and size in kilobytes) above which the
+ *      expensive client side features of Prism are disabled: first the bracket matching, then the line numbers
+ *      created in the browser (replaced by line numbers rendered on the server), and finally the syntax highlighting.
+ *      See {@link RenderingTiers}. Files that contain a line that is longer than the maximum line length are shown
+ *      without syntax highlighting as well.
+ *     </li>
+ *     <li>
+ *      <b>Slow rendering threshold</b>: renderings of source code files that take longer than this number of
+ *      milliseconds will be logged.
+ *     </li>
+ *     <li>
+ *      <b>Single block</b>: renders the whole source code file in a single block of code. The marked lines are then
+ *      highlighted by Prism and the description of the marker is shown as an overlay.
+ *     </li>
  * </ul>
  *
  * @author Ullrich Hafner
@@ -44,6 +68,11 @@ import io.jenkins.plugins.util.GlobalConfigurationItem;
 @Symbol("prism")
 public class PrismConfiguration extends GlobalConfigurationItem {
     private static final PathUtil PATH_UTIL = new PathUtil();
+    private static final int DEFAULT_RETENTION_BUILDS = 10;
+    private static final int DEFAULT_RETENTION_DAYS = 30;
+    private static final int DEFAULT_RETENTION_QUOTA = 1024;
+    private static final int DEFAULT_MAX_RENDERED_SIZE = 10 * 1024;
+    private static final int DEFAULT_RENDERING_DEADLINE = 5;
 
     private List<PermittedSourceCodeDirectory> sourceDirectories = Collections.emptyList();
     private Set<String> normalizedSourceDirectories = Collections.emptySet();
@@ -54,6 +83,20 @@ public class PrismConfiguration extends GlobalConfigurationItem {
     @SuppressFBWarnings(value = "UUF_UNUSED_FIELD", justification = "Kept for compatibility")
     private transient PrismTheme theme;
     private boolean protectSourceCodeByPermission;
+    private int sourceCodeRetentionBuilds = DEFAULT_RETENTION_BUILDS;
+    private int sourceCodeRetentionDays = DEFAULT_RETENTION_DAYS;
+    private int sourceCodeRetentionQuota = DEFAULT_RETENTION_QUOTA;
+    private int maxRenderedSize = DEFAULT_MAX_RENDERED_SIZE;
+    private int renderingDeadline = DEFAULT_RENDERING_DEADLINE;
+    private int matchBracesMaxLines = RenderingTiers.DEFAULT_MATCH_BRACES_LINES;
+    private int matchBracesMaxSize = RenderingTiers.DEFAULT_MATCH_BRACES_SIZE;
+    private int clientLineNumbersMaxLines = RenderingTiers.DEFAULT_CLIENT_LINE_NUMBERS_LINES;
+    private int clientLineNumbersMaxSize = RenderingTiers.DEFAULT_CLIENT_LINE_NUMBERS_SIZE;
+    private int highlightingMaxLines = RenderingTiers.DEFAULT_HIGHLIGHTING_LINES;
+    private int highlightingMaxSize = RenderingTiers.DEFAULT_HIGHLIGHTING_SIZE;
+    private int maxLineLength = SourcePrinter.DEFAULT_MAX_LINE_LENGTH;
+    private long slowRenderThreshold = SourcePrinter.DEFAULT_SLOW_RENDER_THRESHOLD;
+    private boolean singleBlock;
 
     /**
      * Creates the global configuration of source code directories and loads the initial values from the corresponding
@@ -121,6 +164,15 @@ public class PrismConfiguration extends GlobalConfigurationItem {
         save();
     }
 
+    /**
+     * Returns the appearance configuration that defines the themes and stylesheets of the source code views.
+     *
+     * @return the appearance configuration
+     */
+    public PrismAppearanceConfiguration getAppearance() {
+        return PrismAppearanceConfiguration.getInstance();
+    }
+
     /**
      * For maintaining compatibility after the move to {@link PrismAppearanceConfiguration}.
      *
@@ -165,4 +217,372 @@ public class PrismConfiguration extends GlobalConfigurationItem {
 
         save();
     }
+
+    /**
+     * Returns the number of builds whose source code files are retained when using
+     * {@link SourceCodeRetention#LAST_BUILDS}.
+     *
+     * @return the number of builds
+     */
+    public int getSourceCodeRetentionBuilds() {
+        return sourceCodeRetentionBuilds;
+    }
+
+    /**
+     * Sets the number of builds whose source code files are retained when using
+     * {@link SourceCodeRetention#LAST_BUILDS}.
+     *
+     * @param sourceCodeRetentionBuilds
+     *         the number of builds
+     */
+    @DataBoundSetter
+    public void setSourceCodeRetentionBuilds(final int sourceCodeRetentionBuilds) {
+        this.sourceCodeRetentionBuilds = Math.max(1, sourceCodeRetentionBuilds);
+
+        save();
+    }
+
+    /**
+     * Returns the number of days the source code files of a build are retained when using
+     * {@link SourceCodeRetention#LAST_DAYS}.
+     *
+     * @return the number of days
+     */
+    public int getSourceCodeRetentionDays() {
+        return sourceCodeRetentionDays;
+    }
+
+    /**
+     * Sets the number of days the source code files of a build are retained when using
+     * {@link SourceCodeRetention#LAST_DAYS}.
+     *
+     * @param sourceCodeRetentionDays
+     *         the number of days
+     */
+    @DataBoundSetter
+    public void setSourceCodeRetentionDays(final int sourceCodeRetentionDays) {
+        this.sourceCodeRetentionDays = Math.max(1, sourceCodeRetentionDays);
+
+        save();
+    }
+
+    /**
+     * Returns the maximum size (in MB) of the source code files retained for a job when using
+     * {@link SourceCodeRetention#DISK_QUOTA}.
+     *
+     * @return the quota in MB
+     */
+    public int getSourceCodeRetentionQuota() {
+        return sourceCodeRetentionQuota;
+    }
+
+    /**
+     * Sets the maximum size (in MB) of the source code files retained for a job when using
+     * {@link SourceCodeRetention#DISK_QUOTA}.
+     *
+     * @param sourceCodeRetentionQuota
+     *         the quota in MB
+     */
+    @DataBoundSetter
+    public void setSourceCodeRetentionQuota(final int sourceCodeRetentionQuota) {
+        this.sourceCodeRetentionQuota = Math.max(1, sourceCodeRetentionQuota);
+
+        save();
+    }
+
+    /**
+     * Returns the maximum size (in KB) of a source code file that will be rendered at once. Larger files are truncated,
+     * the remaining lines can be loaded on demand.
+     *
+     * @return the maximum size in KB
+     */
+    public int getMaxRenderedSize() {
+        return maxRenderedSize;
+    }
+
+    /**
+     * Sets the maximum size (in KB) of a source code file that will be rendered at once.
+     *
+     * @param maxRenderedSize
+     *         the maximum size in KB
+     */
+    @DataBoundSetter
+    public void setMaxRenderedSize(final int maxRenderedSize) {
+        this.maxRenderedSize = Math.max(1, maxRenderedSize);
+
+        save();
+    }
+
+    /**
+     * Returns the maximum number of characters of a source code file that will be rendered at once.
+     *
+     * @return the maximum number of characters
+     * @see #getMaxRenderedSize()
+     */
+    public int getMaxRenderedCharacters() {
+        return (int) Math.min(Integer.MAX_VALUE, maxRenderedSize * 1024L);
+    }
+
+    /**
+     * Returns the number of seconds a request waits for a source code view to be rendered. If the view is not ready by
+     * then, a placeholder will be shown that loads the view as soon as it has been rendered.
+     *
+     * @return the deadline in seconds
+     */
+    public int getRenderingDeadline() {
+        return renderingDeadline;
+    }
+
+    /**
+     * Sets the number of seconds a request waits for a source code view to be rendered.
+     *
+     * @param renderingDeadline
+     *         the deadline in seconds
+     */
+    @DataBoundSetter
+    public void setRenderingDeadline(final int renderingDeadline) {
+        this.renderingDeadline = Math.max(0, renderingDeadline);
+
+        save();
+    }
+
+    /**
+     * Returns the maximum number of lines of a source code file that is shown with matching brackets.
+     *
+     * @return the maximum number of lines
+     */
+    public int getMatchBracesMaxLines() {
+        return matchBracesMaxLines;
+    }
+
+    /**
+     * Sets the maximum number of lines of a source code file that is shown with matching brackets.
+     *
+     * @param matchBracesMaxLines
+     *         the maximum number of lines
+     */
+    @DataBoundSetter
+    public void setMatchBracesMaxLines(final int matchBracesMaxLines) {
+        this.matchBracesMaxLines = Math.max(0, matchBracesMaxLines);
+
+        save();
+    }
+
+    /**
+     * Returns the maximum size (in KB) of a source code file that is shown with matching brackets.
+     *
+     * @return the maximum size in KB
+     */
+    public int getMatchBracesMaxSize() {
+        return matchBracesMaxSize;
+    }
+
+    /**
+     * Sets the maximum size (in KB) of a source code file that is shown with matching brackets.
+     *
+     * @param matchBracesMaxSize
+     *         the maximum size in KB
+     */
+    @DataBoundSetter
+    public void setMatchBracesMaxSize(final int matchBracesMaxSize) {
+        this.matchBracesMaxSize = Math.max(0, matchBracesMaxSize);
+
+        save();
+    }
+
+    /**
+     * Returns the maximum number of lines of a source code file whose line numbers are created in the browser. Larger
+     * files get line numbers that are rendered on the server.
+     *
+     * @return the maximum number of lines
+     */
+    public int getClientLineNumbersMaxLines() {
+        return clientLineNumbersMaxLines;
+    }
+
+    /**
+     * Sets the maximum number of lines of a source code file whose line numbers are created in the browser.
+     *
+     * @param clientLineNumbersMaxLines
+     *         the maximum number of lines
+     */
+    @DataBoundSetter
+    public void setClientLineNumbersMaxLines(final int clientLineNumbersMaxLines) {
+        this.clientLineNumbersMaxLines = Math.max(0, clientLineNumbersMaxLines);
+
+        save();
+    }
+
+    /**
+     * Returns the maximum size (in KB) of a source code file whose line numbers are created in the browser. Larger
+     * files get line numbers that are rendered on the server.
+     *
+     * @return the maximum size in KB
+     */
+    public int getClientLineNumbersMaxSize() {
+        return clientLineNumbersMaxSize;
+    }
+
+    /**
+     * Sets the maximum size (in KB) of a source code file whose line numbers are created in the browser.
+     *
+     * @param clientLineNumbersMaxSize
+     *         the maximum size in KB
+     */
+    @DataBoundSetter
+    public void setClientLineNumbersMaxSize(final int clientLineNumbersMaxSize) {
+        this.clientLineNumbersMaxSize = Math.max(0, clientLineNumbersMaxSize);
+
+        save();
+    }
+
+    /**
+     * Returns the maximum number of lines of a source code file that is shown with syntax highlighting. Larger files
+     * are shown as plain text.
+     *
+     * @return the maximum number of lines
+     */
+    public int getHighlightingMaxLines() {
+        return highlightingMaxLines;
+    }
+
+    /**
+     * Sets the maximum number of lines of a source code file that is shown with syntax highlighting.
+     *
+     * @param highlightingMaxLines
+     *         the maximum number of lines
+     */
+    @DataBoundSetter
+    public void setHighlightingMaxLines(final int highlightingMaxLines) {
+        this.highlightingMaxLines = Math.max(0, highlightingMaxLines);
+
+        save();
+    }
+
+    /**
+     * Returns the maximum size (in KB) of a source code file that is shown with syntax highlighting. Larger files are
+     * shown as plain text.
+     *
+     * @return the maximum size in KB
+     */
+    public int getHighlightingMaxSize() {
+        return highlightingMaxSize;
+    }
+
+    /**
+     * Sets the maximum size (in KB) of a source code file that is shown with syntax highlighting.
+     *
+     * @param highlightingMaxSize
+     *         the maximum size in KB
+     */
+    @DataBoundSetter
+    public void setHighlightingMaxSize(final int highlightingMaxSize) {
+        this.highlightingMaxSize = Math.max(0, highlightingMaxSize);
+
+        save();
+    }
+
+    /**
+     * Returns the maximum number of characters of a line. Files that contain a longer line are shown without syntax
+     * highlighting, the long lines are truncated at this limit and the remaining characters can be expanded.
+     *
+     * @return the maximum number of characters of a line
+     */
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * Sets the maximum number of characters of a line that is shown with syntax highlighting.
+     *
+     * @param maxLineLength
+     *         the maximum number of characters of a line
+     */
+    @DataBoundSetter
+    public void setMaxLineLength(final int maxLineLength) {
+        this.maxLineLength = Math.max(1, maxLineLength);
+
+        save();
+    }
+
+    /**
+     * Returns the number of milliseconds after which the rendering of a source code file will be logged as slow.
+     *
+     * @return the threshold in milliseconds
+     */
+    public long getSlowRenderThreshold() {
+        return slowRenderThreshold;
+    }
+
+    /**
+     * Sets the number of milliseconds after which the rendering of a source code file will be logged as slow.
+     *
+     * @param slowRenderThreshold
+     *         the threshold in milliseconds
+     */
+    @DataBoundSetter
+    public void setSlowRenderThreshold(final long slowRenderThreshold) {
+        this.slowRenderThreshold = Math.max(0, slowRenderThreshold);
+
+        save();
+    }
+
+    /**
+     * Returns whether the whole source code file is rendered in a single block of code. Then, the marked lines are
+     * highlighted by the line-highlight plugin of Prism and the description of the marker is shown as an overlay.
+     * Otherwise, the file is split into separate blocks of code before, within, and after the marker.
+     *
+     * @return {@code true} if the file is rendered in a single block, {@code false} otherwise
+     */
+    public boolean isSingleBlock() {
+        return singleBlock;
+    }
+
+    /**
+     * Determines whether the whole source code file is rendered in a single block of code.
+     *
+     * @param singleBlock
+     *         {@code true} to render the file in a single block, {@code false} to split the file at the marker
+     */
+    @DataBoundSetter
+    public void setSingleBlock(final boolean singleBlock) {
+        this.singleBlock = singleBlock;
+
+        save();
+    }
+
+    /**
+     * Creates a printer that renders source code files with the limits of this configuration.
+     *
+     * @param characterBudget
+     *         the maximum number of characters to render
+     *
+     * @return the printer
+     */
+    SourcePrinter createPrinter(final int characterBudget) {
+        return new SourcePrinter(characterBudget, getRenderingTiers(), singleBlock, maxLineLength,
+                slowRenderThreshold);
+    }
+
+    /**
+     * Creates a printer that renders source code files with the limits of this configuration. The printer stops
+     * after the {@link #getMaxRenderedCharacters() maximum number of rendered characters}.
+     *
+     * @return the printer
+     */
+    SourcePrinter createPrinter() {
+        return createPrinter(getMaxRenderedCharacters());
+    }
+
+    /**
+     * Returns the rendering tiers that determine the client side features of Prism for a file of a given size.
+     *
+     * @return the rendering tiers
+     */
+    RenderingTiers getRenderingTiers() {
+        return new RenderingTiers(
+                RenderingTiers.Limit.of(matchBracesMaxLines, matchBracesMaxSize),
+                RenderingTiers.Limit.of(clientLineNumbersMaxLines, clientLineNumbersMaxSize),
+                RenderingTiers.Limit.of(highlightingMaxLines, highlightingMaxSize));
+    }
 }
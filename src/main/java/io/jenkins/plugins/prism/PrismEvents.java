@@ -0,0 +1,140 @@
+package io.jenkins.plugins.prism;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events that are emitted by this plugin. These events make the time spent in rendering,
+ * sanitizing, permission checks, and file system operations visible in JFR recordings of the Jenkins controller.
+ *
+ * @author Ullrich Hafner
+ */
+final class PrismEvents {
+    private static final String CATEGORY_JENKINS = "Jenkins";
+    private static final String CATEGORY_PRISM = "Prism API";
+
+    private PrismEvents() {
+        // prevents instantiation
+    }
+
+    /**
+     * Emitted when a source code file is rendered by {@link SourcePrinter}.
+     */
+    @Name("io.jenkins.plugins.prism.SourceRender")
+    @Label("Source Code Rendering")
+    @Category({CATEGORY_JENKINS, CATEGORY_PRISM})
+    @StackTrace(false)
+    static class SourceRenderEvent extends Event {
+        @Label("File Name")
+        String fileName;
+
+        @Label("Lines")
+        int lines;
+
+        @Label("Characters")
+        @Description("The number of decoded characters, not bytes")
+        long characters;
+
+        @Label("Longest Line")
+        int maxLineLength;
+
+        @Label("Syntax Highlighting")
+        @Description("Determines whether syntax highlighting has been enabled for the file")
+        boolean highlighting;
+    }
+
+    /**
+     * Emitted when an HTML snippet is sanitized by {@link Sanitizer}.
+     */
+    @Name("io.jenkins.plugins.prism.Sanitize")
+    @Label("HTML Sanitizing")
+    @Category({CATEGORY_JENKINS, CATEGORY_PRISM})
+    @StackTrace(false)
+    static class SanitizeEvent extends Event {
+        @Label("Characters")
+        @Description("The number of characters of the sanitized HTML, not bytes")
+        long characters;
+    }
+
+    /**
+     * Emitted when the workspace is scanned for source directories that match a glob or regular expression.
+     */
+    @Name("io.jenkins.plugins.prism.GlobWalk")
+    @Label("Source Directory Scan")
+    @Category({CATEGORY_JENKINS, CATEGORY_PRISM})
+    static class GlobWalkEvent extends Event {
+        @Label("Pattern")
+        String pattern;
+
+        @Label("Visited Entries")
+        int visited;
+
+        @Label("Matches")
+        int matches;
+
+        @Label("Failed")
+        @Description("Determines whether the scan has been aborted due to an error")
+        boolean failed;
+    }
+
+    /**
+     * Emitted when {@link FilePermissionEnforcer} checks whether a file is part of the workspace or of a permitted
+     * source directory.
+     */
+    @Name("io.jenkins.plugins.prism.FilePermission")
+    @Label("Source File Permission Check")
+    @Category({CATEGORY_JENKINS, CATEGORY_PRISM})
+    @StackTrace(false)
+    static class FilePermissionEvent extends Event {
+        @Label("File Name")
+        String fileName;
+
+        @Label("Permitted Directories")
+        int permittedDirectories;
+
+        @Label("Permitted")
+        boolean permitted;
+    }
+
+    /**
+     * Emitted when the permissions to view the source code of several builds are evaluated.
+     */
+    @Name("io.jenkins.plugins.prism.PermissionBatch")
+    @Label("Source Code Permission Check")
+    @Category({CATEGORY_JENKINS, CATEGORY_PRISM})
+    @StackTrace(false)
+    static class PermissionBatchEvent extends Event {
+        @Label("Builds")
+        int builds;
+
+        @Label("Evaluated Jobs")
+        int jobs;
+    }
+
+    /**
+     * Emitted when the stored source code files of old builds are cleaned up.
+     */
+    @Name("io.jenkins.plugins.prism.RetentionCleanup")
+    @Label("Source Code Cleanup")
+    @Category({CATEGORY_JENKINS, CATEGORY_PRISM})
+    @StackTrace(false)
+    static class RetentionCleanupEvent extends Event {
+        @Label("Job")
+        String job;
+
+        @Label("Directory")
+        String directory;
+
+        @Label("Deleted Builds")
+        int deletedBuilds;
+
+        @Label("Deleted Bytes")
+        @DataAmount(DataAmount.BYTES)
+        long deletedBytes;
+    }
+}
@@ -0,0 +1,156 @@
+package io.jenkins.plugins.prism;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.sf.json.JSONObject;
+
+/**
+ * Collects timers and counters for the hot paths of this plugin: rendering and sanitizing of source code, permission
+ * checks, source directory filtering, and the cleanup of stored source code files. The metrics are kept in memory
+ * and can be queried by administrators using {@link PrismMetricsAction}.
+ *
+ * @author Ullrich Hafner
+ */
+final class PrismMetrics {
+    /** Timer: rendering of a source code view. */
+    static final String RENDER = "render";
+    /** Counter: number of rendered lines. */
+    static final String RENDER_LINES = "render.lines";
+    /**
+     * Counter: number of rendered characters. The source code is decoded before it is rendered, so the size is
+     * counted in (UTF-16) characters rather than in bytes of the source code file.
+     */
+    static final String RENDER_CHARACTERS = "render.characters";
+    /** Counter: number of source code views that have not been rendered within the deadline. */
+    static final String RENDER_TIMEOUTS = "render.timeouts";
+    /** Timer: sanitizing of rendered source code. */
+    static final String SANITIZE = "sanitize";
+    /** Timer: permission checks for source code views. */
+    static final String PERMISSION = "permission";
+    /** Timer: filtering of source directories. */
+    static final String DIRECTORY_FILTER = "directoryFilter";
+    /** Counter: number of visited directories while filtering source directories. */
+    static final String DIRECTORY_FILTER_VISITED = "directoryFilter.visited";
+    /** Timer: cleanup of stored source code files. */
+    static final String CLEANUP = "cleanup";
+    /** Counter: number of builds whose stored source code files have been deleted. */
+    static final String CLEANUP_BUILDS = "cleanup.builds";
+    /** Counter: size of the deleted source code files in bytes. */
+    static final String CLEANUP_BYTES = "cleanup.bytes";
+
+    private static final PrismMetrics INSTANCE = new PrismMetrics();
+
+    /**
+     * Returns the singleton instance of the metrics.
+     *
+     * @return the metrics
+     */
+    static PrismMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentSkipListMap<>();
+
+    PrismMetrics() {
+        // use singleton or create a new instance in tests
+    }
+
+    /**
+     * Records the duration of an operation that has been started at the specified time.
+     *
+     * @param name
+     *         the name of the timer
+     * @param startNanos
+     *         the start of the operation, obtained by {@link System#nanoTime()}
+     *
+     * @return the duration of the operation in nanoseconds
+     */
+    long stop(final String name, final long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        timers.computeIfAbsent(name, key -> new Timer()).record(duration);
+        return duration;
+    }
+
+    /**
+     * Increments the specified counter.
+     *
+     * @param name
+     *         the name of the counter
+     * @param value
+     *         the value to add
+     */
+    void increment(final String name, final long value) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Returns the number of recorded durations of the specified timer.
+     *
+     * @param name
+     *         the name of the timer
+     *
+     * @return the number of recorded durations
+     */
+    long getCount(final String name) {
+        var timer = timers.get(name);
+        return timer == null ? 0 : timer.count.sum();
+    }
+
+    /**
+     * Returns the current value of the specified counter.
+     *
+     * @param name
+     *         the name of the counter
+     *
+     * @return the value
+     */
+    long getCounter(final String name) {
+        var counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Returns all metrics as a JSON object.
+     *
+     * @return the metrics
+     */
+    JSONObject toJson() {
+        var timersJson = new JSONObject();
+        timers.forEach((name, timer) -> timersJson.put(name, timer.toJson()));
+        var countersJson = new JSONObject();
+        counters.forEach((name, counter) -> countersJson.put(name, counter.sum()));
+
+        var json = new JSONObject();
+        json.put("timers", timersJson);
+        json.put("counters", countersJson);
+        return json;
+    }
+
+    private static final class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(final long durationNanos) {
+            count.increment();
+            totalNanos.add(durationNanos);
+            maxNanos.accumulate(durationNanos);
+        }
+
+        JSONObject toJson() {
+            var json = new JSONObject();
+            long total = totalNanos.sum();
+            long invocations = count.sum();
+            json.put("count", invocations);
+            json.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(total));
+            json.put("meanMillis", invocations == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(total / invocations));
+            json.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(maxNanos.get()));
+            return json;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.jenkins.plugins.prism;
+
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+
+import io.jenkins.plugins.util.JenkinsFacade;
+
+/**
+ * Exposes the {@link PrismMetrics} of this plugin as JSON at {@code /prism-metrics/}. This endpoint requires
+ * administrator permissions, it is not visible in the user interface.
+ *
+ * @author Ullrich Hafner
+ */
+@Extension
+public class PrismMetricsAction implements RootAction {
+    private final JenkinsFacade jenkins;
+    private final PrismMetrics metrics;
+
+    /**
+     * Creates a new instance of {@link PrismMetricsAction}.
+     */
+    public PrismMetricsAction() {
+        this(new JenkinsFacade(), PrismMetrics.getInstance());
+    }
+
+    @VisibleForTesting
+    PrismMetricsAction(final JenkinsFacade jenkins, final PrismMetrics metrics) {
+        this.jenkins = jenkins;
+        this.metrics = metrics;
+    }
+
+    @CheckForNull
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @CheckForNull
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return "prism-metrics";
+    }
+
+    /**
+     * Returns the collected metrics as JSON.
+     *
+     * @return the metrics, or a forbidden response if the user is not an administrator
+     */
+    public HttpResponse doIndex() {
+        if (!jenkins.hasPermission(Jenkins.ADMINISTER)) {
+            return HttpResponses.forbidden();
+        }
+        return HttpResponses.okJSON(metrics.toJson());
+    }
+}
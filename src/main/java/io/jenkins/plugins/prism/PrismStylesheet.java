@@ -0,0 +1,122 @@
+package io.jenkins.plugins.prism;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single stylesheet that combines the CSS of a {@link PrismTheme}, the CSS of the used Prism plugins, and the custom
+ * CSS of this plugin. The stylesheet is identified by a hash of its content, so browsers can cache it forever: the URL
+ * changes as soon as the content changes, e.g., after an update of this plugin.
+ *
+ * <p>
+ * The CSS files are copied into the class path during the build, see the {@code copy-css-bundle} execution in the POM.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+final class PrismStylesheet {
+    private static final Logger LOGGER = Logger.getLogger(PrismStylesheet.class.getName());
+    private static final String[] PLUGINS = {
+            "plugins/line-highlight/prism-line-highlight.css",
+            "plugins/line-numbers/prism-line-numbers.css",
+            "plugins/match-braces/prism-match-braces.css"
+    };
+    private static final String CUSTOM = "custom-prism.css";
+    private static final String THEMES = "themes/";
+    private static final int HASH_LENGTH = 8;
+    private static final Map<PrismTheme, PrismStylesheet> STYLESHEETS = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the combined stylesheet for the specified theme.
+     *
+     * @param theme
+     *         the theme
+     *
+     * @return the stylesheet
+     */
+    static PrismStylesheet of(final PrismTheme theme) {
+        return STYLESHEETS.computeIfAbsent(theme, PrismStylesheet::create);
+    }
+
+    private static PrismStylesheet create(final PrismTheme theme) {
+        var css = new ByteArrayOutputStream(64 * 1024);
+        for (String plugin : PLUGINS) {
+            append(css, plugin);
+        }
+        append(css, THEMES + theme.getFileName());
+        append(css, CUSTOM);
+        return new PrismStylesheet(theme, css.toByteArray());
+    }
+
+    private static void append(final ByteArrayOutputStream css, final String name) {
+        try (InputStream input = PrismStylesheet.class.getResourceAsStream("css/" + name)) {
+            if (input == null) {
+                LOGGER.log(Level.WARNING, "Stylesheet ''{0}'' is missing in the class path", name);
+                return;
+            }
+            css.writeBytes(String.format("/* %s */%n", name).getBytes(StandardCharsets.UTF_8));
+            input.transferTo(css);
+            css.write('\n');
+        }
+        catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Can't read stylesheet " + name, exception);
+        }
+    }
+
+    private final PrismTheme theme;
+    private final byte[] content;
+    private final String hash;
+
+    private PrismStylesheet(final PrismTheme theme, final byte[] content) {
+        this.theme = theme;
+        this.content = content;
+        this.hash = computeHash(content);
+    }
+
+    private static String computeHash(final byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return HexFormat.of().formatHex(digest, 0, HASH_LENGTH);
+        }
+        catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", exception);
+        }
+    }
+
+    /**
+     * Returns the hash of the content of this stylesheet.
+     *
+     * @return the hash
+     */
+    String getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the content of this stylesheet.
+     *
+     * @return the UTF-8 encoded CSS
+     */
+    byte[] getContent() {
+        return Arrays.copyOf(content, content.length);
+    }
+
+    /**
+     * Returns the URL of this stylesheet, relative to the root URL of Jenkins.
+     *
+     * @return the URL
+     */
+    String getUrl() {
+        return PrismStylesheetAction.URL_NAME + "/" + hash + "/" + theme.name() + ".css";
+    }
+}
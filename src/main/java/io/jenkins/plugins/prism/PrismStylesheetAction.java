@@ -0,0 +1,85 @@
+package io.jenkins.plugins.prism;
+
+import org.apache.commons.lang3.StringUtils;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import hudson.Extension;
+import hudson.model.RootAction;
+
+/**
+ * Serves the combined {@link PrismStylesheet stylesheets} of the Prism themes at
+ * {@code /prism-css/<hash>/<theme>.css}. Since the URL contains the hash of the content, the stylesheets are served
+ * with headers that allow browsers to cache them forever. This endpoint is not visible in the user interface.
+ *
+ * @author Ullrich Hafner
+ */
+@Extension
+public class PrismStylesheetAction implements RootAction {
+    /** The URL of this action. */
+    static final String URL_NAME = "prism-css";
+    private static final String CSS_SUFFIX = ".css";
+
+    @CheckForNull
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @CheckForNull
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * Serves the stylesheet that is referenced by the rest of the URL.
+     *
+     * @param request
+     *         the request, the rest of the path must consist of the hash and the name of the theme
+     * @param response
+     *         the response
+     *
+     * @throws IOException
+     *         if the stylesheet cannot be written
+     */
+    public void doDynamic(final StaplerRequest2 request, final StaplerResponse2 response) throws IOException {
+        String[] parts = StringUtils.split(request.getRestOfPath(), '/');
+        if (parts.length != 2 || !parts[1].endsWith(CSS_SUFFIX)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String themeName = StringUtils.removeEnd(parts[1], CSS_SUFFIX);
+        var theme = Arrays.stream(PrismTheme.values())
+                .filter(candidate -> candidate.name().equals(themeName))
+                .findAny();
+        if (theme.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        var stylesheet = PrismStylesheet.of(theme.get());
+        byte[] content = stylesheet.getContent();
+        response.setContentType("text/css;charset=UTF-8");
+        if (stylesheet.getHash().equals(parts[0])) {
+            response.setHeader("Cache-Control", "public, max-age=31536000, immutable");
+        }
+        else { // outdated URL of a cached page, serve the current content but do not cache it
+            response.setHeader("Cache-Control", "no-cache");
+        }
+        response.setContentLength(content.length);
+        response.getOutputStream().write(content);
+    }
+}
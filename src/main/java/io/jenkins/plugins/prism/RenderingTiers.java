@@ -0,0 +1,102 @@
+package io.jenkins.plugins.prism;
+
+/**
+ * Determines the client side features of Prism that are enabled for a rendered source code file. Since the cost of
+ * these features grows with the size of the file, the most expensive features are disabled first:
+ *
+ * <ol>
+ *     <li>Files that exceed the limit of the bracket matching are shown without matching brackets.</li>
+ *     <li>Files that exceed the limit of the client side line numbers get line numbers that are rendered on the
+ *     server, so the browser does not need to measure the height of each line.</li>
+ *     <li>Files that exceed the limit of the syntax highlighting are shown as plain text.</li>
+ * </ol>
+ *
+ * <p>
+ * Each limit consists of a maximum number of lines and a maximum number of characters. The limits are configured in
+ * the {@link PrismConfiguration}.
+ * </p>
+ *
+ * @param matchBraces
+ *         the limit of the bracket matching
+ * @param clientLineNumbers
+ *         the limit of the line numbers that are created by Prism in the browser
+ * @param highlighting
+ *         the limit of the syntax highlighting
+ * @author Ullrich Hafner
+ */
+record RenderingTiers(Limit matchBraces, Limit clientLineNumbers, Limit highlighting) {
+    static final int DEFAULT_MATCH_BRACES_LINES = 3_000;
+    static final int DEFAULT_MATCH_BRACES_SIZE = 150;
+    static final int DEFAULT_CLIENT_LINE_NUMBERS_LINES = 5_000;
+    static final int DEFAULT_CLIENT_LINE_NUMBERS_SIZE = 250;
+    static final int DEFAULT_HIGHLIGHTING_LINES = 20_000;
+    static final int DEFAULT_HIGHLIGHTING_SIZE = 1_000;
+
+    /** The tiers that are used if no configuration is available. */
+    static final RenderingTiers DEFAULT = new RenderingTiers(
+            Limit.of(DEFAULT_MATCH_BRACES_LINES, DEFAULT_MATCH_BRACES_SIZE),
+            Limit.of(DEFAULT_CLIENT_LINE_NUMBERS_LINES, DEFAULT_CLIENT_LINE_NUMBERS_SIZE),
+            Limit.of(DEFAULT_HIGHLIGHTING_LINES, DEFAULT_HIGHLIGHTING_SIZE));
+
+    /**
+     * Returns the features that are enabled for a file of the specified size.
+     *
+     * @param lines
+     *         the number of lines of the file
+     * @param characters
+     *         the number of characters of the file
+     *
+     * @return the enabled features
+     */
+    Features select(final int lines, final int characters) {
+        if (!highlighting.contains(lines, characters)) {
+            return Features.PLAIN;
+        }
+        return new Features(true, clientLineNumbers.contains(lines, characters),
+                matchBraces.contains(lines, characters));
+    }
+
+    /**
+     * The maximum size of a file.
+     *
+     * @param lines
+     *         the maximum number of lines
+     * @param characters
+     *         the maximum number of characters
+     */
+    record Limit(int lines, int characters) {
+        /**
+         * Creates a new limit.
+         *
+         * @param lines
+         *         the maximum number of lines
+         * @param size
+         *         the maximum size in KB
+         *
+         * @return the limit
+         */
+        static Limit of(final int lines, final int size) {
+            return new Limit(lines, (int) Math.min(Integer.MAX_VALUE, size * 1024L));
+        }
+
+        boolean contains(final int actualLines, final int actualCharacters) {
+            return actualLines <= lines && actualCharacters <= characters;
+        }
+    }
+
+    /**
+     * The client side features of Prism that are enabled for a file.
+     *
+     * @param highlighting
+     *         determines whether the syntax is highlighted
+     * @param clientLineNumbers
+     *         determines whether the line numbers are created by Prism in the browser, otherwise they are rendered on
+     *         the server
+     * @param matchBraces
+     *         determines whether matching brackets are highlighted
+     */
+    record Features(boolean highlighting, boolean clientLineNumbers, boolean matchBraces) {
+        /** Plain text without any client side features. */
+        static final Features PLAIN = new Features(false, false, false);
+    }
+}
@@ -11,6 +11,8 @@ import j2html.tags.DomContent;
 import hudson.markup.MarkupFormatter;
 import hudson.markup.RawHtmlMarkupFormatter;
 
+import io.jenkins.plugins.prism.PrismEvents.SanitizeEvent;
+
 /**
  * Sanitizes a piece of unsafe HTML code so that it can be rendered in a UI view. This class serves as simple
  * wrapper for Jenkins´ {@link RawHtmlMarkupFormatter}.
@@ -35,12 +37,22 @@ public class Sanitizer {
      * @return safe HTML
      */
     public String render(final String html) {
+        long start = System.nanoTime();
+        var event = new SanitizeEvent();
+        event.begin();
         try {
             return formatter.translate(html);
         }
         catch (IOException exception) {
             return ExceptionUtils.getRootCauseMessage(exception);
         }
+        finally {
+            PrismMetrics.getInstance().stop(PrismMetrics.SANITIZE, start);
+            if (event.shouldCommit()) {
+                event.characters = html == null ? 0 : html.length();
+                event.commit();
+            }
+        }
     }
 
     /**
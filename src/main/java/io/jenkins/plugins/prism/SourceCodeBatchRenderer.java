@@ -0,0 +1,263 @@
+package io.jenkins.plugins.prism;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Renders many source code files concurrently. Plugins that generate static reports or pre-render the source code of
+ * a build can use this renderer instead of rendering each file sequentially. At most {@code parallelism} files are
+ * rendered at the same time. If the JDK supports virtual threads, then each file is rendered in its own virtual
+ * thread, otherwise a pool of daemon threads is used.
+ *
+ * <p>
+ * The results are passed to a callback as soon as a file has been rendered. The callback is always invoked in the
+ * thread that called {@link #render(Collection, Consumer)}, so it does not need to be thread safe. Files that cannot be
+ * rendered within the configured timeout are reported with the status {@link Status#TIMED_OUT}: the rendering of these
+ * files will be interrupted.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+public class SourceCodeBatchRenderer {
+    private static final Logger LOGGER = Logger.getLogger(SourceCodeBatchRenderer.class.getName());
+    private static final PrismMetrics METRICS = PrismMetrics.getInstance();
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofMinutes(1);
+
+    /**
+     * Creates a rendering job for a source code file that is provided by a {@link Reader}. The reader will be closed
+     * after rendering.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param reader
+     *         the source code
+     * @param marker
+     *         the marker to show in the source code
+     *
+     * @return the job
+     */
+    public static Job of(final String fileName, final Reader reader, final Marker marker) {
+        return new Job(fileName, marker, printer -> {
+            try (Reader lines = reader) {
+                return printer.render(fileName, SourceCodeDecoder.lines(lines, printer.getCharacterBudget()), marker);
+            }
+        });
+    }
+
+    /**
+     * Creates a rendering job for a source code file. The charset of the file is detected automatically, see
+     * {@link SourceCodeDecoder}.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param file
+     *         the source code file
+     * @param fallbackCharset
+     *         the charset to use if the charset of the file cannot be detected
+     * @param marker
+     *         the marker to show in the source code
+     *
+     * @return the job
+     */
+    public static Job of(final String fileName, final Path file, final Charset fallbackCharset, final Marker marker) {
+        return new Job(fileName, marker,
+                printer -> SourceCodeViewModel.render(printer, fileName, file, fallbackCharset, marker,
+                        LineDecorations.NONE));
+    }
+
+    private final int parallelism;
+    private final long timeoutNanos;
+    private final Supplier<SourcePrinter> printerFactory;
+
+    /**
+     * Creates a new batch renderer that uses all available processors and a timeout of one minute per file.
+     */
+    public SourceCodeBatchRenderer() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_TIMEOUT, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new batch renderer. The files are rendered with the limits of the {@link PrismConfiguration}.
+     *
+     * @param parallelism
+     *         the maximum number of files that are rendered at the same time
+     * @param timeout
+     *         the maximum duration to render a single file
+     * @param characterBudget
+     *         the maximum number of characters to render per file, see {@link PrismConfiguration#getMaxRenderedSize()}
+     */
+    public SourceCodeBatchRenderer(final int parallelism, final Duration timeout, final int characterBudget) {
+        this(parallelism, timeout, () -> PrismConfiguration.getInstance().createPrinter(characterBudget));
+    }
+
+    @VisibleForTesting
+    SourceCodeBatchRenderer(final int parallelism, final Duration timeout,
+            final Supplier<SourcePrinter> printerFactory) {
+        this.parallelism = Math.max(1, parallelism);
+        this.timeoutNanos = timeout.toNanos();
+        this.printerFactory = printerFactory;
+    }
+
+    /**
+     * Renders the specified files concurrently. This method blocks until all files have been rendered, failed, or
+     * timed out.
+     *
+     * @param jobs
+     *         the files to render
+     * @param callback
+     *         the callback that receives the result of each file, invoked in the calling thread
+     *
+     * @throws InterruptedException
+     *         if the calling thread has been interrupted while waiting for the results
+     */
+    public void render(final Collection<Job> jobs, final Consumer<Result> callback) throws InterruptedException {
+        ExecutorService executor = SourceCodeRenderingService.createExecutor("Prism batch rendering", parallelism);
+        try {
+            CompletionService<Result> completion = new ExecutorCompletionService<>(executor);
+            Map<Future<Result>, Running> running = new IdentityHashMap<>();
+            Iterator<Job> pending = jobs.iterator();
+            while (pending.hasNext() || !running.isEmpty()) {
+                while (running.size() < parallelism && pending.hasNext()) {
+                    Job job = pending.next();
+                    running.put(completion.submit(() -> render(job)),
+                            new Running(job, System.nanoTime() + timeoutNanos));
+                }
+
+                Future<Result> done = completion.poll(getRemainingNanos(running), TimeUnit.NANOSECONDS);
+                if (done != null && running.remove(done) != null) {
+                    callback.accept(getResult(done));
+                }
+                cancelTimedOutJobs(running, callback);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long getRemainingNanos(final Map<Future<Result>, Running> running) {
+        long now = System.nanoTime();
+        return running.values().stream()
+                .mapToLong(job -> job.deadline() - now)
+                .min()
+                .orElse(0L);
+    }
+
+    private void cancelTimedOutJobs(final Map<Future<Result>, Running> running, final Consumer<Result> callback) {
+        long now = System.nanoTime();
+        var iterator = running.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (entry.getValue().deadline() - now <= 0) {
+                entry.getKey().cancel(true);
+                iterator.remove();
+                METRICS.increment(PrismMetrics.RENDER_TIMEOUTS, 1);
+                Job job = entry.getValue().job();
+                LOGGER.log(Level.WARNING, "Rendering of source code file ''{0}'' timed out", job.getFileName());
+                callback.accept(new Result(job.getFileName(), job.getMarker(), Status.TIMED_OUT, null, null));
+            }
+        }
+    }
+
+    private Result getResult(final Future<Result> done) throws InterruptedException {
+        try {
+            return done.get();
+        }
+        catch (ExecutionException exception) {
+            throw new IllegalStateException("Rendering job failed unexpectedly", exception.getCause());
+        }
+    }
+
+    private Result render(final Job job) {
+        try {
+            var printer = printerFactory.get();
+            return new Result(job.getFileName(), job.getMarker(), Status.RENDERED, job.renderer.render(printer), null);
+        }
+        catch (IOException | RuntimeException exception) {
+            return new Result(job.getFileName(), job.getMarker(), Status.FAILED, null,
+                    ExceptionUtils.getMessage(exception));
+        }
+    }
+
+    /**
+     * A source code file that should be rendered. Use the factory methods of {@link SourceCodeBatchRenderer} to
+     * create jobs.
+     */
+    public static final class Job {
+        private final String fileName;
+        private final Marker marker;
+        private final JobRenderer renderer;
+
+        private Job(final String fileName, final Marker marker, final JobRenderer renderer) {
+            this.fileName = fileName;
+            this.marker = marker;
+            this.renderer = renderer;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public Marker getMarker() {
+            return marker;
+        }
+    }
+
+    /** The status of a rendered file. */
+    public enum Status {
+        /** The file has been rendered successfully. */
+        RENDERED,
+        /** The file could not be read or rendered. */
+        FAILED,
+        /** The file could not be rendered within the timeout. */
+        TIMED_OUT
+    }
+
+    /**
+     * The result of a rendering job.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param marker
+     *         the marker of the job
+     * @param status
+     *         the status of the job
+     * @param html
+     *         the rendered HTML, or {@code null} if the job did not succeed
+     * @param errorMessage
+     *         the reason of the failure, or {@code null} if the job did not fail
+     */
+    public record Result(String fileName, Marker marker, Status status,
+                         @CheckForNull String html, @CheckForNull String errorMessage) {
+    }
+
+    @FunctionalInterface
+    private interface JobRenderer {
+        String render(SourcePrinter printer) throws IOException;
+    }
+
+    private record Running(Job job, long deadline) {
+    }
+}
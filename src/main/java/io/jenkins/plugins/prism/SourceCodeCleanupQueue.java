@@ -0,0 +1,121 @@
+package io.jenkins.plugins.prism;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.hm.hafner.util.FilteredLog;
+import edu.hm.hafner.util.VisibleForTesting;
+
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Executes the cleanup of stored source code files in a background thread, so that builds do not need to wait until
+ * the source code files of previous builds have been deleted. Requests for the same job and source directory are
+ * coalesced: if a request is still pending when a new one arrives, then only the newest request will be executed.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeCleanupQueue {
+    private static final Logger LOGGER = Logger.getLogger(SourceCodeCleanupQueue.class.getName());
+    private static final int MAX_QUEUED_REQUESTS = 1_000;
+    private static final SourceCodeCleanupQueue INSTANCE = new SourceCodeCleanupQueue(createExecutor());
+
+    /**
+     * Returns the singleton instance of this queue.
+     *
+     * @return the singleton instance
+     */
+    static SourceCodeCleanupQueue getInstance() {
+        return INSTANCE;
+    }
+
+    private static ExecutorService createExecutor() {
+        var executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(MAX_QUEUED_REQUESTS),
+                new NamingThreadFactory(new DaemonThreadFactory(), "Prism source code cleanup"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private final Executor executor;
+    private final Map<String, CleanupRequest> pendingRequests = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    SourceCodeCleanupQueue(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Schedules the cleanup of the source code files for the job of the specified build. If there is already a
+     * pending request for the same job and directory, then the pending request will be replaced by this request.
+     *
+     * @param build
+     *         the build that triggered the cleanup
+     * @param directory
+     *         the directory, where the source code files are stored within each build
+     * @param cleanup
+     *         the cleanup action to execute in the background
+     * @param log
+     *         logger
+     */
+    void schedule(final Run<?, ?> build, final String directory, final Consumer<FilteredLog> cleanup,
+            final FilteredLog log) {
+        String key = build.getParent().getFullName() + '/' + directory;
+        var request = new CleanupRequest(build.getDisplayName(), cleanup);
+        if (pendingRequests.put(key, request) == null) {
+            try {
+                executor.execute(() -> execute(key));
+                log.logInfo("Scheduled cleaning of source code files in old builds");
+            }
+            catch (RejectedExecutionException exception) {
+                pendingRequests.remove(key);
+                log.logException(exception, "Could not schedule cleaning of source code files in old builds");
+            }
+        }
+        else {
+            log.logInfo("Cleaning of source code files in old builds is already scheduled");
+        }
+    }
+
+    @VisibleForTesting
+    int getPendingRequestsCount() {
+        return pendingRequests.size();
+    }
+
+    private void execute(final String key) {
+        var request = pendingRequests.remove(key);
+        if (request == null) {
+            return;
+        }
+
+        var log = new FilteredLog("Errors while cleaning source code files of " + key);
+        try {
+            request.cleanup().accept(log);
+        }
+        catch (RuntimeException exception) {
+            log.logException(exception, "Cleaning of source code files failed");
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, String.format("Cleaned source code files of '%s' (triggered by %s): %s",
+                    key, request.buildName(), log.getInfoMessages()));
+        }
+        if (!log.getErrorMessages().isEmpty()) {
+            LOGGER.log(Level.WARNING, String.join("\n", log.getErrorMessages()));
+        }
+    }
+
+    private record CleanupRequest(String buildName, Consumer<FilteredLog> cleanup) {
+    }
+}
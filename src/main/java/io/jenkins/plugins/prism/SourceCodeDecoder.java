@@ -0,0 +1,477 @@
+package io.jenkins.plugins.prism;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Decodes source code files whose charset is not known for sure. The charset is detected using the byte order mark
+ * (BOM) of the file. If the file has no BOM, then a bounded prefix of the file is scanned: if the prefix contains
+ * valid multibyte UTF-8 sequences only, then the file will be decoded as UTF-8. Otherwise, the configured fallback
+ * charset is used.
+ *
+ * <p>
+ * The content is decoded in large chunks into a single {@link CharSequence} so that no intermediate {@link String}
+ * instances per line are required. Malformed input is replaced with the replacement character of the charset.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+public final class SourceCodeDecoder {
+    /** The number of bytes at the start of a file that will be scanned to detect the charset. */
+    static final int DETECTION_PREFIX = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final byte[] UTF_8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final byte[] UTF_16BE_BOM = {(byte) 0xFE, (byte) 0xFF};
+    private static final byte[] UTF_16LE_BOM = {(byte) 0xFF, (byte) 0xFE};
+
+    private SourceCodeDecoder() {
+        // prevents instantiation
+    }
+
+    /**
+     * Detects the charset of the specified prefix of a file.
+     *
+     * @param prefix
+     *         the first bytes of the file
+     * @param fallback
+     *         the charset to use if the charset cannot be detected
+     *
+     * @return the detected charset or the fallback
+     */
+    public static Charset detectCharset(final byte[] prefix, final Charset fallback) {
+        return detect(prefix, prefix.length < DETECTION_PREFIX, fallback).charset();
+    }
+
+    /**
+     * Reads and decodes the specified file.
+     *
+     * @param file
+     *         the file to read
+     * @param fallback
+     *         the charset to use if the charset cannot be detected
+     *
+     * @return the content of the file
+     * @throws IOException
+     *         if the file cannot be read
+     */
+    public static CharSequence decode(final Path file, final Charset fallback) throws IOException {
+        return decode(file, fallback, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads and decodes the specified file. Reading stops as soon as the specified number of characters has been
+     * decoded, so the size of the returned content is bounded even for huge files.
+     *
+     * @param file
+     *         the file to read
+     * @param fallback
+     *         the charset to use if the charset cannot be detected
+     * @param maxCharacters
+     *         the maximum number of characters to decode
+     *
+     * @return the content of the file, truncated to {@code maxCharacters} characters
+     * @throws IOException
+     *         if the file cannot be read
+     */
+    public static CharSequence decode(final Path file, final Charset fallback, final int maxCharacters)
+            throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            return decode(input, fallback, maxCharacters);
+        }
+    }
+
+    /**
+     * Opens a reader for the specified file that decodes the content using the detected charset. In contrast to
+     * {@link #decode(Path, Charset)}, the content is not read into memory at once.
+     *
+     * @param file
+     *         the file to read
+     * @param fallback
+     *         the charset to use if the charset cannot be detected
+     *
+     * @return the reader
+     * @throws IOException
+     *         if the file cannot be read
+     */
+    public static Reader openReader(final Path file, final Charset fallback) throws IOException {
+        InputStream input = Files.newInputStream(file);
+        try {
+            return openReader(input, fallback);
+        }
+        catch (IOException exception) {
+            input.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * Opens a reader for the specified stream that decodes the content using the detected charset. In contrast to
+     * {@link #decode(InputStream, Charset)}, the content is not read into memory at once. Closing the reader closes
+     * the stream.
+     *
+     * @param input
+     *         the stream to read
+     * @param fallback
+     *         the charset to use if the charset cannot be detected
+     *
+     * @return the reader
+     * @throws IOException
+     *         if the stream cannot be read
+     */
+    public static Reader openReader(final InputStream input, final Charset fallback) throws IOException {
+        byte[] prefix = input.readNBytes(DETECTION_PREFIX);
+        Detection detection = detect(prefix, prefix.length < DETECTION_PREFIX, fallback);
+        CharsetDecoder decoder = detection.charset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return new BufferedReader(new InputStreamReader(new SequenceInputStream(
+                new ByteArrayInputStream(prefix, detection.bomLength(), prefix.length - detection.bomLength()),
+                input), decoder), BUFFER_SIZE);
+    }
+
+    /**
+     * Reads and decodes the specified stream. The stream will not be closed.
+     *
+     * @param input
+     *         the stream to read
+     * @param fallback
+     *         the charset to use if the charset cannot be detected
+     *
+     * @return the content of the stream
+     * @throws IOException
+     *         if the stream cannot be read
+     */
+    public static CharSequence decode(final InputStream input, final Charset fallback) throws IOException {
+        return decode(input, fallback, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads and decodes the specified stream. Reading stops as soon as the specified number of characters has been
+     * decoded, so the size of the returned content is bounded even for huge streams. The stream will not be closed.
+     *
+     * @param input
+     *         the stream to read
+     * @param fallback
+     *         the charset to use if the charset cannot be detected
+     * @param maxCharacters
+     *         the maximum number of characters to decode
+     *
+     * @return the content of the stream, truncated to {@code maxCharacters} characters
+     * @throws IOException
+     *         if the stream cannot be read
+     */
+    @SuppressWarnings("PMD.CognitiveComplexity")
+    public static CharSequence decode(final InputStream input, final Charset fallback, final int maxCharacters)
+            throws IOException {
+        byte[] prefix = input.readNBytes(DETECTION_PREFIX);
+        boolean isComplete = prefix.length < DETECTION_PREFIX;
+        Detection detection = detect(prefix, isComplete, fallback);
+
+        CharsetDecoder decoder = detection.charset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        StringBuilder content = new StringBuilder(
+                Math.min(maxCharacters, isComplete ? prefix.length : 2 * BUFFER_SIZE));
+        ByteBuffer bytes = ByteBuffer.allocate(Math.max(BUFFER_SIZE, prefix.length));
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        bytes.put(prefix, detection.bomLength(), prefix.length - detection.bomLength());
+
+        boolean isEndOfInput = isComplete;
+        while (true) {
+            if (!isEndOfInput && bytes.hasRemaining()) {
+                checkInterrupted();
+                int read = input.read(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                if (read < 0) {
+                    isEndOfInput = true;
+                }
+                else {
+                    bytes.position(bytes.position() + read);
+                }
+            }
+            bytes.flip();
+            boolean isOverflow = decoder.decode(bytes, chars, isEndOfInput).isOverflow();
+            drain(chars, content);
+            bytes.compact();
+            if (content.length() >= maxCharacters) {
+                content.setLength(maxCharacters);
+                return content;
+            }
+            if (isEndOfInput && !isOverflow) {
+                break;
+            }
+        }
+        while (decoder.flush(chars).isOverflow()) {
+            drain(chars, content);
+        }
+        drain(chars, content);
+        if (content.length() > maxCharacters) {
+            content.setLength(maxCharacters);
+        }
+
+        return content;
+    }
+
+    /**
+     * Reads the specified reader. Reading stops as soon as the specified number of characters has been read, so the
+     * size of the returned content is bounded even for huge files. The reader will not be closed.
+     *
+     * @param reader
+     *         the reader to read
+     * @param maxCharacters
+     *         the maximum number of characters to read
+     *
+     * @return the content of the reader, truncated to {@code maxCharacters} characters
+     * @throws IOException
+     *         if the reader cannot be read
+     */
+    static CharSequence read(final Reader reader, final int maxCharacters) throws IOException {
+        StringBuilder content = new StringBuilder(Math.min(maxCharacters, BUFFER_SIZE));
+        char[] buffer = new char[BUFFER_SIZE];
+        while (content.length() < maxCharacters) {
+            checkInterrupted();
+            int read = reader.read(buffer, 0, Math.min(buffer.length, maxCharacters - content.length()));
+            if (read < 0) {
+                break;
+            }
+            content.append(buffer, 0, read);
+        }
+        return content;
+    }
+
+    /**
+     * Returns the lines of the specified reader. In contrast to {@link BufferedReader#lines()}, a line is never read
+     * into memory as a whole: the characters of a line that exceed the specified length are skipped while reading.
+     * So even a file without any line terminator requires no more memory than the specified length. The reader will
+     * not be closed.
+     *
+     * @param reader
+     *         the reader to read the lines from
+     * @param maxLineLength
+     *         the maximum number of characters of a line, the remaining characters of a longer line are skipped
+     *
+     * @return the (possibly truncated) lines of the reader
+     */
+    static Stream<String> lines(final Reader reader, final int maxLineLength) {
+        var iterator = new BoundedLineIterator(reader, maxLineLength);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Stops reading if the current thread has been interrupted, e.g., since the rendering of the source code has been
+     * cancelled. Many streams (e.g., of local files) ignore interrupts while reading.
+     */
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Reading of source code has been interrupted");
+        }
+    }
+
+    private static void drain(final CharBuffer chars, final StringBuilder content) {
+        content.append(chars.array(), chars.arrayOffset(), chars.position());
+        chars.clear();
+    }
+
+    private static Detection detect(final byte[] prefix, final boolean isComplete, final Charset fallback) {
+        if (startsWith(prefix, UTF_8_BOM)) {
+            return new Detection(StandardCharsets.UTF_8, UTF_8_BOM.length);
+        }
+        if (startsWith(prefix, UTF_16BE_BOM)) {
+            return new Detection(StandardCharsets.UTF_16BE, UTF_16BE_BOM.length);
+        }
+        if (startsWith(prefix, UTF_16LE_BOM)) {
+            return new Detection(StandardCharsets.UTF_16LE, UTF_16LE_BOM.length);
+        }
+        if (containsUtf8Sequences(prefix, isComplete)) {
+            return new Detection(StandardCharsets.UTF_8, 0);
+        }
+        return new Detection(fallback, 0);
+    }
+
+    private static boolean startsWith(final byte[] prefix, final byte[] bom) {
+        if (prefix.length < bom.length) {
+            return false;
+        }
+        for (int i = 0; i < bom.length; i++) {
+            if (prefix[i] != bom[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans the specified bytes for UTF-8 multibyte sequences. Returns {@code true} if at least one multibyte sequence
+     * has been found and all multibyte sequences are well-formed. Pure ASCII content returns {@code false} so that the
+     * fallback charset will be used.
+     *
+     * @param bytes
+     *         the bytes to scan
+     * @param isComplete
+     *         determines whether the bytes contain the whole file, if not then a multibyte sequence that is cut off at
+     *         the end of the bytes is accepted
+     *
+     * @return {@code true} if the bytes are UTF-8 encoded, {@code false} otherwise
+     */
+    @SuppressWarnings({"PMD.CognitiveComplexity", "PMD.CyclomaticComplexity", "checkstyle:MagicNumber"})
+    static boolean containsUtf8Sequences(final byte[] bytes, final boolean isComplete) {
+        boolean hasSequences = false;
+        int length = bytes.length;
+        int i = 0;
+        while (i < length) {
+            while (i < length && bytes[i] >= 0) { // ASCII fast path
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+
+            int lead = bytes[i] & 0xFF;
+            int continuationBytes;
+            int min = 0x80;
+            int max = 0xBF;
+            if (lead >= 0xC2 && lead <= 0xDF) {
+                continuationBytes = 1;
+            }
+            else if (lead >= 0xE0 && lead <= 0xEF) {
+                continuationBytes = 2;
+                if (lead == 0xE0) {
+                    min = 0xA0; // overlong encoding
+                }
+                else if (lead == 0xED) {
+                    max = 0x9F; // surrogates
+                }
+            }
+            else if (lead >= 0xF0 && lead <= 0xF4) {
+                continuationBytes = 3;
+                if (lead == 0xF0) {
+                    min = 0x90; // overlong encoding
+                }
+                else if (lead == 0xF4) {
+                    max = 0x8F; // beyond U+10FFFF
+                }
+            }
+            else {
+                return false;
+            }
+
+            for (int j = 1; j <= continuationBytes; j++) {
+                if (i + j >= length) {
+                    return !isComplete && hasSequences;
+                }
+                int next = bytes[i + j] & 0xFF;
+                if (j == 1 ? next < min || next > max : next < 0x80 || next > 0xBF) {
+                    return false;
+                }
+            }
+            hasSequences = true;
+            i += continuationBytes + 1;
+        }
+        return hasSequences;
+    }
+
+    private record Detection(Charset charset, int bomLength) {
+    }
+
+    /**
+     * Reads the lines of a reader in chunks. Line terminators are {@code \n}, {@code \r}, or {@code \r\n}.
+     */
+    private static final class BoundedLineIterator implements Iterator<String> {
+        private final Reader reader;
+        private final int maxLineLength;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private final StringBuilder line = new StringBuilder();
+        private int position;
+        private int limit;
+        private boolean isSkippingLineFeed;
+        @CheckForNull
+        private String next;
+
+        BoundedLineIterator(final Reader reader, final int maxLineLength) {
+            this.reader = reader;
+            this.maxLineLength = maxLineLength;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = readLine();
+                }
+                catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = next;
+            next = null;
+            return result;
+        }
+
+        @CheckForNull
+        private String readLine() throws IOException {
+            line.setLength(0);
+            boolean hasCharacters = false;
+            while (true) {
+                if (position == limit) {
+                    checkInterrupted();
+                    limit = reader.read(buffer);
+                    position = 0;
+                    if (limit < 0) {
+                        limit = 0;
+                        return hasCharacters ? line.toString() : null;
+                    }
+                }
+                if (isSkippingLineFeed && buffer[position] == '\n') {
+                    position++;
+                    isSkippingLineFeed = false;
+                    continue;
+                }
+                isSkippingLineFeed = false;
+                int start = position;
+                while (position < limit && buffer[position] != '\n' && buffer[position] != '\r') {
+                    position++;
+                }
+                int length = Math.min(position - start, maxLineLength - line.length());
+                line.append(buffer, start, Math.max(0, length));
+                hasCharacters = true;
+                if (position < limit) {
+                    isSkippingLineFeed = buffer[position] == '\r';
+                    position++;
+                    return line.toString();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package io.jenkins.plugins.prism;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Deletes folders with many small files. The folder is first moved atomically into a trash folder (so it disappears
+ * from its original location instantly), afterwards the contents of the moved folder are deleted in parallel using a
+ * bounded {@link ForkJoinPool}. If the deletion fails, then the moved folder remains in the trash folder and will be
+ * deleted by the next {@link #sweep(Path) sweep}.
+ *
+ * @author Ullrich Hafner
+ */
+@SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Only folders of stored source code are deleted")
+class SourceCodeDeleter {
+    private static final String TRASH_SUFFIX = ".prism-trash";
+    private static final int MAX_PARALLELISM = 8;
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Math.max(1, Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors())));
+
+    private final ForkJoinPool pool;
+
+    SourceCodeDeleter() {
+        this(POOL);
+    }
+
+    @VisibleForTesting
+    SourceCodeDeleter(final ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Deletes the specified folder and all of its contents.
+     *
+     * @param folder
+     *         the folder to delete
+     * @param trash
+     *         the trash folder to move the folder to before its contents are deleted, should be on the same file
+     *         system as the folder
+     *
+     * @throws IOException
+     *         if the folder could not be deleted
+     */
+    void delete(final Path folder, final Path trash) throws IOException {
+        if (!Files.exists(folder, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        deleteContents(moveToTrash(folder, trash));
+    }
+
+    /**
+     * Deletes all folders that remained in the specified trash folder since their deletion failed.
+     *
+     * @param trash
+     *         the trash folder
+     *
+     * @throws IOException
+     *         if a folder could not be deleted
+     */
+    void sweep(final Path trash) throws IOException {
+        if (!Files.isDirectory(trash, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        List<Path> leftovers = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(trash, "*" + TRASH_SUFFIX)) {
+            entries.forEach(leftovers::add);
+        }
+        for (Path leftover : leftovers) {
+            deleteContents(leftover);
+        }
+    }
+
+    private Path moveToTrash(final Path folder, final Path trash) throws IOException {
+        try {
+            Files.createDirectories(trash);
+            return Files.move(folder, trash.resolve(folder.getFileName() + "-" + UUID.randomUUID() + TRASH_SUFFIX),
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException exception) {
+            return folder; // delete the folder in place
+        }
+    }
+
+    private void deleteContents(final Path folder) throws IOException {
+        if (!Files.isDirectory(folder, LinkOption.NOFOLLOW_LINKS)) {
+            Files.deleteIfExists(folder);
+            return;
+        }
+        try {
+            pool.invoke(new DeleteFolderTask(folder));
+        }
+        catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+    }
+
+    /**
+     * Deletes the files of a folder and forks a new task for each sub-folder.
+     */
+    private static class DeleteFolderTask extends RecursiveAction {
+        private static final long serialVersionUID = -2453245871239624180L;
+
+        @SuppressFBWarnings(value = "SE_BAD_FIELD", justification = "Tasks are never serialized")
+        private final Path folder;
+
+        DeleteFolderTask(final Path folder) {
+            super();
+
+            this.folder = folder;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                List<DeleteFolderTask> children = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+                    for (Path entry : entries) {
+                        if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                            children.add(new DeleteFolderTask(entry));
+                        }
+                        else {
+                            Files.deleteIfExists(entry);
+                        }
+                    }
+                }
+                ForkJoinTask.invokeAll(children);
+                Files.deleteIfExists(folder);
+            }
+            catch (NoSuchFileException exception) {
+                // already deleted by a concurrent sweep
+            }
+            catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+    }
+}
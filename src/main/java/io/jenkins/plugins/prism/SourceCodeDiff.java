@@ -0,0 +1,319 @@
+package io.jenkins.plugins.prism;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the differences between two versions of a source code file. The differences are computed line by line
+ * using the linear space variant of Myers' O(ND) difference algorithm: the algorithm recursively searches the middle
+ * snake of an optimal edit path so that only two vectors of size O(N + M) are required.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeDiff {
+    /** The type of a line in the computed difference. */
+    enum LineType {
+        /** The line is part of both versions. */
+        UNCHANGED,
+        /** The line has been removed from the old version. */
+        DELETED,
+        /** The line has been added in the new version. */
+        INSERTED
+    }
+
+    private final int[] oldLines;
+    private final int[] newLines;
+    private final boolean[] deleted;
+    private final boolean[] inserted;
+
+    /**
+     * Computes the differences between the specified versions of a file.
+     *
+     * @param oldVersion
+     *         the lines of the old version
+     * @param newVersion
+     *         the lines of the new version
+     */
+    SourceCodeDiff(final List<String> oldVersion, final List<String> newVersion) {
+        Map<String, Integer> ids = new HashMap<>();
+        oldLines = toIds(oldVersion, ids);
+        newLines = toIds(newVersion, ids);
+        deleted = new boolean[oldLines.length];
+        inserted = new boolean[newLines.length];
+
+        compare(0, 0, oldLines.length, newLines.length);
+    }
+
+    private int[] toIds(final List<String> lines, final Map<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ids.computeIfAbsent(lines.get(i), line -> ids.size());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the edit script as a sequence of line types. For each {@link LineType#UNCHANGED} and
+     * {@link LineType#DELETED} entry the line number of the old version is incremented, for each
+     * {@link LineType#UNCHANGED} and {@link LineType#INSERTED} entry the line number of the new version is
+     * incremented.
+     *
+     * @return the edit script
+     */
+    List<LineType> getEditScript() {
+        List<LineType> script = new ArrayList<>(Math.max(oldLines.length, newLines.length));
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < oldLines.length || newIndex < newLines.length) {
+            if (oldIndex < oldLines.length && deleted[oldIndex]) {
+                script.add(LineType.DELETED);
+                oldIndex++;
+            }
+            else if (newIndex < newLines.length && inserted[newIndex]) {
+                script.add(LineType.INSERTED);
+                newIndex++;
+            }
+            else {
+                script.add(LineType.UNCHANGED);
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        return script;
+    }
+
+    /**
+     * Returns the hunks of the difference: each hunk contains a block of changed lines surrounded by the specified
+     * number of unchanged context lines. Overlapping or adjacent hunks are merged. Lines of the new version that are
+     * within the specified marked range are always part of a hunk, even if they are unchanged.
+     *
+     * @param contextLines
+     *         the number of unchanged lines to show before and after a change
+     * @param markedLineStart
+     *         the first marked line of the new version (1-based), use 0 if no lines are marked
+     * @param markedLineEnd
+     *         the last marked line of the new version (1-based), use 0 if no lines are marked
+     *
+     * @return the hunks
+     */
+    List<Hunk> getHunks(final int contextLines, final int markedLineStart, final int markedLineEnd) {
+        List<LineType> script = getEditScript();
+        int size = script.size();
+
+        boolean[] interesting = new boolean[size];
+        int newLine = 0;
+        for (int i = 0; i < size; i++) {
+            LineType type = script.get(i);
+            if (type != LineType.DELETED) {
+                newLine++;
+            }
+            boolean isMarked = type != LineType.DELETED && newLine >= markedLineStart && newLine <= markedLineEnd;
+            interesting[i] = type != LineType.UNCHANGED || isMarked;
+        }
+
+        boolean[] visible = new boolean[size];
+        int lastInteresting = -contextLines - 1;
+        for (int i = 0; i < size; i++) {
+            if (interesting[i]) {
+                lastInteresting = i;
+            }
+            visible[i] = i - lastInteresting <= contextLines;
+        }
+        int nextInteresting = size + contextLines + 1;
+        for (int i = size - 1; i >= 0; i--) {
+            if (interesting[i]) {
+                nextInteresting = i;
+            }
+            visible[i] |= nextInteresting - i <= contextLines;
+        }
+
+        List<Hunk> hunks = new ArrayList<>();
+        int oldLine = 1;
+        newLine = 1;
+        int skipped = 0;
+        int i = 0;
+        while (i < size) {
+            if (visible[i]) {
+                List<LineType> lines = new ArrayList<>();
+                int oldStart = oldLine;
+                int newStart = newLine;
+                while (i < size && visible[i]) {
+                    LineType type = script.get(i);
+                    lines.add(type);
+                    oldLine += type == LineType.INSERTED ? 0 : 1;
+                    newLine += type == LineType.DELETED ? 0 : 1;
+                    i++;
+                }
+                hunks.add(new Hunk(oldStart, newStart, skipped, lines));
+                skipped = 0;
+            }
+            else {
+                oldLine++;
+                newLine++;
+                skipped++;
+                i++;
+            }
+        }
+        return hunks;
+    }
+
+    /**
+     * Returns the number of inserted and deleted lines.
+     *
+     * @return the size of the edit script
+     */
+    int getDistance() {
+        int distance = 0;
+        for (boolean isDeleted : deleted) {
+            distance += isDeleted ? 1 : 0;
+        }
+        for (boolean isInserted : inserted) {
+            distance += isInserted ? 1 : 0;
+        }
+        return distance;
+    }
+
+    @SuppressWarnings("checkstyle:ParameterAssignment")
+    private void compare(int left, int top, int right, int bottom) {
+        while (left < right && top < bottom && oldLines[left] == newLines[top]) {
+            left++;
+            top++;
+        }
+        while (left < right && top < bottom && oldLines[right - 1] == newLines[bottom - 1]) {
+            right--;
+            bottom--;
+        }
+        if (left == right) {
+            Arrays.fill(inserted, top, bottom, true);
+        }
+        else if (top == bottom) {
+            Arrays.fill(deleted, left, right, true);
+        }
+        else {
+            int[] snake = findMiddleSnake(left, top, right, bottom);
+            if (isInside(snake[0], snake[1], left, top, right, bottom)) {
+                compare(left, top, snake[0], snake[1]);
+                compare(snake[0], snake[1], right, bottom);
+            }
+            else if (isInside(snake[2], snake[3], left, top, right, bottom)) {
+                compare(left, top, snake[2], snake[3]);
+                compare(snake[2], snake[3], right, bottom);
+            }
+            else { // should not happen, fallback to a valid but not minimal edit script
+                Arrays.fill(deleted, left, right, true);
+                Arrays.fill(inserted, top, bottom, true);
+            }
+        }
+    }
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private boolean isInside(final int x, final int y,
+            final int left, final int top, final int right, final int bottom) {
+        return !(x == left && y == top) && !(x == right && y == bottom);
+    }
+
+    /**
+     * Finds the middle snake of an optimal edit path in the specified box by searching forwards from the top left
+     * corner and backwards from the bottom right corner simultaneously.
+     *
+     * @return the start and the end of the snake as {@code [startX, startY, endX, endY]}
+     */
+    @SuppressWarnings({"PMD.CognitiveComplexity", "PMD.CyclomaticComplexity", "PMD.NPathComplexity"})
+    private int[] findMiddleSnake(final int left, final int top, final int right, final int bottom) {
+        int delta = (right - left) - (bottom - top);
+        boolean isOdd = (delta & 1) != 0;
+        int max = (right - left + bottom - top + 1) / 2;
+        int offset = max + 1;
+        int[] forward = new int[2 * max + 3];
+        int[] backward = new int[2 * max + 3];
+        forward[offset + 1] = left;
+        backward[offset + 1] = bottom;
+
+        for (int d = 0; d <= max; d++) {
+            for (int k = d; k >= -d; k -= 2) {
+                int previousX;
+                int x;
+                if (k == -d || k != d && forward[offset + k - 1] < forward[offset + k + 1]) {
+                    previousX = forward[offset + k + 1];
+                    x = previousX;
+                }
+                else {
+                    previousX = forward[offset + k - 1];
+                    x = previousX + 1;
+                }
+                int y = top + (x - left) - k;
+                int previousY = d == 0 || x != previousX ? y : y - 1;
+                while (x >= left && y >= top && x < right && y < bottom && oldLines[x] == newLines[y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+
+                int c = k - delta;
+                if (isOdd && c >= -(d - 1) && c <= d - 1 && y >= backward[offset + c]) {
+                    return new int[] {previousX, previousY, x, y};
+                }
+            }
+            for (int c = d; c >= -d; c -= 2) {
+                int previousY;
+                int y;
+                if (c == -d || c != d && backward[offset + c - 1] > backward[offset + c + 1]) {
+                    previousY = backward[offset + c + 1];
+                    y = previousY;
+                }
+                else {
+                    previousY = backward[offset + c - 1];
+                    y = previousY - 1;
+                }
+                int k = c + delta;
+                int x = left + (y - top) + k;
+                int previousX = d == 0 || y != previousY ? x : x + 1;
+                while (x > left && y > top && x <= right && y <= bottom && oldLines[x - 1] == newLines[y - 1]) {
+                    x--;
+                    y--;
+                }
+                backward[offset + c] = y;
+
+                if (!isOdd && k >= -d && k <= d && x <= forward[offset + k]) {
+                    return new int[] {x, y, previousX, previousY};
+                }
+            }
+        }
+        throw new IllegalStateException("No middle snake found");
+    }
+
+    /**
+     * A block of lines in the difference of two files.
+     *
+     * @param oldStart
+     *         the first line of the hunk in the old version
+     * @param newStart
+     *         the first line of the hunk in the new version
+     * @param skippedLines
+     *         the number of unchanged lines between the previous hunk (or the start of the file) and this hunk
+     * @param lines
+     *         the types of the lines in this hunk
+     */
+    record Hunk(int oldStart, int newStart, int skippedLines, List<LineType> lines) {
+        /**
+         * Returns the number of lines of the old version in this hunk.
+         *
+         * @return the number of old lines
+         */
+        int getOldCount() {
+            return (int) lines.stream().filter(type -> type != LineType.INSERTED).count();
+        }
+
+        /**
+         * Returns the number of lines of the new version in this hunk.
+         *
+         * @return the number of new lines
+         */
+        int getNewCount() {
+            return (int) lines.stream().filter(type -> type != LineType.DELETED).count();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package io.jenkins.plugins.prism;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import edu.hm.hafner.util.VisibleForTesting;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import hudson.model.ModelObject;
+import hudson.model.Run;
+
+/**
+ * Renders the differences between two versions of a source code file with Prism syntax highlighting in a separate
+ * Jenkins view. Typically, the versions are the copies of a file that have been stored for two different builds (see
+ * {@link SourceCodeRetention#MODIFIED}). Only the changed lines and some lines of context are shown, the unchanged
+ * regions in between are collapsed. Optionally, highlights a marker in the new version of the source code.
+ *
+ * @author Ullrich Hafner
+ */
+public class SourceCodeDiffViewModel implements ModelObject {
+    /** The number of unchanged lines that are shown before and after a change. */
+    static final int DEFAULT_CONTEXT_LINES = 3;
+
+    /**
+     * Creates a source code difference view model or a permission-denied view model based on the user's
+     * permissions.
+     *
+     * @param owner
+     *         the current build as the owner of this view, provides the new version of the file
+     * @param reference
+     *         the reference build that provides the old version of the file
+     * @param fileName
+     *         the file name of the shown content
+     * @param oldVersion
+     *         the old version of the source code file
+     * @param newVersion
+     *         the new version of the source code file
+     * @param marker
+     *         a block of lines (or a part of a line) to mark in the new version of the source code
+     * @return a {@link SourceCodeDiffViewModel} if permission is granted, or a {@link PermissionDeniedViewModel}
+     *         otherwise
+     */
+    public static ModelObject create(final Run<?, ?> owner, final Run<?, ?> reference, final String fileName,
+            final Reader oldVersion, final Reader newVersion, final Marker marker) {
+        if (!SourceCodeViewModel.hasPermissionToViewSourceCode(owner)
+                || !SourceCodeViewModel.hasPermissionToViewSourceCode(reference)) {
+            return new PermissionDeniedViewModel(owner, fileName);
+        }
+        return new SourceCodeDiffViewModel(owner, reference, fileName,
+                render(fileName, oldVersion, newVersion, marker, DEFAULT_CONTEXT_LINES));
+    }
+
+    /**
+     * Creates a source code difference view model or a permission-denied view model based on the user's
+     * permissions. Both versions of the source code file will be read from the specified {@link SourceCodeStore}.
+     *
+     * @param owner
+     *         the current build as the owner of this view, provides the new version of the file
+     * @param reference
+     *         the reference build that provides the old version of the file
+     * @param fileName
+     *         the file name of the shown content
+     * @param store
+     *         the store that contains the source code files of both builds
+     * @param charset
+     *         the charset of the stored source code files
+     * @param marker
+     *         a block of lines (or a part of a line) to mark in the new version of the source code
+     * @return a {@link SourceCodeDiffViewModel} if permission is granted, or a {@link PermissionDeniedViewModel}
+     *         otherwise
+     */
+    public static ModelObject create(final Run<?, ?> owner, final Run<?, ?> reference, final String fileName,
+            final SourceCodeStore store, final Charset charset, final Marker marker) {
+        try (Reader oldVersion = store.openReader(reference, fileName, charset);
+                Reader newVersion = store.openReader(owner, fileName, charset)) {
+            return create(owner, reference, fileName, oldVersion, newVersion, marker);
+        }
+        catch (IOException exception) {
+            return new SourceCodeDiffViewModel(owner, reference, fileName, asErrorMessage(exception));
+        }
+    }
+
+    @VisibleForTesting
+    static String render(final String fileName, final Reader oldVersion, final Reader newVersion,
+            final Marker marker, final int contextLines) {
+        return render(PrismConfiguration.getInstance().createPrinter(), fileName, oldVersion, newVersion, marker,
+                contextLines);
+    }
+
+    /**
+     * Renders the differences of the two versions. Each version is read up to the character budget of the printer
+     * only, so the memory that is required to compare two huge files is bounded.
+     */
+    @VisibleForTesting
+    static String render(final SourcePrinter printer, final String fileName, final Reader oldVersion,
+            final Reader newVersion, final Marker marker, final int contextLines) {
+        try (oldVersion; newVersion) {
+            int budget = printer.getCharacterBudget();
+            var oldContent = SourceCodeDecoder.read(oldVersion, budget);
+            var newContent = SourceCodeDecoder.read(newVersion, budget);
+            boolean isOldTruncated = oldContent.length() >= budget && oldVersion.read() >= 0;
+            boolean isNewTruncated = newContent.length() >= budget && newVersion.read() >= 0;
+
+            return printer.renderDiff(fileName, toLines(oldContent, isOldTruncated),
+                    toLines(newContent, isNewTruncated), marker, contextLines, isOldTruncated || isNewTruncated);
+        }
+        catch (IOException exception) {
+            return asErrorMessage(exception);
+        }
+    }
+
+    /**
+     * Splits the content into lines. If the content has been truncated, the last line might be incomplete, so it will
+     * be skipped.
+     */
+    private static List<String> toLines(final CharSequence content, final boolean isTruncated) {
+        List<String> lines = new ArrayList<>(content.toString().lines().toList());
+        if (isTruncated && !lines.isEmpty() && !StringUtils.endsWithAny(content, "\n", "\r")) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    private static String asErrorMessage(final IOException exception) {
+        return String.format("%s%n%s", ExceptionUtils.getMessage(exception), ExceptionUtils.getStackTrace(exception));
+    }
+
+    private final Run<?, ?> owner;
+    private final Run<?, ?> reference;
+    private final String fileName;
+    private final String sourceCode;
+
+    private SourceCodeDiffViewModel(final Run<?, ?> owner, final Run<?, ?> reference, final String fileName,
+            final String sourceCode) {
+        this.owner = owner;
+        this.reference = reference;
+        this.fileName = fileName;
+        this.sourceCode = sourceCode;
+    }
+
+    public PrismConfiguration getPrismConfiguration() {
+        return PrismConfiguration.getInstance();
+    }
+
+    @Override
+    public String getDisplayName() {
+        return fileName;
+    }
+
+    /**
+     * Returns the build as the owner of this view.
+     *
+     * @return the build
+     */
+    public Run<?, ?> getOwner() {
+        return owner;
+    }
+
+    /**
+     * Returns the reference build that provides the old version of the file.
+     *
+     * @return the reference build
+     */
+    public Run<?, ?> getReference() {
+        return reference;
+    }
+
+    /**
+     * Returns the colorized differences of the source code.
+     *
+     * @return the differences of the source code
+     */
+    public String getSourceCode() {
+        return sourceCode;
+    }
+}
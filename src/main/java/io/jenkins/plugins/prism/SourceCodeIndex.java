@@ -0,0 +1,218 @@
+package io.jenkins.plugins.prism;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import hudson.model.Job;
+
+/**
+ * Persistent per-job index of the builds that still might contain stored source code files in a given directory. The
+ * index is stored in the root folder of the job and consists of the number of the last build that has already been
+ * scanned and the numbers of all builds that still contain source code files, together with the size of these files
+ * in bytes. This index makes it possible to clean up old source code files without loading the whole build history of
+ * a job and without computing the disk usage of the stored files again and again.
+ *
+ * @author Ullrich Hafner
+ */
+@SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "The index is stored in the job folder")
+class SourceCodeIndex {
+    private static final String SUFFIX = ".prism-source-index";
+    private static final String SEPARATOR = "\t";
+    private static final Object LOCK = new Object();
+
+    /** Marks builds whose size of the stored source code files is not known yet. */
+    static final long UNKNOWN_SIZE = -1;
+
+    private final int scannedUntil;
+    private final SortedMap<Integer, Long> pendingBuilds;
+
+    SourceCodeIndex(final int scannedUntil, final SortedMap<Integer, Long> pendingBuilds) {
+        this.scannedUntil = scannedUntil;
+        this.pendingBuilds = pendingBuilds;
+    }
+
+    /**
+     * Returns the number of the last build that has been scanned for source code files. All builds up to this
+     * number either do not have source code files anymore or are part of the {@link #getPendingBuilds() pending
+     * builds}.
+     *
+     * @return the number of the last scanned build, or 0 if the build history has not been scanned yet
+     */
+    int getScannedUntil() {
+        return scannedUntil;
+    }
+
+    /**
+     * Returns the numbers of the builds that still might contain source code files.
+     *
+     * @return the numbers of the pending builds
+     */
+    SortedSet<Integer> getPendingBuilds() {
+        return new TreeSet<>(pendingBuilds.keySet());
+    }
+
+    /**
+     * Returns the size of the stored source code files of the specified build.
+     *
+     * @param buildNumber
+     *         the number of the build
+     *
+     * @return the size in bytes, or {@link #UNKNOWN_SIZE} if the size is not known
+     */
+    long getSize(final int buildNumber) {
+        return pendingBuilds.getOrDefault(buildNumber, UNKNOWN_SIZE);
+    }
+
+    /**
+     * Returns the total size of the stored source code files of all builds with a known size.
+     *
+     * @return the total size in bytes
+     */
+    long getTotalSize() {
+        return pendingBuilds.values().stream().mapToLong(size -> Math.max(size, 0)).sum();
+    }
+
+    /**
+     * Reads the index of the specified job and source code directory.
+     *
+     * @param job
+     *         the job to get the index for
+     * @param directory
+     *         the directory, where the source code files are stored within each build
+     *
+     * @return the index, or an empty index if the build history of the job has not been scanned yet
+     * @throws IOException
+     *         if the index could not be read
+     */
+    static SourceCodeIndex read(final Job<?, ?> job, final String directory) throws IOException {
+        synchronized (LOCK) {
+            return read(getIndexFile(job, directory));
+        }
+    }
+
+    /**
+     * Writes the index of the specified job and source code directory.
+     *
+     * @param job
+     *         the job to write the index for
+     * @param directory
+     *         the directory, where the source code files are stored within each build
+     * @param index
+     *         the index to write
+     *
+     * @throws IOException
+     *         if the index could not be written
+     */
+    static void write(final Job<?, ?> job, final String directory, final SourceCodeIndex index) throws IOException {
+        synchronized (LOCK) {
+            write(getIndexFile(job, directory), index);
+        }
+    }
+
+    /**
+     * Records the size of the stored source code files of the specified build. The size is recorded when the files
+     * are stored, so the cleanup does not need to compute the disk usage of the build.
+     *
+     * @param job
+     *         the job of the build
+     * @param directory
+     *         the directory, where the source code files are stored within each build
+     * @param buildNumber
+     *         the number of the build
+     * @param size
+     *         the size of the stored source code files in bytes
+     *
+     * @throws IOException
+     *         if the index could not be updated
+     */
+    static void record(final Job<?, ?> job, final String directory, final int buildNumber, final long size)
+            throws IOException {
+        if (buildNumber <= 0) {
+            return;
+        }
+        synchronized (LOCK) {
+            Path file = getIndexFile(job, directory);
+            var index = read(file);
+            index.pendingBuilds.put(buildNumber, size);
+            write(file, index);
+        }
+    }
+
+    /**
+     * Removes the specified build from all indexes of the specified job.
+     *
+     * @param job
+     *         the job of the build
+     * @param buildNumber
+     *         the number of the build to remove
+     *
+     * @throws IOException
+     *         if the indexes could not be updated
+     */
+    static void remove(final Job<?, ?> job, final int buildNumber) throws IOException {
+        synchronized (LOCK) {
+            for (Path file : findIndexFiles(job)) {
+                var index = read(file);
+                if (index.pendingBuilds.remove(buildNumber) != null) {
+                    write(file, index);
+                }
+            }
+        }
+    }
+
+    private static List<Path> findIndexFiles(final Job<?, ?> job) throws IOException {
+        Path jobDirectory = job.getRootDir().toPath();
+        if (!Files.isDirectory(jobDirectory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(jobDirectory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).toList();
+        }
+    }
+
+    private static Path getIndexFile(final Job<?, ?> job, final String directory) {
+        return job.getRootDir().toPath().resolve(directory.replaceAll("[^\\w.-]", "_") + SUFFIX);
+    }
+
+    private static SourceCodeIndex read(final Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return new SourceCodeIndex(0, new TreeMap<>());
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            return new SourceCodeIndex(0, new TreeMap<>());
+        }
+        SortedMap<Integer, Long> pending = new TreeMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            pending.put(NumberUtils.toInt(StringUtils.substringBefore(line, SEPARATOR).trim()),
+                    NumberUtils.toLong(StringUtils.substringAfter(line, SEPARATOR).trim(), UNKNOWN_SIZE));
+        }
+        pending.remove(0);
+        return new SourceCodeIndex(NumberUtils.toInt(lines.get(0).trim()), pending);
+    }
+
+    private static void write(final Path file, final SourceCodeIndex index) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.valueOf(index.scannedUntil));
+        index.pendingBuilds.forEach((number, size) -> lines.add(number + SEPARATOR + size));
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, lines, StandardCharsets.UTF_8);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
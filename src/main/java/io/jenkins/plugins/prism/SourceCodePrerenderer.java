@@ -0,0 +1,254 @@
+package io.jenkins.plugins.prism;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import hudson.Util;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Renders source code views in the background after a build has been completed and persists the resulting HTML
+ * fragments next to the source code files in a {@link SourceCodeStore}. When a user opens such a view later on,
+ * {@link SourceCodeViewModel#create(Run, String, SourceCodeStore, Charset, Marker)} serves the persisted fragment
+ * rather than rendering the source code file again.
+ *
+ * <p>
+ * Plugins register the files (and markers) that should be pre-rendered using
+ * {@link #schedule(Run, SourceCodeStore, Charset, String, Marker)}. If the build is still running, the fragments will
+ * be rendered as soon as the build has been finalized, otherwise they will be rendered immediately.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+@SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Fragments are stored in the build folder")
+public final class SourceCodePrerenderer {
+    private static final Logger LOGGER = Logger.getLogger(SourceCodePrerenderer.class.getName());
+    private static final String FRAGMENTS = "prism-fragments";
+    private static final int MAX_QUEUED_BUILDS = 1_000;
+    private static final SourceCodePrerenderer INSTANCE = new SourceCodePrerenderer(createExecutor(),
+            () -> PrismConfiguration.getInstance().createPrinter());
+
+    /**
+     * Returns the singleton instance of the pre-renderer.
+     *
+     * @return the singleton instance
+     */
+    public static SourceCodePrerenderer getInstance() {
+        return INSTANCE;
+    }
+
+    private static Executor createExecutor() {
+        var executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(MAX_QUEUED_BUILDS),
+                new NamingThreadFactory(new DaemonThreadFactory(), "Prism source code pre-rendering"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private final Executor executor;
+    private final Supplier<SourcePrinter> printerFactory;
+    private final Map<String, PendingBuild> pendingFragments = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    SourceCodePrerenderer(final Executor executor) {
+        this(executor, () -> Integer.MAX_VALUE);
+    }
+
+    @VisibleForTesting
+    SourceCodePrerenderer(final Executor executor, final IntSupplier characterBudget) {
+        this(executor, () -> new SourcePrinter(characterBudget.getAsInt()));
+    }
+
+    private SourceCodePrerenderer(final Executor executor, final Supplier<SourcePrinter> printerFactory) {
+        this.executor = executor;
+        this.printerFactory = printerFactory;
+    }
+
+    /**
+     * Schedules the pre-rendering of the specified source code file.
+     *
+     * @param build
+     *         the build that owns the source code file
+     * @param store
+     *         the store that contains the source code file
+     * @param charset
+     *         the charset of the source code file
+     * @param fileName
+     *         the name of the source code file in the store
+     * @param marker
+     *         the marker to show in the source code view
+     */
+    public void schedule(final Run<?, ?> build, final SourceCodeStore store, final Charset charset,
+            final String fileName, final Marker marker) {
+        var fragment = new Fragment(store, charset, fileName, marker);
+        if (build.isBuilding()) {
+            addPending(build, fragment);
+        }
+        else {
+            submit(build, List.of(fragment));
+        }
+    }
+
+    private void addPending(final Run<?, ?> build, final Fragment fragment) {
+        String id = build.getExternalizableId();
+        if (!pendingFragments.containsKey(id) && pendingFragments.size() >= MAX_QUEUED_BUILDS) {
+            submitStaleBuilds();
+            if (pendingFragments.size() >= MAX_QUEUED_BUILDS) {
+                LOGGER.log(Level.WARNING,
+                        "Skipping pre-rendering of source code file {0} of {1}: too many running builds",
+                        new Object[] {fragment.fileName(), build});
+                return;
+            }
+        }
+        pendingFragments.computeIfAbsent(id, key -> new PendingBuild(build, new CopyOnWriteArrayList<>()))
+                .fragments().add(fragment);
+    }
+
+    /**
+     * Renders the fragments of builds that are not running anymore but have never been finalized, e.g., since
+     * Jenkins has been interrupted while finalizing the build.
+     */
+    private void submitStaleBuilds() {
+        for (var entry : pendingFragments.entrySet()) {
+            var pending = entry.getValue();
+            if (!pending.build().isBuilding() && pendingFragments.remove(entry.getKey(), pending)) {
+                submit(pending.build(), pending.fragments());
+            }
+        }
+    }
+
+    /**
+     * Renders all fragments that have been scheduled for the specified build while it was running.
+     *
+     * @param build
+     *         the build that has been finalized
+     */
+    void onFinalized(final Run<?, ?> build) {
+        var pending = pendingFragments.remove(build.getExternalizableId());
+        if (pending != null) {
+            submit(build, pending.fragments());
+        }
+    }
+
+    /**
+     * Discards all fragments that have been scheduled for the specified build while it was running.
+     *
+     * @param build
+     *         the build that has been deleted
+     */
+    void onDeleted(final Run<?, ?> build) {
+        pendingFragments.remove(build.getExternalizableId());
+    }
+
+    /**
+     * Returns the pre-rendered HTML fragment of the specified source code file and marker.
+     *
+     * @param build
+     *         the build that owns the source code file
+     * @param store
+     *         the store that contains the source code file
+     * @param fileName
+     *         the name of the source code file in the store
+     * @param marker
+     *         the marker to show in the source code view
+     *
+     * @return the HTML fragment, or an empty result if the file has not been pre-rendered
+     */
+    public Optional<String> find(final Run<?, ?> build, final SourceCodeStore store, final String fileName,
+            final Marker marker) {
+        var printer = printerFactory.get();
+        Path file = getFragmentFile(build, store, fileName, marker, printer);
+        if (Files.exists(file)) {
+            try {
+                return Optional.of(Files.readString(file, StandardCharsets.UTF_8));
+            }
+            catch (IOException exception) {
+                LOGGER.log(Level.WARNING, "Could not read pre-rendered source code file " + file, exception);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void submit(final Run<?, ?> build, final List<Fragment> fragments) {
+        try {
+            executor.execute(() -> render(build, fragments));
+        }
+        catch (RejectedExecutionException exception) {
+            LOGGER.log(Level.WARNING, "Skipping pre-rendering of source code files of " + build, exception);
+        }
+    }
+
+    private void render(final Run<?, ?> build, final List<Fragment> fragments) {
+        var printer = printerFactory.get();
+        for (Fragment fragment : fragments) {
+            try {
+                var source = fragment.store().find(build, fragment.fileName());
+                if (source.isEmpty()) {
+                    throw new NoSuchFileException(fragment.fileName());
+                }
+                String html = SourceCodeViewModel.render(printer, fragment.fileName(), source.get(),
+                        fragment.charset(), fragment.marker(), LineDecorations.NONE);
+
+                Path file = getFragmentFile(build, fragment.store(), fragment.fileName(), fragment.marker(), printer);
+                Files.createDirectories(file.getParent());
+                Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.writeString(temporary, html, StandardCharsets.UTF_8);
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException | RuntimeException exception) {
+                LOGGER.log(Level.WARNING, "Could not pre-render source code file " + fragment.fileName()
+                        + " of " + build, exception);
+            }
+        }
+    }
+
+    /**
+     * Returns the file of the fragment. The name of the file is a digest of the source code file, the marker, and the
+     * configuration of the printer, so fragments that have been rendered with a different version of the markup or a
+     * different configuration will not be found anymore.
+     */
+    private Path getFragmentFile(final Run<?, ?> build, final SourceCodeStore store, final String fileName,
+            final Marker marker, final SourcePrinter printer) {
+        return build.getRootDir().toPath()
+                .resolve(store.getDirectory())
+                .resolve(FRAGMENTS)
+                .resolve(Util.getDigestOf(String.join("\n", printer.getConfigurationKey(), fileName,
+                        createKey(marker))) + ".html");
+    }
+
+    private String createKey(final Marker marker) {
+        return String.join("\n", marker.getTitle(), marker.getIcon(), marker.getDescription(),
+                String.valueOf(marker.getLineStart()), String.valueOf(marker.getLineEnd()),
+                String.valueOf(marker.getColumnStart()), String.valueOf(marker.getColumnEnd()));
+    }
+
+    private record Fragment(SourceCodeStore store, Charset charset, String fileName, Marker marker) {
+    }
+
+    private record PendingBuild(Run<?, ?> build, List<Fragment> fragments) {
+    }
+}
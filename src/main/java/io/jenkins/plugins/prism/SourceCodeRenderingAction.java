@@ -0,0 +1,74 @@
+package io.jenkins.plugins.prism;
+
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.net.HttpURLConnection;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import hudson.Extension;
+import hudson.model.RootAction;
+
+/**
+ * Provides the source code views that could not be rendered within the deadline of the {@link PrismConfiguration} at
+ * {@code /prism-rendering/}. The "still loading" page of a {@link SourceCodeViewModel} polls this endpoint until the
+ * view has been rendered. This endpoint is not visible in the user interface.
+ *
+ * @author Ullrich Hafner
+ */
+@Extension
+public class SourceCodeRenderingAction implements RootAction {
+    /** The URL of this action. */
+    static final String URL_NAME = "prism-rendering";
+
+    private final SourceCodeRenderingService service;
+
+    /**
+     * Creates a new instance of {@link SourceCodeRenderingAction}.
+     */
+    public SourceCodeRenderingAction() {
+        this(SourceCodeRenderingService.getInstance());
+    }
+
+    @VisibleForTesting
+    SourceCodeRenderingAction(final SourceCodeRenderingService service) {
+        this.service = service;
+    }
+
+    @CheckForNull
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @CheckForNull
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * Returns the rendered source code view with the specified ID.
+     *
+     * @param id
+     *         the ID of the view
+     *
+     * @return the view as HTML fragment, the status 202 (accepted) if the view is still being rendered, or a not
+     *         found response if the view does not exist
+     */
+    public HttpResponse doIndex(@QueryParameter final String id) {
+        return switch (service.poll(id)) {
+            case LOADING -> HttpResponses.status(HttpURLConnection.HTTP_ACCEPTED);
+            case DONE -> service.take(id).<HttpResponse>map(HttpResponses::literalHtml)
+                    .orElseGet(HttpResponses::notFound);
+            case UNKNOWN -> HttpResponses.notFound();
+        };
+    }
+}
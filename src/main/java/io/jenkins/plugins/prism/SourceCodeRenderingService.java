@@ -0,0 +1,267 @@
+package io.jenkins.plugins.prism;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+
+/**
+ * Reads and renders source code views on a dedicated executor so that request threads are not blocked by slow I/O,
+ * e.g., when the source code is read from a busy agent. The rendering tasks open (and close) the source code by
+ * themselves, so the deadline of the {@link PrismConfiguration} applies to reading the source code as well: the request
+ * thread waits for the rendered view until the deadline has been reached. If the view is not ready by then, the
+ * rendering continues in the background and the browser polls for the result using {@link SourceCodeRenderingAction}.
+ * Only if the executor rejects a view, the view is read and rendered in the request thread.
+ *
+ * <p>
+ * If the JDK supports virtual threads, then each view is rendered in its own virtual thread, otherwise a bounded pool
+ * of daemon threads is used.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+final class SourceCodeRenderingService {
+    private static final Logger LOGGER = Logger.getLogger(SourceCodeRenderingService.class.getName());
+    private static final long EXPIRATION_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int MAX_THREADS = 4 * Runtime.getRuntime().availableProcessors();
+    /** The number of tasks per thread that are queued by the pool of daemon threads before new tasks are rejected. */
+    private static final int MAX_QUEUED_TASKS_PER_THREAD = 4;
+    private static final SourceCodeRenderingService INSTANCE = new SourceCodeRenderingService(
+            createExecutor("Prism source code rendering", MAX_THREADS),
+            () -> PrismConfiguration.getInstance().getRenderingDeadline() * 1000L,
+            () -> Jenkins.getAuthentication2().getName());
+
+    /**
+     * Returns the singleton instance of the rendering service.
+     *
+     * @return the singleton instance
+     */
+    static SourceCodeRenderingService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Creates an executor that runs each task in a virtual thread, if the JDK supports virtual threads. Otherwise, a
+     * pool of daemon threads with a bounded queue is created: if the queue is full, then new tasks will be rejected.
+     *
+     * @param name
+     *         the name of the threads in the pool
+     * @param maxThreads
+     *         the maximum number of threads in the pool
+     *
+     * @return the executor
+     */
+    static ExecutorService createExecutor(final String name, final int maxThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (ReflectiveOperationException | RuntimeException exception) {
+            // virtual threads are not supported by this JDK
+            var executor = new ThreadPoolExecutor(maxThreads, maxThreads, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(maxThreads * MAX_QUEUED_TASKS_PER_THREAD),
+                    new NamingThreadFactory(new DaemonThreadFactory(), name));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final LongSupplier deadlineMillis;
+    private final Supplier<String> currentUser;
+    private final Map<String, Pending> pendingViews = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    SourceCodeRenderingService(final ExecutorService executor, final LongSupplier deadlineMillis,
+            final Supplier<String> currentUser) {
+        this.executor = executor;
+        this.deadlineMillis = deadlineMillis;
+        this.currentUser = currentUser;
+    }
+
+    /**
+     * Renders a source code view on the executor of this service and waits until the view has been rendered or the
+     * deadline has been reached. If the executor rejects the view, then the view is rendered in the calling thread.
+     *
+     * @param renderer
+     *         the task that renders the source code view
+     * @param errorView
+     *         creates the view that shows the exception if the rendering fails
+     *
+     * @return the rendered view, or the ID of the pending view if the deadline has been reached
+     */
+    Rendering render(final Callable<String> renderer, final Function<Throwable, String> errorView) {
+        removeExpiredViews();
+
+        Future<String> future;
+        try {
+            future = executor.submit(renderer);
+        }
+        catch (RejectedExecutionException exception) {
+            LOGGER.log(Level.WARNING, "Rendering executor rejected the source code view", exception);
+            return Rendering.completed(call(renderer, errorView));
+        }
+
+        try {
+            return Rendering.completed(future.get(deadlineMillis.getAsLong(), TimeUnit.MILLISECONDS));
+        }
+        catch (TimeoutException exception) {
+            return Rendering.pending(register(future, errorView));
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+
+            return Rendering.pending(register(future, errorView));
+        }
+        catch (ExecutionException exception) {
+            LOGGER.log(Level.WARNING, "Rendering of source code view failed", exception.getCause());
+
+            return Rendering.completed(errorView.apply(exception.getCause()));
+        }
+    }
+
+    private String call(final Callable<String> renderer, final Function<Throwable, String> errorView) {
+        try {
+            return renderer.call();
+        }
+        catch (Exception exception) { // NOPMD: the renderer is a Callable
+            LOGGER.log(Level.WARNING, "Rendering of source code view failed", exception);
+
+            return errorView.apply(exception);
+        }
+    }
+
+    private String register(final Future<String> future, final Function<Throwable, String> errorView) {
+        String id = UUID.randomUUID().toString();
+        pendingViews.put(id, new Pending(currentUser.get(), future, errorView, System.nanoTime()));
+        return id;
+    }
+
+    /**
+     * Returns the state of the pending view with the specified ID. Only the user that requested the view can see
+     * the state.
+     *
+     * @param id
+     *         the ID of the pending view
+     *
+     * @return the state of the pending view
+     */
+    PendingState poll(@CheckForNull final String id) {
+        removeExpiredViews();
+
+        if (id == null) {
+            return PendingState.UNKNOWN;
+        }
+        var pending = pendingViews.get(id);
+        if (pending == null || !pending.user().equals(currentUser.get())) {
+            return PendingState.UNKNOWN;
+        }
+        if (!pending.future().isDone()) {
+            return PendingState.LOADING;
+        }
+        return PendingState.DONE;
+    }
+
+    /**
+     * Removes the completed view with the specified ID and returns the rendered HTML. Only the user that requested
+     * the view can obtain the result, and only once.
+     *
+     * @param id
+     *         the ID of the completed view
+     *
+     * @return the rendered HTML (or the error view if the rendering failed), or an empty optional if the view is
+     *         unknown or not yet completed
+     */
+    Optional<String> take(@CheckForNull final String id) {
+        if (poll(id) != PendingState.DONE) {
+            return Optional.empty();
+        }
+        var pending = pendingViews.remove(id);
+        if (pending == null) { // already taken by a concurrent request
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(pending.future().get());
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+
+            return Optional.empty();
+        }
+        catch (ExecutionException exception) {
+            LOGGER.log(Level.WARNING, "Rendering of source code view failed", exception.getCause());
+
+            return Optional.of(pending.errorView().apply(exception.getCause()));
+        }
+    }
+
+    private void removeExpiredViews() {
+        long now = System.nanoTime();
+        pendingViews.values().removeIf(pending -> {
+            if (now - pending.created() > EXPIRATION_NANOS) {
+                pending.future().cancel(true);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /** The state of a pending view. */
+    enum PendingState {
+        /** The view does not exist or belongs to another user. */
+        UNKNOWN,
+        /** The view is still being rendered. */
+        LOADING,
+        /** The view has been rendered. */
+        DONE
+    }
+
+    /**
+     * The result of {@link #render(Callable, Function)}: either the rendered HTML or the ID of the view that is still being
+     * rendered.
+     *
+     * @param html
+     *         the rendered HTML, or {@code null} if the view is still being rendered
+     * @param id
+     *         the ID of the pending view, or {@code null} if the view has been rendered
+     */
+    record Rendering(@CheckForNull String html, @CheckForNull String id) {
+        static Rendering completed(final String html) {
+            return new Rendering(html, null);
+        }
+
+        static Rendering pending(final String id) {
+            return new Rendering(null, id);
+        }
+
+        boolean isCompleted() {
+            return id == null;
+        }
+    }
+
+    private record Pending(String user, Future<String> future, Function<Throwable, String> errorView, long created) {
+    }
+}
@@ -3,16 +3,26 @@ package io.jenkins.plugins.prism;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-
-import org.apache.commons.io.FileUtils;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
 
 import edu.hm.hafner.util.FilteredLog;
+import edu.hm.hafner.util.VisibleForTesting;
 
 import org.jvnet.localizer.LocaleProvider;
 import org.jvnet.localizer.Localizable;
+import hudson.model.Job;
 import hudson.model.Run;
 import hudson.util.ListBoxModel;
 
+import io.jenkins.plugins.prism.PrismEvents.RetentionCleanupEvent;
+
 /**
  * Defines the retention strategy for source code files.
  */
@@ -21,10 +31,31 @@ public enum SourceCodeRetention {
     NEVER(new CleanupOldBuilds(), Messages._SourceCodeRetention_NEVER()),
     /** Store source code files of the last build, delete older artifacts. */
     LAST_BUILD(new CleanupOldBuilds(), Messages._SourceCodeRetention_LAST_BUILD()),
-    /** Store source code files for all builds, never delete those files automatically. */
+    /**
+     * Store source code files for all builds, never delete those files automatically. Use a {@link SourceCodeStore}
+     * to store only the distinct contents of the files.
+     */
     EVERY_BUILD(new Cleanup(), Messages._SourceCodeRetention_EVERY_BUILD()),
-    /** Store only changed source code files for all builds, never delete those files automatically. */
-    MODIFIED(new Cleanup(), Messages._SourceCodeRetention_MODIFIED());
+    /**
+     * Store only changed source code files for all builds, never delete those files automatically. Use a
+     * {@link SourceCodeStore} to store only the distinct contents of the files.
+     */
+    MODIFIED(new Cleanup(), Messages._SourceCodeRetention_MODIFIED()),
+    /**
+     * Store source code files of the last builds, delete older artifacts. The number of builds is configured in
+     * {@link PrismConfiguration#getSourceCodeRetentionBuilds()}.
+     */
+    LAST_BUILDS(new KeepLastBuilds(), Messages._SourceCodeRetention_LAST_BUILDS()),
+    /**
+     * Store source code files of the builds of the last days, delete older artifacts. The number of days is
+     * configured in {@link PrismConfiguration#getSourceCodeRetentionDays()}.
+     */
+    LAST_DAYS(new KeepRecentBuilds(), Messages._SourceCodeRetention_LAST_DAYS()),
+    /**
+     * Store source code files of the last builds as long as the total size of these files is below a quota, delete
+     * older artifacts. The quota is configured in {@link PrismConfiguration#getSourceCodeRetentionQuota()}.
+     */
+    DISK_QUOTA(new KeepWithinQuota(), Messages._SourceCodeRetention_DISK_QUOTA());
 
     /**
      * Returns all available {@link SourceCodeRetention} strategies as a {@link ListBoxModel}.
@@ -53,7 +84,8 @@ public enum SourceCodeRetention {
     }
 
     /**
-     * Cleanup the stored source code files of previous builds.
+     * Cleanup the stored source code files of previous builds. The cleanup is executed asynchronously in a background
+     * thread, so this method returns immediately.
      *
      * @param build
      *         starting with this build, all previous builds will be scanned for source code files that can be deleted
@@ -72,24 +104,337 @@ public enum SourceCodeRetention {
         }
     }
 
+    /**
+     * Deletes the source code files of previous builds. In order to avoid scanning the whole build history for each
+     * cleanup, a {@link SourceCodeIndex} is used: only builds that have not been scanned yet or builds that still
+     * contain source code files are visited. The size of the source code files is recorded in the index as well, so
+     * that the disk usage of the stored source code files is never computed for the whole build history. By default,
+     * the source code files of all previous builds are deleted, subclasses may retain some of these builds.
+     */
     static class CleanupOldBuilds extends Cleanup {
+        private static final SourceCodeDeleter DELETER = new SourceCodeDeleter();
+        private static final String TRASH = "prism-trash";
+        private static final PrismMetrics METRICS = PrismMetrics.getInstance();
+
+        private final SourceCodeCleanupQueue queue;
+
+        CleanupOldBuilds() {
+            this(SourceCodeCleanupQueue.getInstance());
+        }
+
+        @VisibleForTesting
+        CleanupOldBuilds(final SourceCodeCleanupQueue queue) {
+            super();
+
+            this.queue = queue;
+        }
+
         @Override
         void clean(final Run<?, ?> currentBuild, final String directory, final FilteredLog log) {
-            for (Run<?, ?> build = currentBuild.getPreviousCompletedBuild();
-                    build != null; build = build.getPreviousCompletedBuild()) {
-                Path buildDir = build.getRootDir().toPath();
-                Path sourcesFolder = buildDir.resolve(directory);
-                if (Files.exists(sourcesFolder)) {
+            queue.schedule(currentBuild, directory,
+                    backgroundLog -> deleteSourcesOfPreviousBuilds(currentBuild, directory, backgroundLog), log);
+        }
+
+        /**
+         * Returns whether the source code files of the specified build should be retained.
+         *
+         * @param build
+         *         the build to check
+         * @param retainedBuilds
+         *         the number of newer builds whose source code files are retained (including the current build)
+         * @param retainedSize
+         *         the size of the source code files of these newer builds in bytes
+         * @param size
+         *         the size of the source code files of the specified build in bytes
+         *
+         * @return {@code true} if the source code files should be retained, {@code false} if they should be deleted
+         */
+        boolean shouldRetain(final Run<?, ?> build, final int retainedBuilds, final long retainedSize,
+                final long size) {
+            return false;
+        }
+
+        /**
+         * Returns whether {@link #shouldRetain(Run, int, long, long)} uses the size of the source code files. Then,
+         * the size of a build stored in a {@link SourceCodeStore} is the size of the contents that are not shared
+         * with a newer retained build, so each distinct content is counted only once.
+         *
+         * @return {@code true} if the size of the source code files is used, {@code false} otherwise
+         */
+        boolean isSizeRequired() {
+            return false;
+        }
+
+        @VisibleForTesting
+        void deleteSourcesOfPreviousBuilds(final Run<?, ?> currentBuild, final String directory,
+                final FilteredLog log) {
+            long start = System.nanoTime();
+            var event = new RetentionCleanupEvent();
+            event.begin();
+            try {
+                deleteSourcesUsingIndex(currentBuild, directory, log, event);
+            }
+            finally {
+                METRICS.stop(PrismMetrics.CLEANUP, start);
+                if (event.shouldCommit()) {
+                    event.job = currentBuild.getParent().getFullName();
+                    event.directory = directory;
+                    event.commit();
+                }
+            }
+        }
+
+        private void deleteSourcesUsingIndex(final Run<?, ?> currentBuild, final String directory,
+                final FilteredLog log, final RetentionCleanupEvent event) {
+            Job<?, ?> job = currentBuild.getParent();
+            try {
+                DELETER.sweep(getTrash(job));
+            }
+            catch (IOException exception) {
+                log.logException(exception, "Could not delete the remaining source code files in the trash folder");
+            }
+
+            SourceCodeIndex index;
+            try {
+                index = SourceCodeIndex.read(job, directory);
+            }
+            catch (IOException exception) {
+                log.logException(exception, "Could not read index of source code files, scanning all builds");
+                index = new SourceCodeIndex(0, new TreeMap<>());
+            }
+
+            int currentNumber = currentBuild.getNumber();
+            TreeSet<Integer> candidates = new TreeSet<>(index.getPendingBuilds());
+            for (Run<?, ?> build = currentBuild.getPreviousBuild();
+                    build != null && build.getNumber() > index.getScannedUntil(); build = build.getPreviousBuild()) {
+                candidates.add(build.getNumber());
+            }
+
+            SortedMap<Integer, Long> remaining = new TreeMap<>();
+            Set<String> retainedContents = new HashSet<>();
+            int retainedBuilds = 0;
+            long retainedSize = 0;
+            boolean isRetaining = true;
+            Path currentSources = getSourcesFolder(currentBuild, directory);
+            if (Files.exists(currentSources)) {
+                long size = getSize(index, currentBuild, directory, log);
+                remaining.put(currentNumber, size);
+                retainedBuilds++;
+                retainedSize += getRetainedSize(currentBuild, directory, size, retainedContents, log);
+            }
+
+            for (int number : candidates.descendingSet()) {
+                if (number > currentNumber) {
+                    remaining.put(number, index.getSize(number));
+                    continue;
+                }
+                if (number == currentNumber) {
+                    continue;
+                }
+                Run<?, ?> build = job.getBuildByNumber(number);
+                if (build == null) {
+                    continue;
+                }
+                Path sources = getSourcesFolder(build, directory);
+                if (!Files.exists(sources)) {
+                    continue;
+                }
+                long size = getSize(index, build, directory, log);
+                long retained = isRetaining
+                        ? getRetainedSize(build, directory, size, retainedContents, log) : Math.max(size, 0);
+                if (build.isBuilding() || isRetaining && shouldRetain(build, retainedBuilds, retainedSize, retained)) {
+                    remaining.put(number, size);
+                    retainedBuilds++;
+                    retainedSize += retained;
+                }
+                else {
+                    isRetaining = false; // the first build that is not retained: all older builds are deleted
+                    if (deleteSources(build, directory, log)) {
+                        METRICS.increment(PrismMetrics.CLEANUP_BUILDS, 1);
+                        METRICS.increment(PrismMetrics.CLEANUP_BYTES, Math.max(size, 0));
+                        event.deletedBuilds++;
+                        event.deletedBytes += Math.max(size, 0);
+                    }
+                    else {
+                        remaining.put(number, size);
+                    }
+                }
+            }
+
+            try {
+                SourceCodeIndex.write(job, directory,
+                        new SourceCodeIndex(Math.max(index.getScannedUntil(), currentNumber), remaining));
+            }
+            catch (IOException exception) {
+                log.logException(exception, "Could not write index of source code files");
+            }
+        }
+
+        private Path getSourcesFolder(final Run<?, ?> build, final String directory) {
+            return build.getRootDir().toPath().resolve(directory);
+        }
+
+        private Path getTrash(final Job<?, ?> job) {
+            return job.getRootDir().toPath().resolve(TRASH);
+        }
+
+        /**
+         * Returns the size of the source code files of the specified build. The size is recorded in the index when
+         * the files are stored in a {@link SourceCodeStore}. Otherwise, the size is computed once while the build is
+         * added to the index and recorded afterward. The size of builds that are part of the index already is never
+         * computed by walking the source code folder again, it remains {@link SourceCodeIndex#UNKNOWN_SIZE unknown}.
+         */
+        private long getSize(final SourceCodeIndex index, final Run<?, ?> build, final String directory,
+                final FilteredLog log) {
+            long size = index.getSize(build.getNumber());
+            if (size != SourceCodeIndex.UNKNOWN_SIZE) {
+                return size;
+            }
+            var store = new SourceCodeStore(directory);
+            if (store.hasSources(build)) {
+                try {
+                    return store.computeSize(build);
+                }
+                catch (IOException exception) {
+                    log.logException(exception, "Could not compute size of stored source code files of build "
+                            + build.getDisplayName());
+                    return SourceCodeIndex.UNKNOWN_SIZE;
+                }
+            }
+            if (build.getNumber() <= index.getScannedUntil()) {
+                return SourceCodeIndex.UNKNOWN_SIZE;
+            }
+            return computeSize(getSourcesFolder(build, directory), log);
+        }
+
+        /**
+         * Returns the size that is counted for the specified build when it is retained. If the strategy uses the
+         * size, then the contents of a build in a {@link SourceCodeStore} that are shared with newer retained builds
+         * are not counted again. Builds with an unknown size are counted as empty.
+         */
+        private long getRetainedSize(final Run<?, ?> build, final String directory, final long size,
+                final Set<String> retainedContents, final FilteredLog log) {
+            if (isSizeRequired()) {
+                var store = new SourceCodeStore(directory);
+                if (store.hasSources(build)) {
                     try {
-                        FileUtils.deleteDirectory(sourcesFolder.toFile());
-                        log.logInfo("Deleting source code files of build " + build.getDisplayName());
+                        return store.computeSize(build, retainedContents);
                     }
                     catch (IOException exception) {
-                        log.logException(exception,
-                                "Could not delete source code files of build " + build.getDisplayName());
+                        log.logException(exception, "Could not compute size of stored source code files of build "
+                                + build.getDisplayName());
                     }
                 }
             }
+            return Math.max(size, 0);
+        }
+
+        private long computeSize(final Path sources, final FilteredLog log) {
+            try (Stream<Path> files = Files.walk(sources)) {
+                return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+            }
+            catch (IOException exception) {
+                log.logException(exception, "Could not compute size of source code files in " + sources);
+                return 0;
+            }
+        }
+
+        private boolean deleteSources(final Run<?, ?> build, final String directory, final FilteredLog log) {
+            try {
+                new SourceCodeStore(directory).release(build);
+                DELETER.delete(getSourcesFolder(build, directory), getTrash(build.getParent()));
+                log.logInfo("Deleting source code files of build " + build.getDisplayName());
+                return true;
+            }
+            catch (IOException exception) {
+                log.logException(exception,
+                        "Could not delete source code files of build " + build.getDisplayName());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Retains the source code files of the last builds.
+     */
+    static class KeepLastBuilds extends CleanupOldBuilds {
+        private final IntSupplier numberOfBuilds;
+
+        KeepLastBuilds() {
+            this(SourceCodeCleanupQueue.getInstance(),
+                    () -> PrismConfiguration.getInstance().getSourceCodeRetentionBuilds());
+        }
+
+        @VisibleForTesting
+        KeepLastBuilds(final SourceCodeCleanupQueue queue, final IntSupplier numberOfBuilds) {
+            super(queue);
+
+            this.numberOfBuilds = numberOfBuilds;
+        }
+
+        @Override
+        boolean shouldRetain(final Run<?, ?> build, final int retainedBuilds, final long retainedSize,
+                final long size) {
+            return retainedBuilds < numberOfBuilds.getAsInt();
+        }
+    }
+
+    /**
+     * Retains the source code files of the builds that have been started in the last days.
+     */
+    static class KeepRecentBuilds extends CleanupOldBuilds {
+        private final IntSupplier numberOfDays;
+
+        KeepRecentBuilds() {
+            this(SourceCodeCleanupQueue.getInstance(),
+                    () -> PrismConfiguration.getInstance().getSourceCodeRetentionDays());
+        }
+
+        @VisibleForTesting
+        KeepRecentBuilds(final SourceCodeCleanupQueue queue, final IntSupplier numberOfDays) {
+            super(queue);
+
+            this.numberOfDays = numberOfDays;
+        }
+
+        @Override
+        boolean shouldRetain(final Run<?, ?> build, final int retainedBuilds, final long retainedSize,
+                final long size) {
+            return build.getTimeInMillis()
+                    >= System.currentTimeMillis() - TimeUnit.DAYS.toMillis(numberOfDays.getAsInt());
+        }
+    }
+
+    /**
+     * Retains the source code files of the last builds as long as the total size of these files is below a quota.
+     * Contents of a {@link SourceCodeStore} that are shared by several builds are counted only once.
+     */
+    static class KeepWithinQuota extends CleanupOldBuilds {
+        private static final long MEGA_BYTE = 1024 * 1024;
+
+        private final IntSupplier quotaInMegaBytes;
+
+        KeepWithinQuota() {
+            this(SourceCodeCleanupQueue.getInstance(),
+                    () -> PrismConfiguration.getInstance().getSourceCodeRetentionQuota());
+        }
+
+        @VisibleForTesting
+        KeepWithinQuota(final SourceCodeCleanupQueue queue, final IntSupplier quotaInMegaBytes) {
+            super(queue);
+
+            this.quotaInMegaBytes = quotaInMegaBytes;
+        }
+
+        @Override
+        boolean shouldRetain(final Run<?, ?> build, final int retainedBuilds, final long retainedSize,
+                final long size) {
+            return retainedSize + size <= quotaInMegaBytes.getAsInt() * MEGA_BYTE;
+        }
+
+        @Override
+        boolean isSizeRequired() {
+            return true;
         }
     }
 }
@@ -0,0 +1,47 @@
+package io.jenkins.plugins.prism;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+
+/**
+ * Keeps the {@link SourceCodeIndex} and the {@link SourceCodeStore stores} of a job consistent when builds are deleted.
+ * Additionally, starts the {@link SourceCodePrerenderer pre-rendering} of source code views when a build has been
+ * finalized.
+ *
+ * @author Ullrich Hafner
+ */
+@Extension
+public class SourceCodeRunListener extends RunListener<Run<?, ?>> {
+    private static final Logger LOGGER = Logger.getLogger(SourceCodeRunListener.class.getName());
+
+    @Override
+    public void onFinalized(final Run<?, ?> run) {
+        SourceCodePrerenderer.getInstance().onFinalized(run);
+    }
+
+    @Override
+    public void onDeleted(@NonNull final Run<?, ?> run) {
+        SourceCodePrerenderer.getInstance().onDeleted(run);
+        try {
+            SourceCodeIndex.remove(run.getParent(), run.getNumber());
+        }
+        catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Could not update the source code index of " + run.getParent().getFullName(),
+                    exception);
+        }
+        try {
+            SourceCodeStore.releaseAll(run);
+        }
+        catch (IOException exception) {
+            LOGGER.log(Level.WARNING, "Could not release the stored source code files of " + run.getParent().getFullName(),
+                    exception);
+        }
+    }
+}
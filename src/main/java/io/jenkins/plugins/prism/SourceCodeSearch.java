@@ -0,0 +1,285 @@
+package io.jenkins.plugins.prism;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Strings;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.stream.Stream;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest2;
+import org.kohsuke.stapler.StaplerResponse2;
+import hudson.Util;
+import hudson.model.ModelObject;
+import hudson.model.Run;
+
+import io.jenkins.plugins.prism.Marker.MarkerBuilder;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Searches the source code files of a build that have been stored in a {@link SourceCodeStore}. The files are found
+ * using a {@link SourceCodeSearchIndex trigram index} that is created on the first search, so a query does not need
+ * to read all stored files. Plugins expose a search as Stapler endpoint, e.g. by returning it from a
+ * {@code getDynamic} method: the results of the query {@code q} will then be available as JSON at the URL of the
+ * search, and each hit links to a {@link SourceCodeViewModel} that marks the hit at {@code source}.
+ *
+ * @author Ullrich Hafner
+ */
+public class SourceCodeSearch {
+    /** The maximum number of files that are returned for a query. */
+    static final int MAX_FILES = 100;
+    /** The maximum number of hits that are returned for each file. */
+    static final int MAX_HITS_PER_FILE = 20;
+    private static final int MAX_LINE_LENGTH = 200;
+    /**
+     * The characters of a line beyond this limit are skipped while searching, so that a minified file is not read
+     * into memory as a whole. Hits after this limit are not found.
+     */
+    private static final int MAX_SEARCHED_LINE_LENGTH = 64 * 1024;
+    private static final String SOURCE = "source";
+
+    /**
+     * Creates a search over the stored source code files of the specified build. If the current user has no
+     * permission to view the source code, then the endpoints of the search will return a forbidden response.
+     *
+     * @param owner
+     *         the current build as the owner of the source code files
+     * @param store
+     *         the store that contains the source code files of the build
+     * @param charset
+     *         the charset of the stored source code files, used if the charset cannot be detected automatically
+     * @return the search
+     */
+    public static SourceCodeSearch create(final Run<?, ?> owner, final SourceCodeStore store, final Charset charset) {
+        return new SourceCodeSearch(owner, store, charset, SourceCodeViewModel.hasPermissionToViewSourceCode(owner));
+    }
+
+    private final Run<?, ?> owner;
+    private final SourceCodeStore store;
+    private final Charset charset;
+    private final boolean hasPermission;
+
+    @VisibleForTesting
+    SourceCodeSearch(final Run<?, ?> owner, final SourceCodeStore store, final Charset charset,
+            final boolean hasPermission) {
+        this.owner = owner;
+        this.store = store;
+        this.charset = charset;
+        this.hasPermission = hasPermission;
+    }
+
+    /**
+     * Returns the files and lines that contain the specified text as JSON object with the properties {@code files}
+     * and {@code truncated}. Each file has the properties {@code fileName} and {@code hits}, each hit has the
+     * properties {@code line}, {@code column}, {@code text}, and {@code url}. The URL of a hit is relative to the URL
+     * of this search.
+     *
+     * @param q
+     *         the text to search for, must contain at least three characters
+     * @param ignoreCase
+     *         determines whether the case of the text should be ignored
+     *
+     * @return the JSON object, or a forbidden response if the user is not permitted to view the source code
+     */
+    public HttpResponse doIndex(@QueryParameter final String q, @QueryParameter final boolean ignoreCase) {
+        if (!hasPermission) {
+            return HttpResponses.forbidden();
+        }
+        if (StringUtils.length(q) < SourceCodeSearchIndex.MIN_QUERY_LENGTH) {
+            return HttpResponses.errorJSON(String.format("The query must contain at least %d characters",
+                    SourceCodeSearchIndex.MIN_QUERY_LENGTH));
+        }
+        try {
+            return HttpResponses.okJSON(search(q, ignoreCase).toJson(q.length()));
+        }
+        catch (IOException exception) {
+            return HttpResponses.errorJSON(ExceptionUtils.getMessage(exception));
+        }
+    }
+
+    /**
+     * Returns the source code view of a hit. The file, line, and column of the hit are obtained from the request
+     * parameters {@code file}, {@code line}, {@code column}, and {@code length}.
+     *
+     * @param link
+     *         the link to the view, must be {@code source}
+     * @param request
+     *         the request that contains the parameters of the hit
+     * @param response
+     *         the response
+     *
+     * @return the source code view, or {@code null} if the link is unknown
+     */
+    @CheckForNull
+    public ModelObject getDynamic(final String link, final StaplerRequest2 request,
+            final StaplerResponse2 response) {
+        String fileName = request.getParameter("file");
+        if (!SOURCE.equals(link) || StringUtils.isEmpty(fileName)) {
+            return null;
+        }
+        int line = toPositiveInt(request.getParameter("line"));
+        int column = toPositiveInt(request.getParameter("column"));
+        int length = toPositiveInt(request.getParameter("length"));
+        return SourceCodeViewModel.create(owner, fileName, store, charset, createMarker(line, column, length));
+    }
+
+    private static int toPositiveInt(@CheckForNull final String value) {
+        try {
+            return Math.max(0, Integer.parseInt(StringUtils.defaultString(value)));
+        }
+        catch (NumberFormatException exception) {
+            return 0;
+        }
+    }
+
+    @VisibleForTesting
+    static Marker createMarker(final int line, final int column, final int length) {
+        var builder = new MarkerBuilder().withLineStart(line).withLineEnd(line);
+        if (column > 0 && length > 0) {
+            builder.withColumnStart(column).withColumnEnd(column + length - 1);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the files that contain the specified text. At most {@link #MAX_FILES} files with at most
+     * {@link #MAX_HITS_PER_FILE} hits are returned.
+     *
+     * @param query
+     *         the text to search for
+     * @param ignoreCase
+     *         determines whether the case of the text should be ignored
+     *
+     * @return the files that contain the text, sorted by file name
+     * @throws IOException
+     *         if the index or the stored files could not be read
+     */
+    @VisibleForTesting
+    SearchResult search(final String query, final boolean ignoreCase) throws IOException {
+        var index = SourceCodeSearchIndex.get(owner, store, charset);
+        SortedMap<String, Path> files = store.findAll(owner);
+        Strings strings = ignoreCase ? Strings.CI : Strings.CS;
+
+        Map<Integer, List<Hit>> hitsOfContents = new HashMap<>();
+        List<FileHits> results = new ArrayList<>();
+        for (int file : index.findCandidates(query)) {
+            String fileName = index.getFileName(file);
+            Path content = files.get(fileName);
+            if (content == null) {
+                continue;
+            }
+            if (results.size() == MAX_FILES) {
+                return new SearchResult(results, true);
+            }
+            List<Hit> hits = hitsOfContents.get(index.getContent(file));
+            if (hits == null) {
+                hits = findHits(content, query, strings);
+                hitsOfContents.put(index.getContent(file), hits);
+            }
+            if (!hits.isEmpty()) {
+                results.add(new FileHits(fileName, hits));
+            }
+        }
+        return new SearchResult(results, false);
+    }
+
+    private List<Hit> findHits(final Path content, final String query, final Strings strings) throws IOException {
+        List<Hit> hits = new ArrayList<>();
+        try (Reader reader = SourceCodeDecoder.openReader(content, charset);
+                Stream<String> lines = SourceCodeDecoder.lines(reader, MAX_SEARCHED_LINE_LENGTH)) {
+            Iterator<String> iterator = lines.iterator();
+            int lineNumber = 0;
+            while (iterator.hasNext() && hits.size() < MAX_HITS_PER_FILE) {
+                String line = iterator.next();
+                lineNumber++;
+                int position = strings.indexOf(line, query);
+                if (position >= 0) {
+                    hits.add(new Hit(lineNumber, position + 1, StringUtils.abbreviate(line.strip(), MAX_LINE_LENGTH)));
+                }
+            }
+        }
+        catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+        return hits;
+    }
+
+    /**
+     * The result of a query.
+     *
+     * @param files
+     *         the files that contain the query
+     * @param isTruncated
+     *         determines whether more files contain the query
+     */
+    record SearchResult(List<FileHits> files, boolean isTruncated) {
+        JSONObject toJson(final int length) {
+            var filesJson = new JSONArray();
+            for (FileHits file : files) {
+                filesJson.add(file.toJson(length));
+            }
+            var json = new JSONObject();
+            json.put("files", filesJson);
+            json.put("truncated", isTruncated);
+            return json;
+        }
+    }
+
+    /**
+     * The hits of a query in a file.
+     *
+     * @param fileName
+     *         the name of the file
+     * @param hits
+     *         the hits in the file
+     */
+    record FileHits(String fileName, List<Hit> hits) {
+        JSONObject toJson(final int length) {
+            var hitsJson = new JSONArray();
+            for (Hit hit : hits) {
+                var hitJson = new JSONObject();
+                hitJson.put("line", hit.line());
+                hitJson.put("column", hit.column());
+                hitJson.put("text", hit.text());
+                hitJson.put("url", String.format("%s?file=%s&line=%d&column=%d&length=%d", SOURCE,
+                        Util.rawEncode(fileName), hit.line(), hit.column(), length));
+                hitsJson.add(hitJson);
+            }
+            var json = new JSONObject();
+            json.put("fileName", fileName);
+            json.put("hits", hitsJson);
+            return json;
+        }
+    }
+
+    /**
+     * A line that contains the query.
+     *
+     * @param line
+     *         the line number (starting with 1)
+     * @param column
+     *         the column of the first match in the line (starting with 1)
+     * @param text
+     *         the text of the line, abbreviated if the line is too long
+     */
+    record Hit(int line, int column, String text) {
+    }
+}
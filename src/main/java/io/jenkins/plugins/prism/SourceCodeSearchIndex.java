@@ -0,0 +1,461 @@
+package io.jenkins.plugins.prism;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import hudson.model.Run;
+
+/**
+ * A compact trigram index over the stored source code files of a build. For each sequence of three characters
+ * (ignoring the case) the index contains the list of the stored contents that contain this sequence. Identical
+ * contents of different files are indexed only once. A query is answered by intersecting the lists of all trigrams
+ * of the query, so only the few candidate files need to be read afterward to find the actual lines.
+ *
+ * <p>
+ * The index is created lazily on the first search and persisted next to the manifest of the {@link SourceCodeStore}
+ * in the build folder. Since the lists of contents are sorted, they are stored as variable length deltas. The index
+ * is created again if the manifest of the build has been changed. Only the first 4 million characters of a file are
+ * indexed.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+@SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "The index is stored in the build folder")
+final class SourceCodeSearchIndex {
+    /** The name of the index file in the directory of the manifest. */
+    static final String FILE_NAME = "prism-search-index.bin";
+    /** The minimum length of a query that can be answered by the index. */
+    static final int MIN_QUERY_LENGTH = 3;
+
+    private static final Logger LOGGER = Logger.getLogger(SourceCodeSearchIndex.class.getName());
+    private static final int MAGIC = 0x50534958;
+    private static final int VERSION = 1;
+    private static final int MAX_INDEXED_CHARACTERS = 4 * 1024 * 1024;
+    private static final int MAX_CACHED_INDEXES = 16;
+    private static final Object LOCK = new Object();
+    /**
+     * The locks of the indexes that are currently read or created. Only one thread reads or creates the index of a
+     * build, while searches in other builds are not blocked. The lock is removed as soon as the index is cached.
+     */
+    private static final Map<Path, Object> BUILD_LOCKS = new ConcurrentHashMap<>();
+    /** The recently used indexes, guarded by {@link #LOCK}. The lock is held only while accessing the map. */
+    private static final Map<Path, SourceCodeSearchIndex> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 4263590726358474031L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Path, SourceCodeSearchIndex> eldest) {
+            return size() > MAX_CACHED_INDEXES;
+        }
+    };
+
+    /**
+     * Returns the index of the stored source code files of the specified build. If the index has not been created
+     * yet, or if it is outdated, then the index will be created and persisted. Concurrent requests for the same build
+     * wait for the index that is being created, requests for other builds are not blocked.
+     *
+     * @param build
+     *         the build that contains the source code files
+     * @param store
+     *         the store that contains the source code files
+     * @param charset
+     *         the charset of the stored source code files, used if the charset cannot be detected automatically
+     *
+     * @return the index
+     * @throws IOException
+     *         if the build has no stored source code files or if the index could not be created
+     */
+    static SourceCodeSearchIndex get(final Run<?, ?> build, final SourceCodeStore store, final Charset charset)
+            throws IOException {
+        Path manifest = store.getManifest(build);
+        if (!Files.exists(manifest)) {
+            throw new NoSuchFileException(manifest.toString());
+        }
+        Path file = manifest.resolveSibling(FILE_NAME);
+        var cached = getCached(file, Stamp.of(manifest));
+        if (cached != null) {
+            return cached;
+        }
+        Object lock = BUILD_LOCKS.computeIfAbsent(file, key -> new Object());
+        try {
+            synchronized (lock) {
+                Stamp stamp = Stamp.of(manifest);
+                cached = getCached(file, stamp);
+                if (cached != null) {
+                    return cached;
+                }
+                var index = read(file, stamp);
+                if (index == null) {
+                    index = create(store.findAll(build), charset, stamp);
+                    write(file, index);
+                }
+                synchronized (LOCK) {
+                    CACHE.put(file, index);
+                }
+                return index;
+            }
+        }
+        finally {
+            BUILD_LOCKS.remove(file, lock);
+        }
+    }
+
+    @CheckForNull
+    private static SourceCodeSearchIndex getCached(final Path file, final Stamp stamp) {
+        SourceCodeSearchIndex cached;
+        synchronized (LOCK) {
+            cached = CACHE.get(file);
+        }
+        if (cached != null && cached.stamp.equals(stamp) && Files.exists(file)) {
+            return cached;
+        }
+        return null;
+    }
+
+    /**
+     * Creates an index of the specified files.
+     *
+     * @param files
+     *         a mapping of the file names to the paths of the stored contents
+     * @param charset
+     *         the charset of the files, used if the charset cannot be detected automatically
+     * @param stamp
+     *         the stamp of the manifest of the files
+     *
+     * @return the index
+     * @throws IOException
+     *         if a file could not be read
+     */
+    static SourceCodeSearchIndex create(final SortedMap<String, Path> files, final Charset charset,
+            final Stamp stamp) throws IOException {
+        String[] fileNames = files.keySet().toArray(new String[0]);
+        int[] contents = new int[fileNames.length];
+        Map<Path, Integer> contentIds = new HashMap<>();
+        Map<Long, PostingWriter> postings = new HashMap<>();
+        for (int i = 0; i < fileNames.length; i++) {
+            Path content = files.get(fileNames[i]);
+            Integer existing = contentIds.get(content);
+            if (existing == null) {
+                int id = contentIds.size();
+                contentIds.put(content, id);
+                var text = SourceCodeDecoder.decode(content, charset, MAX_INDEXED_CHARACTERS);
+                for (long trigram : extractTrigrams(text)) {
+                    postings.computeIfAbsent(trigram, key -> new PostingWriter()).add(id);
+                }
+                contents[i] = id;
+            }
+            else {
+                contents[i] = existing;
+            }
+        }
+
+        long[] trigrams = postings.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        int[] offsets = new int[trigrams.length + 1];
+        int size = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            offsets[i] = size;
+            size += postings.get(trigrams[i]).size;
+        }
+        offsets[trigrams.length] = size;
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < trigrams.length; i++) {
+            var writer = postings.get(trigrams[i]);
+            System.arraycopy(writer.bytes, 0, bytes, offsets[i], writer.size);
+        }
+        return new SourceCodeSearchIndex(stamp, fileNames, contents, contentIds.size(), trigrams, offsets, bytes);
+    }
+
+    /**
+     * Returns the distinct trigrams of the specified text in ascending order. The characters are converted to lower
+     * case, trigrams that span several lines are skipped since queries are matched line by line.
+     *
+     * @param text
+     *         the text to get the trigrams for
+     *
+     * @return the trigrams, each encoded as three 16-bit characters
+     */
+    static long[] extractTrigrams(final CharSequence text) {
+        if (text.length() < MIN_QUERY_LENGTH) {
+            return new long[0];
+        }
+        long[] trigrams = new long[text.length() - 2];
+        int count = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            char first = text.charAt(i);
+            char second = text.charAt(i + 1);
+            char third = text.charAt(i + 2);
+            if (!isLineBreak(first) && !isLineBreak(second) && !isLineBreak(third)) {
+                trigrams[count++] = toTrigram(first, second, third);
+            }
+        }
+        Arrays.sort(trigrams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    private static boolean isLineBreak(final char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    private static long toTrigram(final char first, final char second, final char third) {
+        return (long) Character.toLowerCase(first) << 32
+                | (long) Character.toLowerCase(second) << 16
+                | Character.toLowerCase(third);
+    }
+
+    private final Stamp stamp;
+    private final String[] fileNames;
+    private final int[] contents;
+    private final int contentCount;
+    private final long[] trigrams;
+    private final int[] offsets;
+    private final byte[] postings;
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private SourceCodeSearchIndex(final Stamp stamp, final String[] fileNames, final int[] contents,
+            final int contentCount, final long[] trigrams, final int[] offsets, final byte[] postings) {
+        this.stamp = stamp;
+        this.fileNames = fileNames;
+        this.contents = contents;
+        this.contentCount = contentCount;
+        this.trigrams = trigrams;
+        this.offsets = offsets;
+        this.postings = postings;
+    }
+
+    /**
+     * Returns the number of indexed files.
+     *
+     * @return the number of files
+     */
+    int size() {
+        return fileNames.length;
+    }
+
+    /**
+     * Returns the name of the file with the specified index.
+     *
+     * @param file
+     *         the index of the file
+     *
+     * @return the file name
+     */
+    String getFileName(final int file) {
+        return fileNames[file];
+    }
+
+    /**
+     * Returns the ID of the stored content of the file with the specified index. Files with the same content have the
+     * same ID.
+     *
+     * @param file
+     *         the index of the file
+     *
+     * @return the ID of the content
+     */
+    int getContent(final int file) {
+        return contents[file];
+    }
+
+    /**
+     * Returns the files that might contain the specified query, ignoring the case. The files are sorted by name.
+     * Since the index contains only trigrams, the caller needs to verify that the files actually contain the query.
+     *
+     * @param query
+     *         the text to search for, must contain at least {@link #MIN_QUERY_LENGTH} characters
+     *
+     * @return the indexes of the candidate files
+     */
+    int[] findCandidates(final String query) {
+        long[] queryTrigrams = extractTrigrams(query);
+        if (queryTrigrams.length == 0) {
+            return new int[0];
+        }
+        int[] positions = new int[queryTrigrams.length];
+        for (int i = 0; i < queryTrigrams.length; i++) {
+            positions[i] = Arrays.binarySearch(trigrams, queryTrigrams[i]);
+            if (positions[i] < 0) {
+                return new int[0];
+            }
+        }
+        sortByPostingSize(positions);
+
+        var candidates = decode(positions[0]);
+        for (int i = 1; i < positions.length && !candidates.isEmpty(); i++) {
+            candidates.and(decode(positions[i]));
+        }
+
+        int[] files = new int[fileNames.length];
+        int count = 0;
+        for (int file = 0; file < fileNames.length; file++) {
+            if (candidates.get(contents[file])) {
+                files[count++] = file;
+            }
+        }
+        return Arrays.copyOf(files, count);
+    }
+
+    private void sortByPostingSize(final int[] positions) {
+        for (int i = 1; i < positions.length; i++) { // insertion sort: queries have only a few trigrams
+            int position = positions[i];
+            int j = i - 1;
+            while (j >= 0 && getPostingSize(positions[j]) > getPostingSize(position)) {
+                positions[j + 1] = positions[j];
+                j--;
+            }
+            positions[j + 1] = position;
+        }
+    }
+
+    private int getPostingSize(final int position) {
+        return offsets[position + 1] - offsets[position];
+    }
+
+    private BitSet decode(final int position) {
+        var decoded = new BitSet(contentCount);
+        int content = 0;
+        int offset = offsets[position];
+        int end = offsets[position + 1];
+        while (offset < end) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = postings[offset++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            }
+            while (b < 0);
+            content += delta;
+            decoded.set(content);
+        }
+        return decoded;
+    }
+
+    @CheckForNull
+    @SuppressWarnings("PMD.AvoidReturningNull")
+    private static SourceCodeSearchIndex read(final Path file, final Stamp stamp) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION
+                    || !new Stamp(input.readLong(), input.readLong()).equals(stamp)) {
+                return null;
+            }
+            String[] fileNames = new String[input.readInt()];
+            int[] contents = new int[fileNames.length];
+            for (int i = 0; i < fileNames.length; i++) {
+                fileNames[i] = input.readUTF();
+                contents[i] = input.readInt();
+            }
+            int contentCount = input.readInt();
+            long[] trigrams = new long[input.readInt()];
+            for (int i = 0; i < trigrams.length; i++) {
+                trigrams[i] = input.readLong();
+            }
+            int[] offsets = new int[trigrams.length + 1];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = input.readInt();
+            }
+            byte[] postings = new byte[offsets[trigrams.length]];
+            input.readFully(postings);
+            return new SourceCodeSearchIndex(stamp, fileNames, contents, contentCount, trigrams, offsets, postings);
+        }
+        catch (IOException | RuntimeException exception) {
+            LOGGER.log(Level.WARNING, "Could not read search index " + file + ", creating a new one", exception);
+            return null;
+        }
+    }
+
+    private static void write(final Path file, final SourceCodeSearchIndex index) {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeLong(index.stamp.modified());
+                output.writeLong(index.stamp.size());
+                output.writeInt(index.fileNames.length);
+                for (int i = 0; i < index.fileNames.length; i++) {
+                    output.writeUTF(index.fileNames[i]);
+                    output.writeInt(index.contents[i]);
+                }
+                output.writeInt(index.contentCount);
+                output.writeInt(index.trigrams.length);
+                for (long trigram : index.trigrams) {
+                    output.writeLong(trigram);
+                }
+                for (int offset : index.offsets) {
+                    output.writeInt(offset);
+                }
+                output.write(index.postings);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException exception) { // the index will be created again on the next search
+            LOGGER.log(Level.WARNING, "Could not write search index " + file, exception);
+        }
+    }
+
+    /**
+     * Identifies the version of a manifest by its modification time and size.
+     *
+     * @param modified
+     *         the modification time in nanoseconds
+     * @param size
+     *         the size in bytes
+     */
+    record Stamp(long modified, long size) {
+        static Stamp of(final Path manifest) throws IOException {
+            return new Stamp(Files.getLastModifiedTime(manifest).to(TimeUnit.NANOSECONDS), Files.size(manifest));
+        }
+    }
+
+    /**
+     * Appends ascending content IDs as variable length deltas.
+     */
+    private static final class PostingWriter {
+        private byte[] bytes = new byte[4];
+        private int size;
+        private int last;
+
+        void add(final int content) {
+            int delta = content - last;
+            last = content;
+            if (bytes.length - size < 5) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((delta & ~0x7F) != 0) {
+                bytes[size++] = (byte) (delta & 0x7F | 0x80);
+                delta >>>= 7;
+            }
+            bytes[size++] = (byte) delta;
+        }
+    }
+}
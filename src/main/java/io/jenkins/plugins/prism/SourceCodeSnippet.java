@@ -0,0 +1,163 @@
+package io.jenkins.plugins.prism;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.commons.text.StringEscapeUtils;
+
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import hudson.model.Run;
+
+import net.sf.json.JSONObject;
+
+/**
+ * A small preview of a source code file that shows only the lines of a marker and some lines of context. Such a
+ * snippet can be embedded in tooltips or table rows without rendering the whole file. Plugins expose a snippet as
+ * Stapler endpoint, e.g. by returning it from a {@code getDynamic} method: the HTML fragment will then be available
+ * at the URL of the snippet, the JSON representation at {@code json}.
+ *
+ * @author Ullrich Hafner
+ */
+public class SourceCodeSnippet {
+    /** The number of lines that are shown before and after the marker. */
+    public static final int DEFAULT_CONTEXT_LINES = 3;
+    private static final int MAX_CONTEXT_LINES = 50;
+    /**
+     * The characters of a line beyond this limit are skipped while reading, so that a snippet of a minified file does
+     * not read the whole file into memory. The printer shows only the start of such long lines anyway.
+     */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /**
+     * Creates a snippet of the specified source code file that shows {@link #DEFAULT_CONTEXT_LINES} lines before and
+     * after the marker. If the current user has no permission to view the source code, then the endpoints of the
+     * snippet will return a forbidden response.
+     *
+     * @param owner
+     *         the current build as the owner of the snippet
+     * @param fileName
+     *         the file name of the shown content
+     * @param sourceCodeReader
+     *         the source code file to show, provided by a {@link Reader} instance
+     * @param marker
+     *         a block of lines (or a part of a line) to mark in the snippet
+     * @return the snippet
+     */
+    public static SourceCodeSnippet create(final Run<?, ?> owner, final String fileName,
+            final Reader sourceCodeReader, final Marker marker) {
+        return create(owner, fileName, sourceCodeReader, marker, DEFAULT_CONTEXT_LINES);
+    }
+
+    /**
+     * Creates a snippet of the specified source code file. If the current user has no permission to view the source
+     * code, then the endpoints of the snippet will return a forbidden response.
+     *
+     * @param owner
+     *         the current build as the owner of the snippet
+     * @param fileName
+     *         the file name of the shown content
+     * @param sourceCodeReader
+     *         the source code file to show, provided by a {@link Reader} instance
+     * @param marker
+     *         a block of lines (or a part of a line) to mark in the snippet
+     * @param contextLines
+     *         the number of lines to show before and after the marker (at most 50)
+     * @return the snippet
+     */
+    public static SourceCodeSnippet create(final Run<?, ?> owner, final String fileName,
+            final Reader sourceCodeReader, final Marker marker, final int contextLines) {
+        return create(fileName, sourceCodeReader, marker, contextLines,
+                SourceCodeViewModel.hasPermissionToViewSourceCode(owner));
+    }
+
+    @VisibleForTesting
+    static SourceCodeSnippet create(final String fileName, final Reader sourceCodeReader, final Marker marker,
+            final int contextLines, final boolean hasPermission) {
+        int context = Math.max(0, Math.min(contextLines, MAX_CONTEXT_LINES));
+        if (!hasPermission) {
+            return new SourceCodeSnippet(fileName, 0, 0, null);
+        }
+        try (sourceCodeReader) {
+            return new SourceCodeSnippet(fileName,
+                    SourcePrinter.getSnippetStart(marker, context), SourcePrinter.getSnippetEnd(marker, context),
+                    new SourcePrinter().renderSnippet(fileName,
+                            SourceCodeDecoder.lines(sourceCodeReader, MAX_LINE_LENGTH), marker, context));
+        }
+        catch (IOException | UncheckedIOException exception) {
+            String message = StringEscapeUtils.escapeHtml4(ExceptionUtils.getMessage(exception));
+            return new SourceCodeSnippet(fileName, 0, 0, String.format("<pre>%s</pre>", message));
+        }
+    }
+
+    private final String fileName;
+    private final int lineStart;
+    private final int lineEnd;
+    @CheckForNull
+    private final String html;
+
+    private SourceCodeSnippet(final String fileName, final int lineStart, final int lineEnd,
+            @CheckForNull final String html) {
+        this.fileName = fileName;
+        this.lineStart = lineStart;
+        this.lineEnd = lineEnd;
+        this.html = html;
+    }
+
+    /**
+     * Returns whether the current user is permitted to see this snippet.
+     *
+     * @return {@code true} if the snippet is visible, {@code false} otherwise
+     */
+    public boolean isVisible() {
+        return html != null;
+    }
+
+    /**
+     * Returns the colorized HTML fragment of the snippet.
+     *
+     * @return the HTML fragment, or an empty string if the snippet is not visible
+     */
+    public String getHtml() {
+        return html == null ? "" : html;
+    }
+
+    /**
+     * Returns the snippet as HTML fragment.
+     *
+     * @return the HTML fragment, or a forbidden response if the user is not permitted to view the source code
+     */
+    public HttpResponse doIndex() {
+        if (html == null) {
+            return HttpResponses.forbidden();
+        }
+        return HttpResponses.literalHtml(html);
+    }
+
+    /**
+     * Returns the snippet as JSON object with the properties {@code fileName}, {@code lineStart}, {@code lineEnd}, and
+     * {@code html}.
+     *
+     * @return the JSON object, or a forbidden response if the user is not permitted to view the source code
+     */
+    public HttpResponse doJson() {
+        if (!isVisible()) {
+            return HttpResponses.forbidden();
+        }
+        return HttpResponses.okJSON(toJson());
+    }
+
+    JSONObject toJson() {
+        var json = new JSONObject();
+        json.put("fileName", fileName);
+        json.put("lineStart", lineStart);
+        json.put("lineEnd", lineEnd);
+        json.put("html", getHtml());
+        return json;
+    }
+}
@@ -0,0 +1,569 @@
+package io.jenkins.plugins.prism;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+/**
+ * Content addressed storage for source code files of builds. Rather than copying the source code files of each
+ * build into the build folder, each distinct file content is stored only once per job (keyed by the SHA-256 hash of
+ * its content). Each build stores only a small manifest that maps the file names to these hashes. The stored contents
+ * are reference counted: if the last build that references a content is deleted (or its source code files are
+ * removed by a {@link SourceCodeRetention} strategy), then the content will be deleted as well.
+ *
+ * <p>
+ * Use {@link #open(Run)} to store the source code files of a build and {@link #openReader(Run, String, Charset)} to
+ * read a stored file, e.g. using
+ * {@link SourceCodeViewModel#create(Run, String, SourceCodeStore, Charset, Marker)}. The stored files of a build
+ * can be searched using {@link SourceCodeSearch}.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+@SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "Files are stored in the job and build folders")
+public class SourceCodeStore {
+    static final String MANIFEST = "prism-manifest.txt";
+
+    private static final String SUFFIX = ".prism-store";
+    private static final String REFERENCES = "references.txt";
+    /** Lists the original directories of a store, since the name of the store folder is sanitized. */
+    private static final String DIRECTORIES = "directories.txt";
+    private static final String SEPARATOR = "\t";
+    private static final Object LOCK = new Object();
+    /** Contents that have been written by a session that has not been closed yet, guarded by {@link #LOCK}. */
+    private static final Map<Path, Integer> PENDING_CONTENTS = new HashMap<>();
+
+    private final String directory;
+
+    /**
+     * Creates a new instance of {@link SourceCodeStore}.
+     *
+     * @param directory
+     *         the directory, where the manifest of the source code files is stored within each build
+     */
+    public SourceCodeStore(final String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the directory where the manifest of the source code files is stored within each build.
+     *
+     * @return the directory
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Opens a session to store the source code files of the specified build. The files will be visible for readers
+     * after the session has been closed.
+     *
+     * @param build
+     *         the build to store the source code files for
+     *
+     * @return the session
+     */
+    public Session open(final Run<?, ?> build) {
+        return new Session(build);
+    }
+
+    /**
+     * Returns whether the specified build has source code files in this store.
+     *
+     * @param build
+     *         the build to check
+     *
+     * @return {@code true} if the build has stored source code files, {@code false} otherwise
+     */
+    public boolean hasSources(final Run<?, ?> build) {
+        return Files.exists(getManifest(build));
+    }
+
+    /**
+     * Returns the stored content of the specified file.
+     *
+     * @param build
+     *         the build that contains the file
+     * @param fileName
+     *         the name of the file
+     *
+     * @return the path to the stored content, or an empty result if the build has no such file
+     * @throws IOException
+     *         if the manifest of the build could not be read
+     */
+    public Optional<Path> find(final Run<?, ?> build, final String fileName) throws IOException {
+        var hash = readManifest(getManifest(build)).get(fileName);
+        if (hash == null) {
+            return Optional.empty();
+        }
+        var blob = getBlob(build.getParent(), hash);
+        if (Files.exists(blob)) {
+            return Optional.of(blob);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns the stored contents of all files of the specified build.
+     *
+     * @param build
+     *         the build that contains the files
+     *
+     * @return a mapping of the file names to the paths of the stored contents, sorted by file name
+     * @throws IOException
+     *         if the manifest of the build could not be read
+     */
+    SortedMap<String, Path> findAll(final Run<?, ?> build) throws IOException {
+        SortedMap<String, Path> files = new TreeMap<>();
+        for (Map.Entry<String, String> entry : readManifest(getManifest(build)).entrySet()) {
+            var blob = getBlob(build.getParent(), entry.getValue());
+            if (Files.exists(blob)) {
+                files.put(entry.getKey(), blob);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the size of the source code files of the specified build: the size of the manifest and the sizes of
+     * all referenced contents. Contents that are shared with other builds are counted for each build.
+     *
+     * @param build
+     *         the build to get the size for
+     *
+     * @return the size in bytes
+     * @throws IOException
+     *         if the manifest or the contents could not be read
+     */
+    long computeSize(final Run<?, ?> build) throws IOException {
+        Path manifest = getManifest(build);
+        if (!Files.exists(manifest)) {
+            return 0;
+        }
+        return Files.size(manifest) + computeSize(build.getParent(), readManifest(manifest).values());
+    }
+
+    /**
+     * Returns the size of the source code files of the specified build that have not been counted yet: the size of
+     * the manifest and the sizes of all referenced contents that are not part of the specified set. The contents of
+     * the build are added to the set, so shared contents are counted only once for several builds.
+     *
+     * @param build
+     *         the build to get the size for
+     * @param countedContents
+     *         the contents that have been counted already
+     *
+     * @return the size in bytes
+     * @throws IOException
+     *         if the manifest or the contents could not be read
+     */
+    long computeSize(final Run<?, ?> build, final Set<String> countedContents) throws IOException {
+        Path manifest = getManifest(build);
+        if (!Files.exists(manifest)) {
+            return 0;
+        }
+        List<String> contents = readManifest(manifest).values().stream().filter(countedContents::add).toList();
+        return Files.size(manifest) + computeSize(build.getParent(), contents);
+    }
+
+    private long computeSize(final Job<?, ?> job, final Collection<String> hashes) throws IOException {
+        long size = 0;
+        for (String hash : hashes) {
+            var blob = getBlob(job, hash);
+            if (Files.exists(blob)) {
+                size += Files.size(blob);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the manifest of the specified build that maps the file names to the stored contents. Files that are
+     * derived from the stored files of a build (e.g., a search index) are stored next to this manifest.
+     *
+     * @param build
+     *         the build to get the manifest for
+     *
+     * @return the path to the manifest
+     */
+    Path getManifest(final Run<?, ?> build) {
+        return build.getRootDir().toPath().resolve(directory).resolve(MANIFEST);
+    }
+
+    /**
+     * Opens a reader for the stored content of the specified file.
+     *
+     * @param build
+     *         the build that contains the file
+     * @param fileName
+     *         the name of the file
+     * @param charset
+     *         the charset to decode the file
+     *
+     * @return the reader
+     * @throws IOException
+     *         if the file has not been stored or could not be read
+     */
+    public Reader openReader(final Run<?, ?> build, final String fileName, final Charset charset)
+            throws IOException {
+        var blob = find(build, fileName);
+        if (blob.isPresent()) {
+            return Files.newBufferedReader(blob.get(), charset);
+        }
+        throw new NoSuchFileException(fileName);
+    }
+
+    /**
+     * Releases all contents that are referenced by the specified build. Contents that are not referenced by another
+     * build anymore will be deleted.
+     *
+     * @param build
+     *         the build to release the contents for
+     *
+     * @throws IOException
+     *         if the contents could not be released
+     */
+    public void release(final Run<?, ?> build) throws IOException {
+        release(build.getParent(), getManifest(build));
+    }
+
+    /**
+     * Releases the contents of the specified build in all stores of its job.
+     *
+     * @param build
+     *         the build to release the contents for
+     *
+     * @throws IOException
+     *         if the contents could not be released
+     */
+    static void releaseAll(final Run<?, ?> build) throws IOException {
+        Path jobDirectory = build.getParent().getRootDir().toPath();
+        if (!Files.isDirectory(jobDirectory)) {
+            return;
+        }
+        List<Path> stores;
+        try (Stream<Path> files = Files.list(jobDirectory)) {
+            stores = files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).toList();
+        }
+        for (Path store : stores) {
+            for (String storeDirectory : readDirectories(store)) {
+                new SourceCodeStore(storeDirectory).release(build);
+            }
+        }
+    }
+
+    /**
+     * Returns the original directories of the specified store folder. Stores that have been created before the
+     * directories have been recorded fall back to the name of the folder, which is correct for all directories that
+     * contain no special characters.
+     */
+    private static List<String> readDirectories(final Path store) throws IOException {
+        Path file = store.resolve(DIRECTORIES);
+        if (Files.exists(file)) {
+            return Files.readAllLines(file, StandardCharsets.UTF_8).stream()
+                    .filter(StringUtils::isNotEmpty)
+                    .map(SourceCodeStore::unescape)
+                    .toList();
+        }
+        return List.of(StringUtils.removeEnd(store.getFileName().toString(), SUFFIX));
+    }
+
+    /**
+     * Records the directory of this store in the store folder, so that {@link #releaseAll(Run)} can create the store
+     * again. Different directories that are sanitized to the same folder share the folder, so all of them are listed.
+     */
+    private void writeDirectory(final Job<?, ?> job) throws IOException {
+        Path store = getStore(job);
+        Path file = store.resolve(DIRECTORIES);
+        List<String> directories = new ArrayList<>();
+        if (Files.exists(file)) {
+            directories.addAll(Files.readAllLines(file, StandardCharsets.UTF_8));
+        }
+        if (!directories.contains(escape(directory))) {
+            directories.add(escape(directory));
+            writeAtomically(file, directories);
+        }
+    }
+
+    private void release(final Job<?, ?> job, final Path manifest) throws IOException {
+        synchronized (LOCK) {
+            if (!Files.exists(manifest)) {
+                return;
+            }
+            var references = readReferences(job);
+            for (String hash : readManifest(manifest).values()) {
+                int count = references.getOrDefault(hash, 0) - 1;
+                if (count > 0) {
+                    references.put(hash, count);
+                }
+                else {
+                    references.remove(hash);
+                    var blob = getBlob(job, hash);
+                    if (!PENDING_CONTENTS.containsKey(blob)) {
+                        Files.deleteIfExists(blob);
+                    }
+                }
+            }
+            writeReferences(job, references);
+            Files.delete(manifest);
+            Files.deleteIfExists(manifest.resolveSibling(SourceCodeSearchIndex.FILE_NAME));
+        }
+    }
+
+    private Path getStore(final Job<?, ?> job) {
+        return job.getRootDir().toPath().resolve(directory.replaceAll("[^\\w.-]", "_") + SUFFIX);
+    }
+
+    private Path getBlob(final Job<?, ?> job, final String hash) {
+        return getStore(job).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Map<String, String> readManifest(final Path manifest) throws IOException {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                var hash = StringUtils.substringBefore(line, SEPARATOR);
+                var fileName = unescape(StringUtils.substringAfter(line, SEPARATOR));
+                if (StringUtils.isNoneBlank(hash, fileName)) {
+                    hashes.put(fileName, hash);
+                }
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Escapes the line breaks, tabs, and backslashes of a file name so that each entry of the manifest is a single
+     * line.
+     */
+    static String escape(final String fileName) {
+        var escaped = new StringBuilder(fileName.length());
+        for (int i = 0; i < fileName.length(); i++) {
+            char c = fileName.charAt(i);
+            switch (c) {
+                case '\\' -> escaped.append("\\\\");
+                case '\t' -> escaped.append("\\t");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Reverts {@link #escape(String)}.
+     */
+    static String unescape(final String escaped) {
+        if (escaped.indexOf('\\') < 0) {
+            return escaped;
+        }
+        var fileName = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c == '\\' && i + 1 < escaped.length()) {
+                char next = escaped.charAt(++i);
+                switch (next) {
+                    case 't' -> fileName.append('\t');
+                    case 'n' -> fileName.append('\n');
+                    case 'r' -> fileName.append('\r');
+                    default -> fileName.append(next);
+                }
+            }
+            else {
+                fileName.append(c);
+            }
+        }
+        return fileName.toString();
+    }
+
+    private Map<String, Integer> readReferences(final Job<?, ?> job) throws IOException {
+        Map<String, Integer> references = new HashMap<>();
+        var file = getStore(job).resolve(REFERENCES);
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                references.put(StringUtils.substringBefore(line, SEPARATOR),
+                        NumberUtils.toInt(StringUtils.substringAfter(line, SEPARATOR)));
+            }
+        }
+        return references;
+    }
+
+    private void writeReferences(final Job<?, ?> job, final Map<String, Integer> references) throws IOException {
+        List<String> lines = new ArrayList<>();
+        new TreeMap<>(references).forEach((hash, count) -> lines.add(hash + SEPARATOR + count));
+        writeAtomically(getStore(job).resolve(REFERENCES), lines);
+    }
+
+    private static void writeAtomically(final Path file, final List<String> lines) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, lines, StandardCharsets.UTF_8);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("SHA-256 is not available", exception);
+        }
+    }
+
+    /**
+     * Stores the source code files of a build. Each added file is written to the content store of the job
+     * immediately, the manifest of the build and the reference counts are written when this session is closed.
+     */
+    public final class Session implements Closeable {
+        private final Run<?, ?> build;
+        private final Map<String, String> hashes = new LinkedHashMap<>();
+
+        private Session(final Run<?, ?> build) {
+            this.build = build;
+        }
+
+        /**
+         * Adds the specified file to the store.
+         *
+         * @param fileName
+         *         the name of the file, used to look up the file later on
+         * @param content
+         *         the content of the file
+         *
+         * @throws IOException
+         *         if the file could not be stored
+         */
+        public void add(final String fileName, final InputStream content) throws IOException {
+            Path store = getStore(build.getParent());
+            Files.createDirectories(store);
+
+            Path temporary = Files.createTempFile(store, "content", ".tmp");
+            try {
+                MessageDigest digest = createDigest();
+                try (OutputStream output = new DigestOutputStream(Files.newOutputStream(temporary), digest)) {
+                    content.transferTo(output);
+                }
+                String hash = toHex(digest.digest());
+                Path blob = getBlob(build.getParent(), hash);
+                synchronized (LOCK) {
+                    if (!Files.exists(blob)) {
+                        Files.createDirectories(blob.getParent());
+                        Files.move(temporary, blob, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    String previous = hashes.put(fileName, hash);
+                    if (!hash.equals(previous)) {
+                        PENDING_CONTENTS.merge(blob, 1, Integer::sum);
+                        if (previous != null) {
+                            releasePending(previous);
+                        }
+                    }
+                }
+            }
+            finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        /**
+         * Adds the specified file to the store.
+         *
+         * @param fileName
+         *         the name of the file, used to look up the file later on
+         * @param content
+         *         the file to store
+         *
+         * @throws IOException
+         *         if the file could not be stored
+         */
+        public void add(final String fileName, final Path content) throws IOException {
+            try (InputStream input = Files.newInputStream(content)) {
+                add(fileName, input);
+            }
+        }
+
+        /**
+         * Writes the manifest of the build and updates the reference counts of the stored contents.
+         *
+         * @throws IOException
+         *         if the manifest could not be written
+         */
+        @Override
+        public void close() throws IOException {
+            Job<?, ?> job = build.getParent();
+            Path manifest = getManifest(build);
+            synchronized (LOCK) {
+                var references = readReferences(job);
+                var existing = readManifest(manifest);
+                existing.values().forEach(hash -> references.merge(hash, -1, Integer::sum));
+                existing.putAll(hashes);
+                existing.values().forEach(hash -> references.merge(hash, 1, Integer::sum));
+                references.values().removeIf(count -> count <= 0);
+
+                List<String> lines = new ArrayList<>();
+                existing.forEach((fileName, hash) -> lines.add(hash + SEPARATOR + escape(fileName)));
+                writeAtomically(manifest, lines);
+                writeReferences(job, references);
+                writeDirectory(job);
+                Files.deleteIfExists(manifest.resolveSibling(SourceCodeSearchIndex.FILE_NAME));
+                SourceCodeIndex.record(job, directory, build.getNumber(),
+                        Files.size(manifest) + computeSize(job, existing.values()));
+
+                hashes.values().forEach(hash -> PENDING_CONTENTS.computeIfPresent(getBlob(job, hash),
+                        (blob, count) -> count > 1 ? count - 1 : null));
+                hashes.clear();
+            }
+        }
+
+        /**
+         * Releases a content that has been replaced by another content within this session. The content will be
+         * deleted if it is neither referenced by a build nor written by another session.
+         */
+        private void releasePending(final String hash) throws IOException {
+            Job<?, ?> job = build.getParent();
+            Path blob = getBlob(job, hash);
+            PENDING_CONTENTS.computeIfPresent(blob, (key, count) -> count > 1 ? count - 1 : null);
+            if (!PENDING_CONTENTS.containsKey(blob) && !readReferences(job).containsKey(hash)) {
+                Files.deleteIfExists(blob);
+            }
+        }
+
+        private String toHex(final byte[] bytes) {
+            var hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+    }
+}
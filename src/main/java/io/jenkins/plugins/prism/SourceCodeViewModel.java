@@ -1,15 +1,34 @@
 package io.jenkins.plugins.prism;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
-import java.io.BufferedReader;
+import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
 
+import org.kohsuke.stapler.HttpResponse;
+import org.kohsuke.stapler.HttpResponses;
+import org.kohsuke.stapler.QueryParameter;
 import hudson.model.Job;
 import hudson.model.ModelObject;
 import hudson.model.Run;
 
+import io.jenkins.plugins.prism.PrismEvents.PermissionBatchEvent;
 import io.jenkins.plugins.util.JenkinsFacade;
 
 /**
@@ -31,6 +50,46 @@ public class SourceCodeViewModel implements ModelObject {
                 || !PrismConfiguration.getInstance().isProtectSourceCodeByPermission();
     }
 
+    /**
+     * Checks if the current user has permission to view the source code of each of the specified builds. Builds are
+     * grouped by their parent job so that the {@link Job#WORKSPACE} permission is evaluated only once per job. Use this
+     * method if a page contains many links to source code views, e.g., a table of issues or coverage results.
+     *
+     * @param owners
+     *         the builds to check
+     * @return a mapping of each build to the permission decision, the order of the builds is retained
+     */
+    public static Map<Run<?, ?>, Boolean> hasPermissionToViewSourceCode(final Collection<? extends Run<?, ?>> owners) {
+        return hasPermissionToViewSourceCode(owners, new JenkinsFacade(), PrismConfiguration.getInstance());
+    }
+
+    @VisibleForTesting
+    static Map<Run<?, ?>, Boolean> hasPermissionToViewSourceCode(final Collection<? extends Run<?, ?>> owners,
+            final JenkinsFacade jenkins, final PrismConfiguration configuration) {
+        var event = new PermissionBatchEvent();
+        event.begin();
+
+        boolean isProtected = configuration.isProtectSourceCodeByPermission();
+        Map<Job<?, ?>, Boolean> permissionsPerJob = new HashMap<>();
+        Map<Run<?, ?>, Boolean> decisions = new LinkedHashMap<>();
+        for (Run<?, ?> owner : owners) {
+            if (isProtected) {
+                decisions.put(owner, permissionsPerJob.computeIfAbsent(owner.getParent(),
+                        job -> jenkins.hasPermission(Job.WORKSPACE, job)));
+            }
+            else {
+                decisions.put(owner, Boolean.TRUE);
+            }
+        }
+
+        if (event.shouldCommit()) {
+            event.builds = decisions.size();
+            event.jobs = permissionsPerJob.size();
+            event.commit();
+        }
+        return decisions;
+    }
+
     /**
      * Protects a source code view by checking permissions.
      *
@@ -66,18 +125,191 @@ public class SourceCodeViewModel implements ModelObject {
      */
     public static ModelObject create(final Run<?, ?> owner, final String fileName,
             final Reader sourceCodeReader, final Marker marker) {
-        return protectedSourceCodeView(
-                new SourceCodeViewModel(owner, fileName, sourceCodeReader, marker),
-                owner,
-                fileName);
+        if (!hasPermissionToViewSourceCode(owner)) {
+            return new PermissionDeniedViewModel(owner, fileName);
+        }
+        return new SourceCodeViewModel(owner, fileName, sourceCodeReader, marker);
+    }
+
+    /**
+     * Creates a source code view model or a permission-denied view model based on the user's permissions. The charset
+     * of the source code file is detected automatically (see {@link SourceCodeDecoder}), the specified charset is
+     * used only if the file neither has a byte order mark nor is a valid UTF-8 file.
+     *
+     * @param owner
+     *         the current build as the owner of this view
+     * @param fileName
+     *         the file name of the shown content
+     * @param file
+     *         the source code file to show
+     * @param fallbackCharset
+     *         the charset to use if the charset of the file cannot be detected
+     * @param marker
+     *         a block of lines (or a part of a line) to mark in the source code view
+     * @return a {@link SourceCodeViewModel} if permission is granted, or a {@link PermissionDeniedViewModel} otherwise
+     */
+    public static ModelObject create(final Run<?, ?> owner, final String fileName,
+            final Path file, final Charset fallbackCharset, final Marker marker) {
+        return create(owner, fileName, file, fallbackCharset, marker, LineDecorations.NONE);
+    }
+
+    /**
+     * Creates a source code view model or a permission-denied view model based on the user's permissions. The lines of
+     * the source code are decorated with the CSS classes of the specified decorations, e.g., to show the coverage or
+     * the profiling results of each line. The charset of the source code file is detected automatically (see
+     * {@link SourceCodeDecoder}), the specified charset is used only if the file neither has a byte order mark nor is
+     * a valid UTF-8 file.
+     *
+     * @param owner
+     *         the current build as the owner of this view
+     * @param fileName
+     *         the file name of the shown content
+     * @param file
+     *         the source code file to show
+     * @param fallbackCharset
+     *         the charset to use if the charset of the file cannot be detected
+     * @param marker
+     *         a block of lines (or a part of a line) to mark in the source code view
+     * @param decorations
+     *         the decorations of the lines
+     * @return a {@link SourceCodeViewModel} if permission is granted, or a {@link PermissionDeniedViewModel} otherwise
+     */
+    public static ModelObject create(final Run<?, ?> owner, final String fileName,
+            final Path file, final Charset fallbackCharset, final Marker marker, final LineDecorations decorations) {
+        if (!hasPermissionToViewSourceCode(owner)) {
+            return new PermissionDeniedViewModel(owner, fileName);
+        }
+        return new SourceCodeViewModel(owner, fileName, file, fallbackCharset, marker, decorations);
+    }
+
+    /**
+     * Creates a source code view model or a permission-denied view model based on the user's permissions. The charset
+     * of the source code is detected automatically (see {@link SourceCodeDecoder}), the specified charset is used only
+     * if the stream neither starts with a byte order mark nor is valid UTF-8.
+     *
+     * @param owner
+     *         the current build as the owner of this view
+     * @param fileName
+     *         the file name of the shown content
+     * @param sourceCodeStream
+     *         the source code file to show, provided by an {@link InputStream} instance that will be closed afterwards
+     * @param fallbackCharset
+     *         the charset to use if the charset of the stream cannot be detected
+     * @param marker
+     *         a block of lines (or a part of a line) to mark in the source code view
+     * @return a {@link SourceCodeViewModel} if permission is granted, or a {@link PermissionDeniedViewModel} otherwise
+     */
+    public static ModelObject create(final Run<?, ?> owner, final String fileName,
+            final InputStream sourceCodeStream, final Charset fallbackCharset, final Marker marker) {
+        if (!hasPermissionToViewSourceCode(owner)) {
+            return new PermissionDeniedViewModel(owner, fileName);
+        }
+        return new SourceCodeViewModel(owner, fileName, renderInBackground(fileName,
+                () -> SourceCodeDecoder.openReader(sourceCodeStream, fallbackCharset), sourceCodeStream, marker));
+    }
+
+    /**
+     * Renders the specified source code on the executor of the {@link SourceCodeRenderingService}. The source code is
+     * read line by line by the rendering task, so the rendered lines start at the marker if the lines before the marker
+     * exceed the character budget. Since the source code can be read only once, the remaining lines of a truncated
+     * source code cannot be loaded on demand. The source code will be closed by the rendering task.
+     */
+    private static SourceCodeRenderingService.Rendering renderInBackground(final String fileName,
+            final ReaderFactory sourceCode, final Closeable source, final Marker marker) {
+        return renderInBackground(SourceCodeRenderingService.getInstance(),
+                () -> createPrinter(getMaxRenderedCharacters()), fileName, sourceCode, source, marker);
+    }
+
+    @VisibleForTesting
+    static SourceCodeRenderingService.Rendering renderInBackground(final SourceCodeRenderingService service,
+            final Supplier<SourcePrinter> printerFactory, final String fileName, final ReaderFactory sourceCode,
+            final Closeable source, final Marker marker) {
+        return service.render(() -> {
+            try (source; Reader reader = sourceCode.open()) {
+                var printer = printerFactory.get();
+                return printer.render(fileName, SourceCodeDecoder.lines(reader, printer.getCharacterBudget()), marker,
+                        LineDecorations.NONE, false);
+            }
+            catch (UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+        }, exception -> renderError(fileName, exception, marker));
+    }
+
+    private static String renderError(final String fileName, final Throwable exception, final Marker marker) {
+        return new SourcePrinter().render(fileName, asErrorMessage(exception), marker);
+    }
+
+    /**
+     * Creates a source code view model or a permission-denied view model based on the user's permissions. The
+     * source code will be read from the specified {@link SourceCodeStore}. If the source code view has been
+     * {@link SourceCodePrerenderer pre-rendered}, then the persisted HTML fragment will be shown.
+     *
+     * @param owner
+     *         the current build as the owner of this view
+     * @param fileName
+     *         the file name of the shown content
+     * @param store
+     *         the store that contains the source code files of the build
+     * @param charset
+     *         the charset of the stored source code file, used if the charset cannot be detected automatically
+     * @param marker
+     *         a block of lines (or a part of a line) to mark in the source code view
+     * @return a {@link SourceCodeViewModel} if permission is granted, or a {@link PermissionDeniedViewModel} otherwise
+     */
+    public static ModelObject create(final Run<?, ?> owner, final String fileName,
+            final SourceCodeStore store, final Charset charset, final Marker marker) {
+        if (!hasPermissionToViewSourceCode(owner)) {
+            return new PermissionDeniedViewModel(owner, fileName);
+        }
+        try {
+            var file = store.find(owner, fileName);
+            if (file.isEmpty()) {
+                throw new NoSuchFileException(fileName);
+            }
+            var model = new SourceCodeViewModel(owner, fileName, file.get(), charset, marker, LineDecorations.NONE);
+            SourceCodePrerenderer.getInstance().find(owner, store, fileName, marker)
+                    .ifPresent(prerendered -> model.sourceCode = prerendered);
+            return model;
+        }
+        catch (IOException exception) {
+            return new SourceCodeViewModel(owner, fileName, renderError(fileName, exception, marker));
+        }
+    }
+
+    private static String asErrorMessage(final Throwable exception) {
+        return String.format("%s%n%s", ExceptionUtils.getMessage(exception), ExceptionUtils.getStackTrace(exception));
+    }
+
+    private static int getMaxRenderedCharacters() {
+        return PrismConfiguration.getInstance().getMaxRenderedCharacters();
+    }
+
+    private static SourcePrinter createPrinter(final int budget) {
+        return PrismConfiguration.getInstance().createPrinter(budget);
     }
 
     private final Run<?, ?> owner;
     private final String fileName;
-    private final String sourceCode;
+    @CheckForNull
+    private String sourceCode;
+    /** The ID of the view in the {@link SourceCodeRenderingService}, if the view is still being rendered. */
+    @CheckForNull
+    private final String renderingId;
+
+    /** The source code file, if available the view renders the file lazily and supports loading ranges of lines. */
+    @CheckForNull
+    private final Path file;
+    @CheckForNull
+    private final Charset charset;
+    @CheckForNull
+    private final Marker marker;
+    private final LineDecorations decorations;
 
     /**
-     * Creates a new source code view model instance.
+     * Creates a new source code view model instance. The source code will be read and rendered on a dedicated executor,
+     * and the reader will be closed afterward: if the rendering does not complete within the deadline of the
+     * {@link PrismConfiguration}, then the view shows a placeholder that loads the source code later.
      *
      * @param owner
      *         the current build as the owner of this view
@@ -93,23 +325,43 @@ public class SourceCodeViewModel implements ModelObject {
     @SuppressWarnings("DeprecatedIsStillUsed")
     public SourceCodeViewModel(final Run<?, ?> owner, final String fileName, final Reader sourceCodeReader,
             final Marker marker) {
+        this(owner, fileName, render(fileName, sourceCodeReader, marker));
+    }
+
+    private SourceCodeViewModel(final Run<?, ?> owner, final String fileName, final String sourceCode) {
+        this(owner, fileName, SourceCodeRenderingService.Rendering.completed(sourceCode));
+    }
+
+    private SourceCodeViewModel(final Run<?, ?> owner, final String fileName,
+            final SourceCodeRenderingService.Rendering rendering) {
+        this.owner = owner;
+        this.fileName = fileName;
+        this.sourceCode = rendering.html();
+        this.renderingId = rendering.id();
+        this.file = null;
+        this.charset = null;
+        this.marker = null;
+        this.decorations = LineDecorations.NONE;
+    }
+
+    private SourceCodeViewModel(final Run<?, ?> owner, final String fileName, final Path file,
+            final Charset charset, final Marker marker, final LineDecorations decorations) {
         this.owner = owner;
         this.fileName = fileName;
-        sourceCode = render(sourceCodeReader, marker);
+        this.renderingId = null;
+        this.file = file;
+        this.charset = charset;
+        this.marker = marker;
+        this.decorations = decorations;
     }
 
     public PrismConfiguration getPrismConfiguration() {
         return PrismConfiguration.getInstance();
     }
 
-    private String render(final Reader affectedFile, final Marker marker) {
-        try (BufferedReader reader = new BufferedReader(affectedFile)) {
-            SourcePrinter sourcePrinter = new SourcePrinter();
-            return sourcePrinter.render(fileName, reader.lines(), marker);
-        }
-        catch (IOException e) {
-            return String.format("%s%n%s", ExceptionUtils.getMessage(e), ExceptionUtils.getStackTrace(e));
-        }
+    private static SourceCodeRenderingService.Rendering render(final String fileName, final Reader affectedFile,
+            final Marker marker) {
+        return renderInBackground(fileName, () -> affectedFile, affectedFile, marker);
     }
 
     @Override
@@ -127,12 +379,127 @@ public class SourceCodeViewModel implements ModelObject {
     }
 
     /**
-     * Returns the colorized source code.
+     * Returns the colorized source code. Files that exceed the maximum rendered size of the
+     * {@link PrismConfiguration} are truncated, the remaining lines can be loaded using {@link #doRange(int)}.
      *
      * @return the source code
      */
     public String getSourceCode() {
+        if (sourceCode == null) {
+            sourceCode = renderFile();
+        }
         return sourceCode;
     }
-}
 
+    /**
+     * Returns whether the source code is still being rendered in the background. In this case, the view shows a
+     * placeholder that polls {@link #getRenderingUrl()} until the source code is available.
+     *
+     * @return {@code true} if the source code is still being rendered, {@code false} otherwise
+     */
+    public boolean isLoading() {
+        return renderingId != null;
+    }
+
+    /**
+     * Returns the URL (relative to the root URL of Jenkins) that provides the source code once it has been rendered.
+     *
+     * @return the URL of the rendered source code, or an empty string if the source code is already available
+     */
+    public String getRenderingUrl() {
+        if (renderingId == null) {
+            return StringUtils.EMPTY;
+        }
+        return SourceCodeRenderingAction.URL_NAME + "/?id=" + renderingId;
+    }
+
+    private String renderFile() {
+        if (file == null || charset == null || marker == null) {
+            return StringUtils.EMPTY;
+        }
+        try {
+            return render(createPrinter(getMaxRenderedCharacters()), fileName, file, charset, marker, decorations);
+        }
+        catch (IOException exception) {
+            return new SourcePrinter().render(fileName, asErrorMessage(exception), marker);
+        }
+    }
+
+    /**
+     * Renders the specified source code file. Small files are decoded into memory at once. Files that might exceed the
+     * character budget of the printer are read line by line, so that the rendered lines start at the marker if the
+     * lines before the marker exceed the budget.
+     *
+     * @param printer
+     *         the printer to render the file with
+     * @param fileName
+     *         the file name of the shown content
+     * @param file
+     *         the source code file
+     * @param charset
+     *         the charset of the source code file, used if the charset cannot be detected automatically
+     * @param marker
+     *         a block of lines (or a part of a line) to mark in the source code view
+     * @param decorations
+     *         the decorations of the lines
+     *
+     * @return the source code as colorized HTML
+     * @throws IOException
+     *         if the file cannot be read
+     */
+    static String render(final SourcePrinter printer, final String fileName, final Path file, final Charset charset,
+            final Marker marker, final LineDecorations decorations) throws IOException {
+        int budget = printer.getCharacterBudget();
+        if (Files.size(file) < budget) { // each character of the file requires at least one byte
+            CharSequence content = SourceCodeDecoder.decode(file, charset, budget);
+            return printer.render(fileName, content, content.length() < budget, marker, decorations);
+        }
+        try (Reader reader = SourceCodeDecoder.openReader(file, charset)) {
+            return printer.render(fileName, SourceCodeDecoder.lines(reader, budget), marker, decorations);
+        }
+        catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+    }
+
+    /**
+     * Returns whether the lines of a truncated source code file can be loaded on demand using {@link #doRange(int)}.
+     *
+     * @return {@code true} if ranges of lines can be loaded, {@code false} otherwise
+     */
+    public boolean isRangeAvailable() {
+        return file != null;
+    }
+
+    /**
+     * Returns the colorized lines of the source code file that start at the specified line. The number of returned
+     * lines is limited by the maximum rendered size of the {@link PrismConfiguration}.
+     *
+     * @param from
+     *         the first line to render
+     *
+     * @return the lines as HTML fragment
+     */
+    public HttpResponse doRange(@QueryParameter final int from) {
+        if (file == null || charset == null || from < 1) {
+            return HttpResponses.notFound();
+        }
+        if (!hasPermissionToViewSourceCode(owner)) {
+            return HttpResponses.forbidden();
+        }
+        try (Reader reader = SourceCodeDecoder.openReader(file, charset)) {
+            int budget = getMaxRenderedCharacters();
+            return HttpResponses.literalHtml(createPrinter(budget)
+                    .renderRange(fileName, SourceCodeDecoder.lines(reader, budget), from, decorations));
+        }
+        catch (IOException | UncheckedIOException exception) {
+            return HttpResponses.error(500, exception);
+        }
+    }
+
+    /** Opens the reader of a source code that is rendered in the background. */
+    @FunctionalInterface
+    interface ReaderFactory {
+        Reader open() throws IOException;
+    }
+}
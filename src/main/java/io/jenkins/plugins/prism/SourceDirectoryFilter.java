@@ -9,6 +9,7 @@ import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -20,6 +21,8 @@ import edu.hm.hafner.util.FilteredLog;
 import edu.hm.hafner.util.PathUtil;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import io.jenkins.plugins.prism.PrismEvents.GlobWalkEvent;
+
 /**
  * Filters source code directories that are not approved in Jenkins' global configuration. A directory is considered
  * safe if it is a sub-folder in the agent workspace. Directories outside the workspace need to be approved by an
@@ -52,6 +55,18 @@ public class SourceDirectoryFilter {
             final Set<String> allowedSourceDirectories,
             final Set<String> requestedSourceDirectories,
             final FilteredLog log) {
+        long start = System.nanoTime();
+        try {
+            return filterSourceDirectories(workspacePath, allowedSourceDirectories, requestedSourceDirectories, log);
+        }
+        finally {
+            PrismMetrics.getInstance().stop(PrismMetrics.DIRECTORY_FILTER, start);
+        }
+    }
+
+    private Set<String> filterSourceDirectories(final String workspacePath,
+            final Set<String> allowedSourceDirectories, final Set<String> requestedSourceDirectories,
+            final FilteredLog log) {
         var normalizedWorkspacePath = PATH_UTIL.getAbsolutePath(workspacePath);
         Set<String> filteredDirectories = new HashSet<>();
         for (String sourceDirectory : requestedSourceDirectories) {
@@ -110,10 +125,16 @@ public class SourceDirectoryFilter {
             return List.of(PATH_UTIL.createAbsolutePath(directory, pattern));
         }
 
+        var event = new GlobWalkEvent();
+        event.begin();
+        event.failed = true;
+        PathMatcherFileVisitor visitor = null;
         try {
             var workspace = Paths.get(directory);
-            PathMatcherFileVisitor visitor = new PathMatcherFileVisitor(workspace, pattern);
+            visitor = new PathMatcherFileVisitor(workspace, pattern);
             Files.walkFileTree(workspace, visitor);
+            PrismMetrics.getInstance().increment(PrismMetrics.DIRECTORY_FILTER_VISITED, visitor.getVisitedCount());
+            event.failed = false;
             return visitor.getMatches();
         }
         catch (IllegalArgumentException exception) {
@@ -124,6 +145,16 @@ public class SourceDirectoryFilter {
             log.logException(exception,
                     "Cannot find subdirectories in '%s' for glob: pattern '%s'", directory, pattern);
         }
+        finally {
+            if (event.shouldCommit()) {
+                event.pattern = pattern;
+                if (visitor != null) {
+                    event.visited = visitor.getVisitedCount();
+                    event.matches = visitor.getMatches().size();
+                }
+                event.commit();
+            }
+        }
 
         return new ArrayList<>();
     }
@@ -136,6 +167,7 @@ public class SourceDirectoryFilter {
         private final Path workspace;
         private final PathMatcher pathMatcher;
         private final List<String> matches = new ArrayList<>();
+        private int visitedCount;
 
         PathMatcherFileVisitor(final Path workspace, final String syntaxAndPattern) {
             super();
@@ -148,8 +180,19 @@ public class SourceDirectoryFilter {
             return matches;
         }
 
+        int getVisitedCount() {
+            return visitedCount;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+            visitedCount++;
+            return FileVisitResult.CONTINUE;
+        }
+
         @Override
         public FileVisitResult postVisitDirectory(final Path dir, final IOException exc) throws IOException {
+            visitedCount++;
             if (pathMatcher.matches(dir) || pathMatcher.matches(workspace.relativize(dir))) {
                 matches.add(PATH_UTIL.getAbsolutePath(dir));
             }
@@ -1,7 +1,6 @@
 package io.jenkins.plugins.prism;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.text.StringEscapeUtils;
 import org.jenkins.ui.symbol.Symbol;
 import org.jenkins.ui.symbol.SymbolRequest;
 import org.jenkins.ui.symbol.SymbolRequest.Builder;
@@ -9,15 +8,24 @@ import org.apache.commons.lang3.Strings;
 
 import edu.hm.hafner.util.LookaheadStream;
 import edu.hm.hafner.util.VisibleForTesting;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 
-import j2html.tags.ContainerTag;
-import j2html.tags.DomContent;
-import j2html.tags.UnescapedText;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Stream;
 
-import io.jenkins.plugins.util.JenkinsFacade;
+import jenkins.util.SystemProperties;
 
-import static j2html.TagCreator.*;
+import io.jenkins.plugins.prism.PrismEvents.SourceRenderEvent;
+import io.jenkins.plugins.prism.RenderingTiers.Features;
+import io.jenkins.plugins.prism.SourceCodeDiff.Hunk;
+import io.jenkins.plugins.prism.SourceCodeDiff.LineType;
+import io.jenkins.plugins.util.JenkinsFacade;
 
 /**
  * Renders a source code file into a HTML snippet using Prism.js.
@@ -27,28 +35,180 @@ import static j2html.TagCreator.*;
  */
 @SuppressWarnings("PMD.GodClass")
 class SourcePrinter {
+    private static final Logger LOGGER = Logger.getLogger(SourcePrinter.class.getName());
+    private static final PrismMetrics METRICS = PrismMetrics.getInstance();
+    /** Renderings that take longer than this threshold (in milliseconds) will be logged by default. */
+    static final long DEFAULT_SLOW_RENDER_THRESHOLD = 1_000L;
+    /**
+     * The version of the generated markup. Must be incremented whenever the markup changes, so that HTML fragments
+     * that have been persisted by the {@link SourceCodePrerenderer} will be rendered again.
+     */
+    static final int MARKUP_VERSION = 2;
     private static final Sanitizer SANITIZER = new Sanitizer();
 
     private static final ColumnMarker COLUMN_MARKER = new ColumnMarker("-n/a-");
     private static final String QT_LINGUIST_PATTERN = "<!DOCTYPE TS>";
-    private static final int MAX_LINES_FOR_SYNTAX_HIGHLIGHTING = 5_000;
+    /**
+     * Blocks of source code that contain more lines than this limit are split into chunks of this size. Only the
+     * chunks next to the marker are highlighted immediately, the other chunks are highlighted by the browser when it
+     * is idle (see {@code progressive-highlight.js}). Since Prism highlights each chunk on its own, a chunk is
+     * extended until it does not end within a block comment or a text block. Such a token is split only if it is
+     * longer than this limit, see {@link MultiLineTokenScanner}.
+     */
+    private static final int CHUNK_LINES = Math.max(1, SystemProperties.getInteger(
+            SourcePrinter.class.getName() + ".chunkLines", 500));
+    /**
+     * Files that contain a line that is longer than this limit are shown without syntax highlighting by default. The
+     * long lines are truncated at this limit, the remaining characters can be expanded by the user.
+     */
+    static final int DEFAULT_MAX_LINE_LENGTH = 1_000;
+    private static final String LONG_LINES = "prism-long-lines";
     private static final String LINE_NUMBERS = "line-numbers";
     private static final String MATCH_BRACES = "match-braces";
     private static final String ICON_MD = "icon-md";
+    private static final String COLLAPSE_ICON = "chevron-down-circle-outline";
+    private static final String COLLAPSE_ICON_CLASS = "analysis-collapse-icon";
+    private static final String IONICONS_PLUGIN = "ionicons-api";
+    private static final String HIGHLIGHT = "highlight";
+    private static final String CHUNK = "prism-chunk";
+    private static final String DEFERRED = "prism-deferred";
+    private static final String NUMBERED = "prism-numbered";
+    private static final String GUTTER = "prism-gutter";
+    private static final String SINGLE_BLOCK_CLASS = "prism-single-block";
+    private static final String DECORATION = "prism-decoration";
+    private static final String DATA_START = "data-start";
+    private static final String PRE = "pre";
+    private static final String CODE = "code";
+    private static final String DIV = "div";
+    private static final String SPAN = "span";
+    private static final String TABLE = "table";
+    private static final String TR = "tr";
+    private static final String TD = "td";
     private static final char NEW_LINE = '\n';
 
     private final JenkinsFacade jenkinsFacade;
+    private final SymbolCache symbolCache;
+    private final int characterBudget;
+    private final RenderingTiers tiers;
+    /**
+     * Determines whether the whole file is rendered in a single block of code. Then, the marked lines are highlighted
+     * by the line-highlight plugin of Prism and the info panel of the marker is shown as an overlay. Otherwise, the
+     * file is split into separate blocks of code before, within, and after the marker. Files that are too large for
+     * the line-numbers plugin are always split: the line-highlight plugin requires the code to be a direct child of
+     * the {@code pre} element, but the server side line numbers wrap the code.
+     */
+    private final boolean singleBlock;
+    private final int maxLineLength;
+    private final long slowRenderThreshold;
 
     /**
-     * Creates a new instance of {@link SourcePrinter}.
+     * Creates a new instance of {@link SourcePrinter} that renders source code files of any size.
      */
     SourcePrinter() {
-        this(new JenkinsFacade());
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new instance of {@link SourcePrinter} that stops reading a source code file after the specified
+     * number of characters. The remaining lines can be rendered afterward using
+     * {@link #renderRange(String, Stream, int)}.
+     *
+     * @param characterBudget
+     *         the maximum number of characters to render
+     */
+    SourcePrinter(final int characterBudget) {
+        this(characterBudget, RenderingTiers.DEFAULT);
+    }
+
+    /**
+     * Creates a new instance of {@link SourcePrinter} that stops reading a source code file after the specified
+     * number of characters. The client side features of Prism are enabled depending on the size of the rendered file.
+     *
+     * @param characterBudget
+     *         the maximum number of characters to render
+     * @param tiers
+     *         determines the client side features of Prism that are enabled for a file of a given size
+     */
+    SourcePrinter(final int characterBudget, final RenderingTiers tiers) {
+        this(characterBudget, tiers, false, DEFAULT_MAX_LINE_LENGTH, DEFAULT_SLOW_RENDER_THRESHOLD);
+    }
+
+    /**
+     * Creates a new instance of {@link SourcePrinter} that stops reading a source code file after the specified
+     * number of characters. The client side features of Prism are enabled depending on the size of the rendered file.
+     *
+     * @param characterBudget
+     *         the maximum number of characters to render
+     * @param tiers
+     *         determines the client side features of Prism that are enabled for a file of a given size
+     * @param singleBlock
+     *         determines whether the whole file is rendered in a single block of code
+     * @param maxLineLength
+     *         files that contain a longer line are shown without syntax highlighting, the long lines are truncated
+     * @param slowRenderThreshold
+     *         renderings that take longer than this threshold (in milliseconds) will be logged
+     * @see PrismConfiguration#createPrinter(int)
+     */
+    SourcePrinter(final int characterBudget, final RenderingTiers tiers, final boolean singleBlock,
+            final int maxLineLength, final long slowRenderThreshold) {
+        this(new JenkinsFacade(), SymbolCache.getInstance(), characterBudget, tiers, singleBlock, maxLineLength,
+                slowRenderThreshold);
     }
 
     @VisibleForTesting
     SourcePrinter(final JenkinsFacade jenkinsFacade) {
+        this(jenkinsFacade, Integer.MAX_VALUE);
+    }
+
+    @VisibleForTesting
+    SourcePrinter(final JenkinsFacade jenkinsFacade, final int characterBudget) {
+        this(jenkinsFacade, new SymbolCache(), characterBudget);
+    }
+
+    @VisibleForTesting
+    SourcePrinter(final JenkinsFacade jenkinsFacade, final SymbolCache symbolCache, final int characterBudget) {
+        this(jenkinsFacade, symbolCache, characterBudget, RenderingTiers.DEFAULT);
+    }
+
+    @VisibleForTesting
+    SourcePrinter(final JenkinsFacade jenkinsFacade, final SymbolCache symbolCache, final int characterBudget,
+            final RenderingTiers tiers) {
+        this(jenkinsFacade, symbolCache, characterBudget, tiers, false);
+    }
+
+    @VisibleForTesting
+    SourcePrinter(final JenkinsFacade jenkinsFacade, final SymbolCache symbolCache, final int characterBudget,
+            final RenderingTiers tiers, final boolean singleBlock) {
+        this(jenkinsFacade, symbolCache, characterBudget, tiers, singleBlock, DEFAULT_MAX_LINE_LENGTH,
+                DEFAULT_SLOW_RENDER_THRESHOLD);
+    }
+
+    @VisibleForTesting
+    SourcePrinter(final JenkinsFacade jenkinsFacade, final SymbolCache symbolCache, final int characterBudget,
+            final RenderingTiers tiers, final boolean singleBlock, final int maxLineLength,
+            final long slowRenderThreshold) {
         this.jenkinsFacade = jenkinsFacade;
+        this.symbolCache = symbolCache;
+        this.characterBudget = characterBudget;
+        this.tiers = tiers;
+        this.singleBlock = singleBlock;
+        this.maxLineLength = Math.max(1, maxLineLength);
+        this.slowRenderThreshold = slowRenderThreshold;
+    }
+
+    int getCharacterBudget() {
+        return characterBudget;
+    }
+
+    /**
+     * Returns a key that identifies the markup produced by this printer: two printers with the same key render the same
+     * source code into the same HTML snippet.
+     *
+     * @return the key of the markup version and the configuration of this printer
+     */
+    String getConfigurationKey() {
+        return String.join(",", String.valueOf(MARKUP_VERSION), String.valueOf(characterBudget), tiers.toString(),
+                String.valueOf(singleBlock), String.valueOf(CHUNK_LINES), String.valueOf(maxLineLength));
     }
 
     /**
@@ -65,119 +225,812 @@ class SourcePrinter {
      * @return the source code as colorized HTML
      */
     String render(final String fileName, final Stream<String> lines, final Marker marker) {
+        return render(fileName, lines, marker, LineDecorations.NONE);
+    }
+
+    /**
+     * Creates a colorized HTML snippet with the specified source code. The lines of the source code are decorated with
+     * the CSS classes of the specified decorations. If the lines before the marker exceed the character budget, then
+     * these lines are skipped and the snippet starts at the marker.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param lines
+     *         the lines of the source code
+     * @param marker
+     *         the issue to show
+     * @param decorations
+     *         the decorations of the lines
+     *
+     * @return the source code as colorized HTML
+     */
+    String render(final String fileName, final Stream<String> lines, final Marker marker,
+            final LineDecorations decorations) {
+        return render(fileName, lines, marker, decorations, true);
+    }
+
+    /**
+     * Creates a colorized HTML snippet with the specified source code. If the remaining lines of a truncated source
+     * code cannot be loaded on demand using {@link #renderRange(String, Stream, int)}, e.g., since the source code
+     * has been provided by a stream that can be read only once, then the notice that more lines are available is
+     * omitted.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param lines
+     *         the lines of the source code
+     * @param marker
+     *         the issue to show
+     * @param decorations
+     *         the decorations of the lines
+     * @param isRangeAvailable
+     *         determines whether the remaining lines of a truncated source code can be loaded on demand
+     *
+     * @return the source code as colorized HTML
+     */
+    String render(final String fileName, final Stream<String> lines, final Marker marker,
+            final LineDecorations decorations, final boolean isRangeAvailable) {
+        long start = System.nanoTime();
+        var event = new SourceRenderEvent();
+        event.begin();
         try (LookaheadStream stream = new LookaheadStream(lines)) {
-            int start = marker.getLineStart();
-            int end = marker.getLineEnd();
+            int firstLine = 1;
+            StringBuilder before = readBlockUntilLine(stream, marker.getLineStart() - 1, characterBudget);
+            if (stream.getLine() < marker.getLineStart() - 1 && stream.hasNext()) {
+                skipUntilLine(stream, marker.getLineStart() - 1);
+                before.setLength(0);
+                firstLine = stream.getLine() + 1;
+            }
+            StringBuilder marked = readBlockUntilLine(stream, marker.getLineEnd(),
+                    characterBudget - before.length());
+            StringBuilder after = readBlockUntilLine(stream, Integer.MAX_VALUE,
+                    characterBudget - before.length() - marked.length());
+            int nextLine = isRangeAvailable && stream.hasNext() ? stream.getLine() + 1 : 0;
+
+            return render(fileName, before, marked, after, marker, decorations, firstLine, nextLine, start, event);
+        }
+    }
+
+    /**
+     * Creates a colorized HTML snippet with the specified source code. Highlights the specified issue and provides a
+     * clickable and collapsible element that shows the details for the issue. In contrast to
+     * {@link #render(String, Stream, Marker)}, the source code is split into blocks directly without creating a
+     * {@link String} instance for each line. Line terminators are normalized to {@code \n}.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param content
+     *         the content of the source code file
+     * @param marker
+     *         the issue to show
+     *
+     * @return the source code as colorized HTML
+     * @see SourceCodeDecoder
+     */
+    String render(final String fileName, final CharSequence content, final Marker marker) {
+        return render(fileName, content, true, marker);
+    }
+
+    /**
+     * Creates a colorized HTML snippet with the specified source code. If the content is not complete, i.e., it has
+     * been truncated while reading, then the last incomplete line will be skipped and a notice that more lines are
+     * available will be appended.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param content
+     *         the content of the source code file
+     * @param isComplete
+     *         determines whether the content contains the whole file
+     * @param marker
+     *         the issue to show
+     *
+     * @return the source code as colorized HTML
+     * @see SourceCodeDecoder#decode(java.nio.file.Path, java.nio.charset.Charset, int)
+     */
+    String render(final String fileName, final CharSequence content, final boolean isComplete,
+            final Marker marker) {
+        return render(fileName, content, isComplete, marker, LineDecorations.NONE);
+    }
+
+    /**
+     * Creates a colorized HTML snippet with the specified source code. In contrast to
+     * {@link #render(String, CharSequence, boolean, Marker)}, the lines of the source code are decorated with the CSS
+     * classes of the specified decorations. The decorations are applied while writing the code, subsequent lines with
+     * the same decoration are wrapped into a single element. If the lines before the marker exceed the character
+     * budget, then these lines are skipped and the snippet starts at the marker.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param content
+     *         the content of the source code file
+     * @param isComplete
+     *         determines whether the content contains the whole file
+     * @param marker
+     *         the issue to show
+     * @param decorations
+     *         the decorations of the lines
+     *
+     * @return the source code as colorized HTML
+     */
+    String render(final String fileName, final CharSequence content, final boolean isComplete,
+            final Marker marker, final LineDecorations decorations) {
+        long start = System.nanoTime();
+        var event = new SourceRenderEvent();
+        event.begin();
 
-            StringBuilder before = readBlockUntilLine(stream, start - 1);
-            StringBuilder marked = readBlockUntilLine(stream, end);
-            StringBuilder after = readBlockUntilLine(stream, Integer.MAX_VALUE);
+        var cursor = new ContentCursor(content, isComplete);
+        int firstLine = 1;
+        StringBuilder before = cursor.readBlockUntilLine(marker.getLineStart() - 1, characterBudget);
+        if (cursor.getLine() < marker.getLineStart() - 1 && cursor.hasNext()) {
+            cursor.skipUntilLine(marker.getLineStart() - 1);
+            before.setLength(0);
+            firstLine = cursor.getLine() + 1;
+        }
+        StringBuilder marked = cursor.readBlockUntilLine(marker.getLineEnd(), characterBudget - before.length());
+        StringBuilder after = cursor.readBlockUntilLine(Integer.MAX_VALUE,
+                characterBudget - before.length() - marked.length());
+        int nextLine = cursor.hasNext() || !isComplete ? cursor.getLine() + 1 : 0;
+
+        return render(fileName, before, marked, after, marker, decorations, firstLine, nextLine, start, event);
+    }
+
+    /**
+     * Creates a small colorized HTML snippet that contains only the lines of the specified marker and the specified
+     * number of context lines before and after the marker. The stream will be read only up to the last line of the
+     * snippet. Such a snippet is suitable for previews in tooltips or table rows, so it does not contain the info
+     * panel of the marker.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param lines
+     *         the lines of the source code
+     * @param marker
+     *         the issue to show
+     * @param contextLines
+     *         the number of lines to show before and after the marker
+     *
+     * @return the snippet as colorized HTML
+     */
+    String renderSnippet(final String fileName, final Stream<String> lines, final Marker marker,
+            final int contextLines) {
+        long start = System.nanoTime();
+        var event = new SourceRenderEvent();
+        event.begin();
+        try (LookaheadStream stream = new LookaheadStream(lines)) {
+            int firstLine = getSnippetStart(marker, contextLines);
+            skipUntilLine(stream, firstLine - 1);
+            StringBuilder before = readBlockUntilLine(stream, marker.getLineStart() - 1);
+            StringBuilder marked = readBlockUntilLine(stream, marker.getLineEnd());
+            StringBuilder after = readBlockUntilLine(stream, getSnippetEnd(marker, contextLines));
 
             String language = selectLanguageClass(fileName, before);
-            boolean enableSyntaxHighlighting = shouldEnableSyntaxHighlighting(before, marked, after);
-            String code = asCode(before, getCodeClasses(language, enableSyntaxHighlighting))
-                    + asMarkedCode(marked, marker, getMarkedCodeClasses(language, enableSyntaxHighlighting))
-                    + createInfoPanel(marker)
-                    + asCode(after, getCodeClasses(language, enableSyntaxHighlighting));
+            var statistics = TextStatistics.of(before, marked, after);
+            var html = HtmlWriter.create();
+            html.startTag(PRE, "prism-snippet").attribute(DATA_START, firstLine).closeStartTag();
+            if (hasLongLines(statistics)) {
+                appendPlainCode(html, before, LONG_LINES);
+                appendPlainCode(html, marked, LONG_LINES, HIGHLIGHT);
+                appendPlainCode(html, after, LONG_LINES);
+            }
+            else {
+                appendCode(html, before, language);
+                appendMarkedCode(html, marked, marker, 1, LineDecorations.NONE, language, HIGHLIGHT);
+                appendCode(html, after, language);
+            }
+            html.endTag(PRE);
 
-            return pre().with(new UnescapedText(code)).renderFormatted();
+            int lineCount = statistics.lines();
+            int characters = before.length() + marked.length() + after.length();
+            recordMetrics(fileName, lineCount, characters, start);
+            if (event.shouldCommit()) {
+                event.fileName = fileName;
+                event.lines = lineCount;
+                event.characters = characters;
+                event.maxLineLength = statistics.maxLineLength();
+                event.highlighting = !hasLongLines(statistics);
+                event.commit();
+            }
+            return html.toHtml();
         }
     }
 
-    private boolean shouldEnableSyntaxHighlighting(
-            final StringBuilder before, final StringBuilder marked, final StringBuilder after) {
-        return countLines(before) + countLines(marked) + countLines(after) <= MAX_LINES_FOR_SYNTAX_HIGHLIGHTING;
+    /**
+     * Creates a colorized HTML snippet with the lines of the specified source code that start at the specified line.
+     * This method is used to load the remaining lines of a source code file that has been truncated by
+     * {@link #render(String, Stream, Marker)}. If the remaining lines exceed the character budget as well, then
+     * another notice that more lines are available will be appended.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param lines
+     *         the lines of the source code
+     * @param from
+     *         the first line to render
+     *
+     * @return the lines as colorized HTML
+     */
+    String renderRange(final String fileName, final Stream<String> lines, final int from) {
+        return renderRange(fileName, lines, from, LineDecorations.NONE);
     }
 
-    private int countLines(final StringBuilder text) {
-        if (text.isEmpty()) {
-            return 0;
+    /**
+     * Creates a colorized HTML snippet with the lines of the specified source code that start at the specified line.
+     * The lines are decorated with the CSS classes of the specified decorations.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param lines
+     *         the lines of the source code
+     * @param from
+     *         the first line to render
+     * @param decorations
+     *         the decorations of the lines
+     *
+     * @return the lines as colorized HTML
+     */
+    String renderRange(final String fileName, final Stream<String> lines, final int from,
+            final LineDecorations decorations) {
+        long start = System.nanoTime();
+        var event = new SourceRenderEvent();
+        event.begin();
+        try (LookaheadStream stream = new LookaheadStream(lines)) {
+            skipUntilLine(stream, from - 1);
+            StringBuilder range = readBlockUntilLine(stream, Integer.MAX_VALUE, characterBudget);
+            int nextLine = stream.hasNext() ? stream.getLine() + 1 : 0;
+
+            var statistics = TextStatistics.of(range);
+            var features = selectFeatures(statistics, range.length());
+            var html = HtmlWriter.create();
+            html.startTag(PRE).attribute(DATA_START, from).closeStartTag();
+            if (hasLongLines(statistics)) {
+                appendPlainCode(html, range, LONG_LINES);
+            }
+            else {
+                appendChunkedCode(html, range, from, from, isGutterVisible(features), decorations,
+                        getCodeClasses(selectLanguageClass(fileName, range), features, false));
+            }
+            html.endTag(PRE);
+            appendTruncationNotice(html, nextLine);
+
+            recordMetrics(fileName, statistics.lines(), range.length(), start);
+            if (event.shouldCommit()) {
+                event.fileName = fileName;
+                event.lines = statistics.lines();
+                event.characters = range.length();
+                event.maxLineLength = statistics.maxLineLength();
+                event.highlighting = features.highlighting();
+                event.commit();
+            }
+            return html.toHtml();
         }
-        return (int) text.chars().filter(c -> c == NEW_LINE).count();
     }
 
-    private String[] getCodeClasses(final String language, final boolean enableSyntaxHighlighting) {
-        if (enableSyntaxHighlighting) {
-            return new String[] {language, LINE_NUMBERS, MATCH_BRACES};
+    private void appendSkipNotice(final HtmlWriter html, final int firstLine) {
+        if (firstLine > 1) {
+            html.startTag(DIV, "prism-skipped").closeStartTag()
+                    .element(SPAN, Messages.SourcePrinter_Skipped(firstLine - 1))
+                    .endTag(DIV);
         }
-        return new String[0];
     }
 
-    private String[] getMarkedCodeClasses(final String language, final boolean enableSyntaxHighlighting) {
-        if (enableSyntaxHighlighting) {
-            return new String[] {language, LINE_NUMBERS, "highlight", MATCH_BRACES};
+    private void appendTruncationNotice(final HtmlWriter html, final int nextLine) {
+        if (nextLine > 0) {
+            html.startTag(DIV, "prism-truncated").attribute("data-next-line", nextLine).closeStartTag()
+                    .element(SPAN, Messages.SourcePrinter_Truncated(nextLine - 1))
+                    .endTag(DIV);
         }
-        return new String[] {"highlight"};
     }
 
-    private StringBuilder readBlockUntilLine(final LookaheadStream stream, final int end) {
-        StringBuilder marked = new StringBuilder();
-        while (stream.hasNext() && stream.getLine() < end) {
-            marked.append(stream.next());
-            marked.append(NEW_LINE);
+    /**
+     * Returns the first line of a snippet.
+     *
+     * @param marker
+     *         the marker of the snippet
+     * @param contextLines
+     *         the number of lines to show before and after the marker
+     *
+     * @return the first line
+     */
+    static int getSnippetStart(final Marker marker, final int contextLines) {
+        return Math.max(1, marker.getLineStart() - contextLines);
+    }
+
+    /**
+     * Returns the last line of a snippet. The actual last line might be smaller if the file is shorter.
+     *
+     * @param marker
+     *         the marker of the snippet
+     * @param contextLines
+     *         the number of lines to show before and after the marker
+     *
+     * @return the last line
+     */
+    static int getSnippetEnd(final Marker marker, final int contextLines) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) marker.getLineEnd() + contextLines);
+    }
+
+    private void skipUntilLine(final LookaheadStream stream, final int end) {
+        while (stream.getLine() < end && stream.hasNext()) {
+            stream.next();
         }
-        return marked;
     }
 
-    private String createInfoPanel(final Marker marker) {
-        return createBox(marker).withClass("analysis-warning").render();
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private String render(final String fileName, final StringBuilder before, final StringBuilder marked,
+            final StringBuilder after, final Marker marker, final LineDecorations decorations, final int firstLine,
+            final int nextLine, final long start, final SourceRenderEvent event) {
+        String language = selectLanguageClass(fileName, before);
+        var statistics = TextStatistics.of(before, marked, after);
+        int lineCount = statistics.lines();
+        int characters = before.length() + marked.length() + after.length();
+        var features = selectFeatures(statistics, characters);
+        var html = HtmlWriter.create();
+        appendSkipNotice(html, firstLine);
+        if (singleBlock && features.highlighting() && !isGutterVisible(features)) {
+            renderSingleBlock(html, language, features, before, marked, after, marker, decorations, firstLine);
+        }
+        else {
+            html.startTag(PRE);
+            if (firstLine > 1) {
+                html.attribute(DATA_START, firstLine);
+            }
+            html.closeStartTag();
+            renderBlocks(html, language, features, statistics, before, marked, after, marker, decorations,
+                    firstLine);
+            html.endTag(PRE);
+        }
+        appendTruncationNotice(html, nextLine);
+
+        recordMetrics(fileName, lineCount, characters, start);
+        if (event.shouldCommit()) {
+            event.fileName = fileName;
+            event.lines = lineCount;
+            event.characters = characters;
+            event.maxLineLength = statistics.maxLineLength();
+            event.highlighting = features.highlighting();
+            event.commit();
+        }
+        return html.toHtml();
     }
 
-    private ContainerTag createBox(final Marker marker) {
-        if (StringUtils.isEmpty(marker.getDescription())) {
-            return createTitle(marker, false);
+    /**
+     * Renders the source code in separate blocks of code before, within, and after the marker. The info panel of the
+     * marker is placed between the marked block and the block after the marker.
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void renderBlocks(final HtmlWriter html, final String language, final Features features,
+            final TextStatistics statistics, final StringBuilder before, final StringBuilder marked,
+            final StringBuilder after, final Marker marker, final LineDecorations decorations, final int firstLine) {
+        if (hasLongLines(statistics)) {
+            appendPlainCode(html, before, LONG_LINES);
+            appendPlainCode(html, marked, LONG_LINES, HIGHLIGHT);
+            appendInfoPanel(html, marker);
+            appendPlainCode(html, after, LONG_LINES);
+        }
+        else if (features.highlighting()) {
+            boolean isGutterVisible = isGutterVisible(features);
+            int beforeLines = countLines(before);
+            int markedLines = countLines(marked);
+            String[] classes = getCodeClasses(language, features, false);
+            int markedStart = firstLine + beforeLines;
+            appendChunkedCode(html, before, firstLine, markedStart - 1, isGutterVisible, decorations, classes);
+            startNumberedBlock(html, markedStart, markedLines, isGutterVisible);
+            appendMarkedCode(html, marked, marker, markedStart, decorations,
+                    getCodeClasses(language, features, true));
+            endNumberedBlock(html, markedLines, isGutterVisible);
+            appendInfoPanel(html, marker);
+            int afterStart = markedStart + markedLines;
+            appendChunkedCode(html, after, afterStart, afterStart, isGutterVisible, decorations, classes);
         }
         else {
-            return createTitleAndCollapsedDescription(marker, marker.getDescription());
+            int markedStart = firstLine + countLines(before);
+            int afterStart = markedStart + countLines(marked);
+            appendCode(html, before, firstLine, decorations);
+            appendMarkedCode(html, marked, marker, markedStart, decorations,
+                    getCodeClasses(language, features, true));
+            appendInfoPanel(html, marker);
+            appendCode(html, after, afterStart, decorations);
         }
     }
 
-    private DomContent createIcon(final String name) {
-        if (name.startsWith("symbol")) {
-            String symbol = Symbol.get(new SymbolRequest.Builder()
-                    .withRaw(name)
-                    .withClasses(ICON_MD)
-                    .build());
-            return new UnescapedText(symbol);
+    /**
+     * Renders the source code in a single block of code, so Prism tokenizes the whole file at once and tokens that
+     * span several lines are not broken at the marker. The marked lines are highlighted by the line-highlight plugin
+     * of Prism using the {@code data-line} attribute. The info panel of the marker is shown as an overlay below the
+     * marked lines, it is positioned in the browser by {@code info-overlay.js}.
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void renderSingleBlock(final HtmlWriter html, final String language, final Features features,
+            final StringBuilder before, final StringBuilder marked, final StringBuilder after,
+            final Marker marker, final LineDecorations decorations, final int firstLine) {
+        int beforeLines = countLines(before);
+        int markedLines = countLines(marked);
+        int markedStart = firstLine + beforeLines;
+        var code = new StringBuilder(before.length() + marked.length() + after.length() + 32);
+        code.append(before);
+        if (marker.getLineStart() == marker.getLineEnd()) {
+            code.append(COLUMN_MARKER.markColumns(marked.toString(), marker.getColumnStart(), marker.getColumnEnd()));
+        }
+        else {
+            code.append(marked);
+        }
+        if (after.length() > 0) {
+            code.append(COLUMN_MARKER.markOverlay());
         }
-        return img().withSrc(jenkinsFacade.getImagePath(name)).withClasses(ICON_MD);
+        code.append(after);
+
+        html.startTag(PRE, SINGLE_BLOCK_CLASS);
+        if (firstLine > 1) {
+            html.attribute(DATA_START, firstLine).attribute("data-line-offset", firstLine - 1);
+        }
+        if (markedLines > 0) {
+            html.attribute("data-line", markedLines == 1 ? String.valueOf(markedStart)
+                    : markedStart + "-" + (markedStart + markedLines - 1));
+        }
+        html.closeStartTag();
+        // the line-highlight plugin of Prism requires a single code element as the direct child of the pre element
+        appendCode(html, code, firstLine, decorations, getCodeClasses(language, features, false));
+        appendInfoPanel(html, marker, beforeLines + markedLines);
+        html.endTag(PRE);
     }
 
-    private ContainerTag createTitle(final Marker marker, final boolean isCollapseVisible) {
-        return div().with(table().withClass("analysis-title").with(tr().with(
-                td().with(createIcon(marker.getIcon())),
-                td().withClass("analysis-title-column")
-                        .with(div().withClass("analysis-warning-title").with(replaceNewLine(marker.getTitle()))),
-                createCollapseButton(isCollapseVisible)
-        )));
+    /**
+     * Creates a colorized HTML snippet that shows the differences between two versions of a source code file. Only
+     * the changed lines and the specified number of context lines are shown, all other unchanged regions are
+     * collapsed. The marker refers to the line numbers of the new version.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param oldLines
+     *         the lines of the old version of the source code
+     * @param newLines
+     *         the lines of the new version of the source code
+     * @param marker
+     *         the issue to show
+     * @param contextLines
+     *         the number of unchanged lines to show before and after each change
+     *
+     * @return the differences as colorized HTML
+     */
+    String renderDiff(final String fileName, final List<String> oldLines, final List<String> newLines,
+            final Marker marker, final int contextLines) {
+        return renderDiff(fileName, oldLines, newLines, marker, contextLines, false);
     }
 
-    private ContainerTag createCollapseButton(final boolean isCollapseVisible) {
-        ContainerTag td = td();
-        if (isCollapseVisible) {
-            td.with(new UnescapedText(jenkinsFacade.getSymbol(new Builder()
-                    .withName("chevron-down-circle-outline")
-                    .withPluginName("ionicons-api")
-                    .withClasses("analysis-collapse-icon")
-                    .build())));
+    /**
+     * Creates a colorized HTML snippet that shows the differences between two versions of a source code file. The
+     * client side features of Prism are selected by the {@link RenderingTiers} for the size of the shown lines. Only
+     * the hunks within the character budget are rendered, a notice replaces the remaining hunks.
+     *
+     * @param fileName
+     *         the file name of the source code file
+     * @param oldLines
+     *         the lines of the old version of the source code
+     * @param newLines
+     *         the lines of the new version of the source code
+     * @param marker
+     *         the issue to show
+     * @param contextLines
+     *         the number of unchanged lines to show before and after each change
+     * @param isTruncated
+     *         determines whether the versions have been truncated while reading, so that only the first lines of
+     *         the files are compared
+     *
+     * @return the differences as colorized HTML
+     */
+    String renderDiff(final String fileName, final List<String> oldLines, final List<String> newLines,
+            final Marker marker, final int contextLines, final boolean isTruncated) {
+        long start = System.nanoTime();
+        var event = new SourceRenderEvent();
+        event.begin();
+
+        List<Hunk> hunks = new SourceCodeDiff(oldLines, newLines)
+                .getHunks(contextLines, marker.getLineStart(), marker.getLineEnd());
+        int lineCount = 0;
+        int shownCharacters = 0;
+        int longestLine = 0;
+        for (Hunk hunk : hunks) {
+            int oldLine = hunk.oldStart();
+            int newLine = hunk.newStart();
+            for (LineType type : hunk.lines()) {
+                int length = (type == LineType.DELETED ? oldLines.get(oldLine - 1) : newLines.get(newLine - 1))
+                        .length();
+                lineCount++;
+                shownCharacters += length;
+                longestLine = Math.max(longestLine, length);
+                oldLine += type == LineType.INSERTED ? 0 : 1;
+                newLine += type == LineType.DELETED ? 0 : 1;
+            }
         }
-        return td;
+        Features features = longestLine > maxLineLength
+                ? Features.PLAIN : tiers.select(lineCount, Math.min(shownCharacters, characterBudget));
+        String[] classes = getDiffCodeClasses(selectLanguageClass(fileName,
+                new StringBuilder(String.join("\n", newLines.subList(0, Math.min(newLines.size(), 10))))),
+                features);
+
+        var html = HtmlWriter.create();
+        html.startTag(DIV, "prism-diff").closeStartTag();
+        int characters = 0;
+        int lastNewLine = 0;
+        boolean isBudgetExceeded = false;
+        for (Hunk hunk : hunks) {
+            if (characters >= characterBudget) {
+                isBudgetExceeded = true;
+                break;
+            }
+            appendCollapsedLines(html, hunk.skippedLines());
+            html.element(DIV, String.format("@@ -%d,%d +%d,%d @@",
+                    hunk.oldStart(), hunk.getOldCount(), hunk.newStart(), hunk.getNewCount()), "diff-hunk-header");
+
+            boolean isCodeOpen = false;
+            int oldLine = hunk.oldStart();
+            int newLine = hunk.newStart();
+            html.startTag(PRE).closeStartTag();
+            for (LineType type : hunk.lines()) {
+                if (characters >= characterBudget) {
+                    isBudgetExceeded = true;
+                    break;
+                }
+                String text = type == LineType.DELETED ? oldLines.get(oldLine - 1) : newLines.get(newLine - 1);
+                characters += text.length();
+                boolean isMarked = type != LineType.DELETED
+                        && newLine >= marker.getLineStart() && newLine <= marker.getLineEnd();
+                if (!isCodeOpen) {
+                    html.startTag(CODE, classes).closeStartTag();
+                    isCodeOpen = true;
+                }
+                appendDiffLine(html, type, text, type == LineType.INSERTED ? 0 : oldLine,
+                        type == LineType.DELETED ? 0 : newLine, isMarked ? marker : null);
+                if (isMarked && newLine == marker.getLineEnd()) {
+                    html.endTag(CODE);
+                    isCodeOpen = false;
+                    appendInfoPanel(html, marker);
+                }
+                oldLine += type == LineType.INSERTED ? 0 : 1;
+                newLine += type == LineType.DELETED ? 0 : 1;
+            }
+            if (isCodeOpen) {
+                html.endTag(CODE);
+            }
+            html.endTag(PRE);
+            lastNewLine = newLine - 1;
+        }
+        if (isBudgetExceeded) {
+            html.element(DIV, Messages.SourceCodeDiff_BudgetExceeded(lastNewLine), "prism-skipped");
+        }
+        else {
+            appendCollapsedLines(html, newLines.size() - lastNewLine);
+        }
+        if (isTruncated) {
+            html.element(DIV, Messages.SourceCodeDiff_Truncated(characterBudget), "prism-skipped");
+        }
+        html.endTag(DIV);
+
+        recordMetrics(fileName, lineCount, characters, start);
+        if (event.shouldCommit()) {
+            event.fileName = fileName;
+            event.lines = lineCount;
+            event.characters = characters;
+            event.highlighting = features.highlighting();
+            event.commit();
+        }
+        return html.toHtml();
+    }
+
+    private void appendCollapsedLines(final HtmlWriter html, final int skippedLines) {
+        if (skippedLines > 0) {
+            html.element(DIV, Messages.SourceCodeDiff_Collapsed(skippedLines), "diff-collapsed");
+        }
+    }
+
+    private void appendDiffLine(final HtmlWriter html, final LineType type, final String text,
+            final int oldLine, final int newLine, @CheckForNull final Marker marker) {
+        if (marker == null) {
+            html.startTag(SPAN, "diff-line", getDiffLineClass(type));
+        }
+        else {
+            html.startTag(SPAN, "diff-line", getDiffLineClass(type), "diff-marked");
+        }
+        html.attribute("data-gutter", String.format("%5s %5s %c ", oldLine > 0 ? oldLine : StringUtils.EMPTY,
+                newLine > 0 ? newLine : StringUtils.EMPTY, getDiffLineSign(type))).closeStartTag();
+        if (marker != null && marker.getLineStart() == marker.getLineEnd()) {
+            StringBuilder marked = COLUMN_MARKER.markColumns(text, marker.getColumnStart(), marker.getColumnEnd());
+            COLUMN_MARKER.appendEscaped(html, marked, 0, marked.length());
+        }
+        else {
+            html.text(text);
+        }
+        html.raw(NEW_LINE).endTag(SPAN);
+    }
+
+    private String getDiffLineClass(final LineType type) {
+        return switch (type) {
+            case DELETED -> "diff-deleted";
+            case INSERTED -> "diff-inserted";
+            case UNCHANGED -> "diff-unchanged";
+        };
+    }
+
+    private char getDiffLineSign(final LineType type) {
+        return switch (type) {
+            case DELETED -> '-';
+            case INSERTED -> '+';
+            case UNCHANGED -> ' ';
+        };
+    }
+
+    private String[] getDiffCodeClasses(final String language, final Features features) {
+        if (!features.highlighting()) {
+            return new String[0];
+        }
+        if (features.matchBraces()) {
+            return new String[] {language, MATCH_BRACES};
+        }
+        return new String[] {language};
+    }
+
+    private void recordMetrics(final String fileName, final int lineCount, final int characters,
+            final long startNanos) {
+        long duration = METRICS.stop(PrismMetrics.RENDER, startNanos);
+        METRICS.increment(PrismMetrics.RENDER_LINES, lineCount);
+        METRICS.increment(PrismMetrics.RENDER_CHARACTERS, characters);
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(duration);
+        if (millis >= slowRenderThreshold) {
+            LOGGER.log(Level.WARNING, String.format(
+                    "Rendering of source code file '%s' (%d lines, %d characters) took %d ms",
+                    fileName, lineCount, characters, millis));
+        }
+    }
+
+    private boolean hasLongLines(final TextStatistics statistics) {
+        return statistics.maxLineLength() > maxLineLength;
     }
 
-    private ContainerTag createTitleAndCollapsedDescription(final Marker marker, final String description) {
-        return div().with(
-                div().withClass("analysis-collapse-button").with(createTitle(marker, true)),
-                div().withClasses("collapse", "analysis-detail")
-                        .with(unescape(description))
-                        .withId("analysis-description"));
+    private Features selectFeatures(final TextStatistics statistics, final int characters) {
+        if (hasLongLines(statistics)) {
+            return Features.PLAIN;
+        }
+        return tiers.select(statistics.lines(), characters);
     }
 
-    private UnescapedText replaceNewLine(final String message) {
-        return unescape(message.replace("\n", "<br>"));
+    private boolean isGutterVisible(final Features features) {
+        return features.highlighting() && !features.clientLineNumbers();
     }
 
-    private UnescapedText unescape(final String message) {
-        return new UnescapedText(SANITIZER.render(message));
+    private String[] getCodeClasses(final String language, final Features features, final boolean isMarked) {
+        if (!features.highlighting()) {
+            return isMarked ? new String[] {HIGHLIGHT} : new String[0];
+        }
+        List<String> classes = new ArrayList<>(4);
+        classes.add(language);
+        if (features.clientLineNumbers()) {
+            classes.add(LINE_NUMBERS);
+        }
+        if (isMarked) {
+            classes.add(HIGHLIGHT);
+        }
+        if (features.matchBraces()) {
+            classes.add(MATCH_BRACES);
+        }
+        return classes.toArray(new String[0]);
+    }
+
+    /**
+     * Starts a block that shows the line numbers of the following code element in a gutter. The gutter is rendered
+     * on the server, so the browser does not need to measure the height of each line. Empty code elements get no
+     * gutter.
+     *
+     * @param html
+     *         the HTML writer
+     * @param firstLine
+     *         the line number of the first line of the code element
+     * @param lines
+     *         the number of lines of the code element
+     * @param isGutterVisible
+     *         determines whether the gutter should be rendered at all
+     */
+    private void startNumberedBlock(final HtmlWriter html, final int firstLine, final int lines,
+            final boolean isGutterVisible) {
+        if (isGutterVisible && lines > 0) {
+            html.startTag(SPAN, NUMBERED).closeStartTag()
+                    .startTag(SPAN, GUTTER).attribute("aria-hidden", "true").closeStartTag();
+            for (int line = firstLine; line < firstLine + lines; line++) {
+                html.raw(line).raw(NEW_LINE);
+            }
+            html.endTag(SPAN);
+        }
+    }
+
+    private void endNumberedBlock(final HtmlWriter html, final int lines, final boolean isGutterVisible) {
+        if (isGutterVisible && lines > 0) {
+            html.endTag(SPAN);
+        }
+    }
+
+    private StringBuilder readBlockUntilLine(final LookaheadStream stream, final int end) {
+        return readBlockUntilLine(stream, end, Integer.MAX_VALUE);
+    }
+
+    private StringBuilder readBlockUntilLine(final LookaheadStream stream, final int end, final int budget) {
+        StringBuilder marked = new StringBuilder();
+        while (stream.getLine() < end && marked.length() < budget && stream.hasNext()) {
+            checkInterrupted();
+            marked.append(stream.next());
+            marked.append(NEW_LINE);
+        }
+        return marked;
+    }
+
+    /**
+     * Appends the info panel of the marker: a title with an icon and an optional description that can be expanded by
+     * clicking on the title.
+     */
+    private void appendInfoPanel(final HtmlWriter html, final Marker marker) {
+        html.startTag(DIV, "analysis-warning").closeStartTag();
+        appendInfoPanelContent(html, marker);
+    }
+
+    /**
+     * Appends the info panel of the marker as an overlay that will be positioned below the specified line.
+     */
+    private void appendInfoPanel(final HtmlWriter html, final Marker marker, final int line) {
+        html.startTag(DIV, "analysis-warning", "analysis-overlay").attribute("data-line-end", line).closeStartTag();
+        appendInfoPanelContent(html, marker);
+    }
+
+    private void appendInfoPanelContent(final HtmlWriter html, final Marker marker) {
+        if (StringUtils.isEmpty(marker.getDescription())) {
+            appendTitle(html, marker, false);
+        }
+        else {
+            html.startTag(DIV, "analysis-collapse-button").closeStartTag()
+                    .startTag(DIV).closeStartTag();
+            appendTitle(html, marker, true);
+            html.endTag(DIV).endTag(DIV)
+                    .startTag(DIV, "collapse", "analysis-detail").attribute("id", "analysis-description")
+                    .closeStartTag()
+                    .raw(SANITIZER.render(marker.getDescription()))
+                    .endTag(DIV);
+        }
+        html.endTag(DIV);
+    }
+
+    private void appendTitle(final HtmlWriter html, final Marker marker, final boolean isCollapseVisible) {
+        html.startTag(TABLE, "analysis-title").closeStartTag().startTag(TR).closeStartTag()
+                .startTag(TD).closeStartTag();
+        appendIcon(html, marker.getIcon());
+        html.endTag(TD)
+                .startTag(TD, "analysis-title-column").closeStartTag()
+                .startTag(DIV, "analysis-warning-title").closeStartTag()
+                .raw(SANITIZER.render(marker.getTitle().replace("\n", "<br>")))
+                .endTag(DIV)
+                .endTag(TD)
+                .startTag(TD).closeStartTag();
+        if (isCollapseVisible) {
+            html.raw(symbolCache.get(COLLAPSE_ICON, IONICONS_PLUGIN, COLLAPSE_ICON_CLASS,
+                    () -> jenkinsFacade.getSymbol(new Builder()
+                            .withName(COLLAPSE_ICON)
+                            .withPluginName(IONICONS_PLUGIN)
+                            .withClasses(COLLAPSE_ICON_CLASS)
+                            .build())));
+        }
+        html.endTag(TD).endTag(TR).endTag(TABLE);
+    }
+
+    private void appendIcon(final HtmlWriter html, final String name) {
+        if (name.startsWith("symbol")) {
+            html.raw(symbolCache.get(name, StringUtils.EMPTY, ICON_MD,
+                    () -> Symbol.get(new SymbolRequest.Builder()
+                            .withRaw(name)
+                            .withClasses(ICON_MD)
+                            .build())));
+        }
+        else {
+            html.startTag("img").attribute("src", jenkinsFacade.getImagePath(name))
+                    .attribute("class", ICON_MD).closeStartTag();
+        }
     }
 
     @SuppressWarnings({"javancss", "PMD.CyclomaticComplexity"})
@@ -217,7 +1070,9 @@ class SourcePrinter {
         };
     }
 
-    private String asMarkedCode(final StringBuilder text, final Marker marker, final String... classes) {
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void appendMarkedCode(final HtmlWriter html, final StringBuilder text, final Marker marker,
+            final int firstLine, final LineDecorations decorations, final String... classes) {
         StringBuilder marked;
         if (marker.getLineStart() == marker.getLineEnd()) {
             marked = COLUMN_MARKER.markColumns(text.toString(), marker.getColumnStart(), marker.getColumnEnd());
@@ -226,22 +1081,391 @@ class SourcePrinter {
             marked = text;
         }
 
-        String sanitized = SANITIZER.render(StringEscapeUtils.escapeHtml4(marked.toString()));
-        String markerReplaced = COLUMN_MARKER.replacePlaceHolderWithHtmlTag(sanitized);
-        return code().withClasses(classes).with(new UnescapedText(markerReplaced)).render();
+        html.startTag(CODE, classes).closeStartTag();
+        appendEscaped(html, marked, firstLine, decorations);
+        html.endTag(CODE);
+    }
+
+    /**
+     * Appends the specified text without syntax highlighting. Lines that are longer than {@link #maxLineLength} are
+     * truncated, the remaining characters are hidden in an expandable element.
+     */
+    private void appendPlainCode(final HtmlWriter html, final StringBuilder text, final String... classes) {
+        html.startTag(CODE, classes).closeStartTag();
+        int lineStart = 0;
+        for (int position = 0; position < text.length(); position++) {
+            if (text.charAt(position) == NEW_LINE) {
+                appendTruncatedLine(html, text, lineStart, position);
+                html.raw(NEW_LINE);
+                lineStart = position + 1;
+            }
+        }
+        html.endTag(CODE);
+    }
+
+    private void appendTruncatedLine(final HtmlWriter html, final StringBuilder text, final int start,
+            final int end) {
+        if (end - start <= maxLineLength) {
+            html.text(text, start, end);
+        }
+        else {
+            int truncated = start + maxLineLength;
+            html.text(text, start, truncated)
+                    .startTag("details", "prism-long-line").closeStartTag()
+                    .element("summary", Messages.SourcePrinter_LongLine(end - truncated))
+                    .text(text, truncated, end)
+                    .endTag("details");
+        }
+    }
+
+    private void appendCode(final HtmlWriter html, final StringBuilder text, final String... classes) {
+        appendCode(html, text, 1, LineDecorations.NONE, classes);
     }
 
-    private String asCode(final StringBuilder text, final String... classes) {
-        return code().withClasses(classes).with(unescape(StringEscapeUtils.escapeHtml4(text.toString()))).render();
+    private void appendCode(final HtmlWriter html, final StringBuilder text, final int firstLine,
+            final LineDecorations decorations, final String... classes) {
+        html.startTag(CODE, classes).closeStartTag();
+        appendEscaped(html, text, firstLine, decorations);
+        html.endTag(CODE);
+    }
+
+    /**
+     * Appends the specified source code. The code is escaped while writing, only the placeholders of the
+     * {@link ColumnMarker} are replaced with the markup of the marked columns.
+     */
+    private void appendEscaped(final HtmlWriter html, final CharSequence text, final int firstLine,
+            final LineDecorations decorations) {
+        if (decorations.isEmpty()) {
+            COLUMN_MARKER.appendEscaped(html, text, 0, text.length());
+        }
+        else {
+            appendDecorated(html, text, firstLine, decorations);
+        }
+    }
+
+    /**
+     * Appends the specified source code and wraps subsequent lines with the same decoration into a single element with
+     * the CSS class of the decoration. The placeholders of the {@link ColumnMarker} never span several lines, so the
+     * marked columns are not split by a decoration.
+     */
+    private void appendDecorated(final HtmlWriter html, final CharSequence text, final int firstLine,
+            final LineDecorations decorations) {
+        int line = firstLine;
+        String decoration = decorations.getCssClass(line);
+        int runStart = 0;
+        for (int position = 0; position < text.length(); position++) {
+            if (text.charAt(position) == NEW_LINE) {
+                line++;
+                String next = decorations.getCssClass(line);
+                if (!StringUtils.equals(decoration, next)) {
+                    appendDecoratedRun(html, text, runStart, position + 1, decoration);
+                    runStart = position + 1;
+                    decoration = next;
+                }
+            }
+        }
+        appendDecoratedRun(html, text, runStart, text.length(), decoration);
+    }
+
+    private void appendDecoratedRun(final HtmlWriter html, final CharSequence text, final int start, final int end,
+            @CheckForNull final String decoration) {
+        if (start >= end) {
+            return;
+        }
+        if (decoration == null) {
+            COLUMN_MARKER.appendEscaped(html, text, start, end);
+        }
+        else {
+            html.startTag(SPAN, DECORATION, decoration).closeStartTag();
+            COLUMN_MARKER.appendEscaped(html, text, start, end);
+            html.endTag(SPAN);
+        }
+    }
+
+    /**
+     * Appends the specified text in chunks of {@link #CHUNK_LINES} lines so that the browser can highlight the chunks
+     * in separate short tasks. Only the chunk that contains the eager line is highlighted immediately, the remaining
+     * chunks are deferred: they get the classes of Prism in a data attribute only, so Prism does not highlight them
+     * when the page is loaded. Each chunk contains its first line number, so the line numbers are correct even if the
+     * chunks are highlighted out of order. A chunk that would end within a multi-line token is extended by up to
+     * {@link #CHUNK_LINES} lines until the token has been closed.
+     *
+     * @param html
+     *         the HTML writer
+     * @param text
+     *         the text to append
+     * @param firstLine
+     *         the line number of the first line of the text
+     * @param eagerLine
+     *         the line that should be highlighted immediately, typically the line next to the marker
+     * @param isGutterVisible
+     *         determines whether the line numbers are rendered in a gutter
+     * @param decorations
+     *         the decorations of the lines
+     * @param classes
+     *         the classes of the code elements
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void appendChunkedCode(final HtmlWriter html, final StringBuilder text, final int firstLine,
+            final int eagerLine, final boolean isGutterVisible, final LineDecorations decorations,
+            final String... classes) {
+        int lineCount = countLines(text);
+        if (lineCount <= CHUNK_LINES) {
+            startNumberedBlock(html, firstLine, lineCount, isGutterVisible);
+            appendCode(html, text, firstLine, decorations, classes);
+            endNumberedBlock(html, lineCount, isGutterVisible);
+            return;
+        }
+
+        int eager = Math.max(firstLine, Math.min(firstLine + lineCount - 1, eagerLine));
+        var scanner = new MultiLineTokenScanner();
+        int chunkStart = 0;
+        int chunkLine = firstLine;
+        int lines = 0;
+        int lineStart = 0;
+        for (int position = 0; position < text.length(); position++) {
+            if (text.charAt(position) == NEW_LINE) {
+                scanner.scanLine(text, lineStart, position);
+                lineStart = position + 1;
+                lines++;
+                if (lines >= CHUNK_LINES && (!scanner.isWithinToken() || lines >= 2 * CHUNK_LINES)) {
+                    appendChunk(html, text.subSequence(chunkStart, position + 1), chunkLine, lines,
+                            eager >= chunkLine && eager < chunkLine + lines, isGutterVisible, decorations, classes);
+                    chunkStart = position + 1;
+                    chunkLine += lines;
+                    lines = 0;
+                }
+            }
+        }
+        if (chunkStart < text.length()) {
+            appendChunk(html, text.subSequence(chunkStart, text.length()), chunkLine, lines,
+                    eager >= chunkLine, isGutterVisible, decorations, classes);
+        }
+    }
+
+    private int countLines(final StringBuilder text) {
+        int lines = 0;
+        for (int position = 0; position < text.length(); position++) {
+            if (text.charAt(position) == NEW_LINE) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    private void appendChunk(final HtmlWriter html, final CharSequence text, final int firstLine, final int lines,
+            final boolean isEager, final boolean isGutterVisible, final LineDecorations decorations,
+            final String... classes) {
+        checkInterrupted();
+        startNumberedBlock(html, firstLine, lines, isGutterVisible);
+        if (isEager) {
+            String[] chunkClasses = Arrays.copyOf(classes, classes.length + 1);
+            chunkClasses[classes.length] = CHUNK;
+            html.startTag(CODE, chunkClasses);
+        }
+        else {
+            html.startTag(CODE, CHUNK, DEFERRED).attribute("data-classes", String.join(" ", classes));
+        }
+        html.attribute(DATA_START, firstLine).attribute("data-lines", lines).closeStartTag();
+        appendEscaped(html, text, firstLine, decorations);
+        html.endTag(CODE);
+        endNumberedBlock(html, lines, isGutterVisible);
+    }
+
+    /**
+     * Statistics of the rendered text that are computed in a single pass over all characters.
+     *
+     * @param lines
+     *         the number of lines
+     * @param maxLineLength
+     *         the length of the longest line
+     */
+    private record TextStatistics(int lines, int maxLineLength) {
+        static TextStatistics of(final StringBuilder... blocks) {
+            int lines = 0;
+            int maxLineLength = 0;
+            for (StringBuilder block : blocks) {
+                int lineStart = 0;
+                for (int position = 0; position < block.length(); position++) {
+                    if (block.charAt(position) == NEW_LINE) {
+                        lines++;
+                        maxLineLength = Math.max(maxLineLength, position - lineStart);
+                        lineStart = position + 1;
+                    }
+                }
+            }
+            return new TextStatistics(lines, maxLineLength);
+        }
+    }
+
+    /**
+     * Determines whether a line of source code ends within a token that spans several lines: a block comment
+     * ({@code /}{@code * ... *}{@code /}) or a text block ({@code """ ... """} or {@code ''' ... '''}). The
+     * scanner does not know the grammar of the actual language: it skips string literals and line comments in the
+     * style of C so that delimiters within these tokens are ignored. Other kinds of tokens (e.g., heredocs) are not
+     * detected, so chunks might still be split within such a token.
+     */
+    private static final class MultiLineTokenScanner {
+        private static final String BLOCK_COMMENT_START = "/*";
+        private static final String BLOCK_COMMENT_END = "*/";
+        private static final String LINE_COMMENT = "//";
+        private static final String[] TEXT_BLOCKS = {"\"\"\"", "'''"};
+
+        @CheckForNull
+        private String closingDelimiter;
+
+        boolean isWithinToken() {
+            return closingDelimiter != null;
+        }
+
+        void scanLine(final CharSequence text, final int start, final int end) {
+            int position = start;
+            while (position < end) {
+                if (closingDelimiter != null) {
+                    int closing = indexOf(text, closingDelimiter, position, end);
+                    if (closing < 0) {
+                        return;
+                    }
+                    position = closing + closingDelimiter.length();
+                    closingDelimiter = null;
+                }
+                else if (startsWith(text, LINE_COMMENT, position, end)) {
+                    return;
+                }
+                else if (startsWith(text, BLOCK_COMMENT_START, position, end)) {
+                    closingDelimiter = BLOCK_COMMENT_END;
+                    position += BLOCK_COMMENT_START.length();
+                }
+                else {
+                    position = skipLiteral(text, position, end);
+                }
+            }
+        }
+
+        private int skipLiteral(final CharSequence text, final int start, final int end) {
+            for (String textBlock : TEXT_BLOCKS) {
+                if (startsWith(text, textBlock, start, end)) {
+                    closingDelimiter = textBlock;
+                    return start + textBlock.length();
+                }
+            }
+            char quote = text.charAt(start);
+            if (quote != '"' && quote != '\'') {
+                return start + 1;
+            }
+            for (int position = start + 1; position < end; position++) {
+                char c = text.charAt(position);
+                if (c == '\\') {
+                    position++;
+                }
+                else if (c == quote) {
+                    return position + 1;
+                }
+            }
+            return end;
+        }
+
+        private static boolean startsWith(final CharSequence text, final String prefix, final int start,
+                final int end) {
+            if (end - start < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (text.charAt(start + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int indexOf(final CharSequence text, final String delimiter, final int start, final int end) {
+            for (int position = start; position <= end - delimiter.length(); position++) {
+                if (startsWith(text, delimiter, position, end)) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Iterates over the lines of a source code file that has been read into memory already. Line terminators are
+     * normalized to {@code \n}. If the content is not complete, then the last line is incomplete if it has no line
+     * terminator, so this line will be skipped.
+     */
+    private static final class ContentCursor {
+        private final CharSequence content;
+        private final int end;
+        private int position;
+        private int line;
+
+        ContentCursor(final CharSequence content, final boolean isComplete) {
+            this.content = content;
+            this.end = isComplete ? content.length() : getEndOfLastLine(content);
+        }
+
+        private static int getEndOfLastLine(final CharSequence content) {
+            for (int position = content.length() - 1; position >= 0; position--) {
+                char c = content.charAt(position);
+                if (c == NEW_LINE || c == '\r') {
+                    return position + 1;
+                }
+            }
+            return 0;
+        }
+
+        boolean hasNext() {
+            return position < end;
+        }
+
+        int getLine() {
+            return line;
+        }
+
+        StringBuilder readBlockUntilLine(final int last, final int budget) {
+            StringBuilder block = new StringBuilder();
+            while (line < last && block.length() < budget && hasNext()) {
+                next(block);
+            }
+            return block;
+        }
+
+        void skipUntilLine(final int last) {
+            while (line < last && hasNext()) {
+                next(null);
+            }
+        }
+
+        private void next(@CheckForNull final StringBuilder block) {
+            int lineStart = position;
+            while (position < end && content.charAt(position) != NEW_LINE && content.charAt(position) != '\r') {
+                position++;
+            }
+            if (block != null) {
+                block.append(content, lineStart, position).append(NEW_LINE);
+            }
+            if (position < end && content.charAt(position) == '\r') {
+                position++;
+                if (position < end && content.charAt(position) == NEW_LINE) {
+                    position++;
+                }
+            }
+            else if (position < end) {
+                position++;
+            }
+            line++;
+        }
     }
 
     /**
      * Encloses columns between {@code start} and {@code end} with an HTML tag (see {@code openingTag} and
-     * {@code closingTag}).
+     * {@code closingTag}). Additionally, marks the position of the overlay of the info panel.
      */
     static final class ColumnMarker {
         private static final String OPENING_TAG = "<span class='code-mark'>";
         private static final String CLOSING_TAG = "</span>";
+        private static final String OVERLAY_TAG = "<span class='analysis-overlay-spacer'></span>";
 
         /**
          * Creates a {@link ColumnMarker} that will use {@code placeHolderText} for enclosing.
@@ -254,10 +1478,22 @@ class SourcePrinter {
         ColumnMarker(final String placeHolderText) {
             openingTagPlaceHolder = "OpEn" + placeHolderText;
             closingTagPlaceHolder = "ClOsE" + placeHolderText;
+            overlayPlaceHolder = "OvErLaY" + placeHolderText;
         }
 
         private final String openingTagPlaceHolder;
         private final String closingTagPlaceHolder;
+        private final String overlayPlaceHolder;
+
+        /**
+         * Returns a placeholder that will be replaced with an empty spacer element. The spacer reserves the space of
+         * the info panel that is shown as an overlay in a single block of code.
+         *
+         * @return the placeholder of the spacer
+         */
+        String markOverlay() {
+            return overlayPlaceHolder;
+        }
 
         /**
          * Encloses columns between start and end with the HTML tag {@code openingTag} {@code closingTag}. This will
@@ -296,17 +1532,67 @@ class SourcePrinter {
         }
 
         /**
-         * Encloses columns between start and end with the HTML tag {@code openingTag} {@code closingTag}. This will
-         * make prism highlight the enclosed part of the line.
+         * Writes the specified range of the source code. Special HTML characters are escaped while writing, the
+         * placeholders are replaced with the HTML tag {@code openingTag} {@code closingTag}. This will make prism
+         * highlight the enclosed part of the line.
          *
+         * @param html
+         *         the HTML writer
          * @param text
-         *         the source code line
-         *
-         * @return String containing the text with the added html tag
+         *         the source code that might contain placeholders
+         * @param start
+         *         the index of the first character to write
+         * @param end
+         *         the index after the last character to write
          */
-        String replacePlaceHolderWithHtmlTag(final String text) {
-            return text.replaceAll(openingTagPlaceHolder, OPENING_TAG)
-                    .replaceAll(closingTagPlaceHolder, CLOSING_TAG);
+        void appendEscaped(final HtmlWriter html, final CharSequence text, final int start, final int end) {
+            int position = start;
+            while (position < end) {
+                int opening = indexOf(text, openingTagPlaceHolder, position, end);
+                int overlay = indexOf(text, overlayPlaceHolder, position, end);
+                if (overlay >= 0 && (opening < 0 || overlay < opening)) {
+                    html.text(text, position, overlay).raw(OVERLAY_TAG);
+                    position = overlay + overlayPlaceHolder.length();
+                    continue;
+                }
+                if (opening < 0) {
+                    break;
+                }
+                int closing = indexOf(text, closingTagPlaceHolder, opening, end);
+                if (closing < 0) {
+                    break;
+                }
+                html.text(text, position, opening)
+                        .raw(OPENING_TAG)
+                        .text(text, opening + openingTagPlaceHolder.length(), closing)
+                        .raw(CLOSING_TAG);
+                position = closing + closingTagPlaceHolder.length();
+            }
+            html.text(text, position, end);
+        }
+
+        /**
+         * Returns the index of the placeholder in the specified range of the text. In contrast to
+         * {@link StringUtils#indexOf(CharSequence, CharSequence, int)}, the search does not continue after the end of
+         * the range, so writing a large file in many ranges does not scan the remaining text again for each range.
+         */
+        private static int indexOf(final CharSequence text, final String placeHolder, final int from, final int end) {
+            int last = end - placeHolder.length();
+            for (int index = from; index <= last; index++) {
+                if (matches(text, placeHolder, index)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean matches(final CharSequence text, final String placeHolder, final int index) {
+            for (int offset = 0; offset < placeHolder.length(); offset++) {
+                if (text.charAt(index + offset) != placeHolder.charAt(offset)) {
+                    return false;
+                }
+            }
+            return true;
         }
     }
 }
@@ -0,0 +1,131 @@
+package io.jenkins.plugins.prism;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import hudson.ExtensionList;
+import hudson.ExtensionListListener;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Descriptor;
+
+/**
+ * Caches the SVG markup of Jenkins symbols that are shown in source code views, e.g., the icon of a marker or the
+ * button to expand the description of a marker. Loading a symbol requires reading and processing an SVG resource of a
+ * plugin, so pages with many info panels would otherwise pay this cost for each panel. The cache is bounded: the least
+ * recently used symbols are evicted if the cache is full.
+ *
+ * <p>
+ * Symbols that are not found are not cached, so the symbols of a plugin that is installed later on will be loaded as
+ * soon as the plugin is available. Since an installed plugin can be updated only by restarting Jenkins, the cached
+ * markup of a symbol does not change at runtime. Nevertheless, the cache is cleared whenever a plugin is loaded
+ * dynamically, so no markup survives a change of the installed plugins.
+ * </p>
+ *
+ * @author Ullrich Hafner
+ */
+public final class SymbolCache {
+    private static final int MAX_ENTRIES = 256;
+    private static final SymbolCache INSTANCE = new SymbolCache();
+
+    /**
+     * Returns the singleton instance of the cache.
+     *
+     * @return the singleton instance
+     */
+    static SymbolCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers a listener that clears the cache whenever the extensions of Jenkins change, i.e., when a plugin has
+     * been loaded dynamically.
+     */
+    @Initializer(after = InitMilestone.EXTENSIONS_AUGMENTED)
+    public static void clearOnPluginLoad() {
+        ExtensionList.lookup(Descriptor.class).addListener(new ClearCacheListener());
+    }
+
+    private final Map<Key, String> symbols = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = -3219745628912416521L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    SymbolCache() {
+        // use singleton or create a new instance in tests
+    }
+
+    /**
+     * Returns the markup of the specified symbol. If the symbol is not yet cached, then the markup will be obtained
+     * from the specified loader.
+     *
+     * @param name
+     *         the name of the symbol
+     * @param pluginName
+     *         the name of the plugin that provides the symbol, might be empty
+     * @param classes
+     *         the CSS classes of the symbol
+     * @param loader
+     *         loads the markup of the symbol if it is not yet cached
+     *
+     * @return the markup of the symbol
+     */
+    String get(final String name, final String pluginName, final String classes, final Supplier<String> loader) {
+        var key = new Key(name, pluginName, classes);
+        synchronized (symbols) {
+            var cached = symbols.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        String symbol = Objects.toString(loader.get(), StringUtils.EMPTY);
+        if (StringUtils.isNotEmpty(symbol)) { // do not cache missing symbols
+            synchronized (symbols) {
+                symbols.put(key, symbol);
+            }
+        }
+        return symbol;
+    }
+
+    /**
+     * Returns the number of cached symbols.
+     *
+     * @return the number of cached symbols
+     */
+    int size() {
+        synchronized (symbols) {
+            return symbols.size();
+        }
+    }
+
+    /**
+     * Removes all cached symbols.
+     */
+    void clear() {
+        synchronized (symbols) {
+            symbols.clear();
+        }
+    }
+
+    private record Key(String name, String pluginName, String classes) {
+    }
+
+    /**
+     * Clears the cache if the list of descriptors changes. This list is refreshed whenever a plugin is loaded
+     * dynamically, see {@link hudson.PluginManager#dynamicLoad(java.io.File)}.
+     */
+    private static class ClearCacheListener extends ExtensionListListener {
+        @Override
+        public void onChange() {
+            INSTANCE.clear();
+        }
+    }
+}
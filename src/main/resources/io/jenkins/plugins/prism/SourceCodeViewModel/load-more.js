@@ -0,0 +1,51 @@
+/* global Prism */
+/**
+ * Adds a "load more" button to the notice of a truncated source code file. The button fetches the next range of
+ * lines from the server and replaces the notice with the returned lines (and optionally another notice).
+ */
+(function () {
+  const container = document.getElementById('prism-source-code');
+  if (!container || !container.dataset.rangeUrl) {
+    return;
+  }
+
+  function addLoadMoreButton(notice) {
+    const button = document.createElement('button');
+    button.type = 'button';
+    button.className = 'jenkins-button prism-load-more';
+    button.textContent = container.dataset.loadMore;
+    button.addEventListener('click', function () {
+      button.disabled = true;
+      fetch(container.dataset.rangeUrl + '?from=' + encodeURIComponent(notice.dataset.nextLine))
+        .then(function (response) {
+          if (!response.ok) {
+            throw new Error(response.statusText);
+          }
+          return response.text();
+        })
+        .then(function (html) {
+          const fragment = document.createElement('div');
+          fragment.innerHTML = html;
+          const elements = Array.from(fragment.children);
+          notice.replaceWith.apply(notice, elements);
+          elements.forEach(function (element) {
+            if (element.classList.contains('prism-truncated')) {
+              addLoadMoreButton(element);
+            }
+            else {
+              if (typeof Prism !== 'undefined') {
+                Prism.highlightAllUnder(element);
+              }
+              element.dispatchEvent(new CustomEvent('prism:range-loaded', {bubbles: true}));
+            }
+          });
+        })
+        .catch(function () {
+          button.disabled = false;
+        });
+    });
+    notice.appendChild(button);
+  }
+
+  container.querySelectorAll('.prism-truncated').forEach(addLoadMoreButton);
+})();
@@ -0,0 +1,40 @@
+/* global Prism */
+/**
+ * Polls the server until a source code view that could not be rendered within the deadline is available. Then the
+ * placeholder is replaced with the rendered source code.
+ */
+(function () {
+  const container = document.getElementById('prism-source-code');
+  if (!container || !container.dataset.renderingUrl) {
+    return;
+  }
+
+  const pollInterval = 1000;
+
+  function showError() {
+    container.querySelector('.prism-loading').textContent = container.dataset.loadingFailed;
+  }
+
+  function poll() {
+    fetch(container.dataset.renderingUrl)
+      .then(function (response) {
+        if (response.status === 202) {
+          setTimeout(poll, pollInterval);
+          return;
+        }
+        if (!response.ok) {
+          throw new Error(response.statusText);
+        }
+        return response.text().then(function (html) {
+          container.innerHTML = html;
+          if (typeof Prism !== 'undefined') {
+            Prism.highlightAllUnder(container);
+          }
+          container.dispatchEvent(new CustomEvent('prism:loaded', {bubbles: true}));
+        });
+      })
+      .catch(showError);
+  }
+
+  setTimeout(poll, pollInterval);
+})();
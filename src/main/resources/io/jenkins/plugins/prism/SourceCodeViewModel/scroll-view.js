@@ -10,9 +10,12 @@ jQuery3.fn.scrollView = function () {
   });
 };
 jQuery3(document).ready(function () {
-  jQuery3('.highlight').scrollView();
+  jQuery3('.highlight, .analysis-overlay').scrollView();
 });
-jQuery3('.analysis-collapse-button').click(function () {
+jQuery3(document).on('prism:loaded', function () {
+  jQuery3('.highlight, .analysis-overlay').scrollView();
+});
+jQuery3(document).on('click', '.analysis-collapse-button', function () {
   jQuery3('#analysis-description').collapse('toggle');
   jQuery3('.analysis-collapse-button').toggleClass('open');
 });
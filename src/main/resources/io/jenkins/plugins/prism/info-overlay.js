@@ -0,0 +1,91 @@
+/* global Prism */
+/**
+ * Positions the info panel of a source code view that has been rendered in a single block of code: the panel is shown
+ * as an overlay below the last marked line. The space of the overlay is reserved by an empty spacer element that
+ * follows the marked lines within the code (the keep-markup plugin of Prism retains it while highlighting), so the
+ * overlay does not cover any code. If the marked lines are the last lines of the file, the space is reserved at the
+ * bottom of the block.
+ */
+(function () {
+  const defaultLineHeight = 1.5; // em, see the line-height of Prism themes
+
+  function getLineHeight(code) {
+    const style = window.getComputedStyle(code);
+    const lineHeight = parseFloat(style.lineHeight);
+    return isNaN(lineHeight) ? parseFloat(style.fontSize) * defaultLineHeight : lineHeight;
+  }
+
+  /**
+   * Moves the client side line numbers after the spacer down by the height of the spacer, since the line-numbers
+   * plugin of Prism renders one row for each line of text.
+   */
+  function reserveRow(spacer, height) {
+    const code = spacer.closest('code');
+    const rows = code ? code.querySelector('.line-numbers-rows') : null;
+    if (!rows) {
+      return;
+    }
+    const range = document.createRange();
+    range.setStart(code, 0);
+    range.setEndBefore(spacer);
+    const row = rows.children[range.toString().split('\n').length - 1];
+    if (row) {
+      row.style.marginTop = height + 'px';
+    }
+  }
+
+  function positionOverlay(overlay) {
+    const pre = overlay.parentElement;
+    const height = overlay.offsetHeight;
+    const spacer = pre.querySelector('.analysis-overlay-spacer');
+    if (spacer) {
+      spacer.style.height = height + 'px';
+      reserveRow(spacer, height);
+      overlay.style.top = (spacer.getBoundingClientRect().top - pre.getBoundingClientRect().top
+          - pre.clientTop + pre.scrollTop) + 'px';
+      return;
+    }
+    const code = pre.querySelector('code');
+    if (!code) {
+      return;
+    }
+    const line = parseInt(overlay.dataset.lineEnd, 10);
+    pre.style.paddingBottom = height + 'px';
+    overlay.style.top = (code.offsetTop + line * getLineHeight(code)) + 'px';
+  }
+
+  function observe(overlay) {
+    positionOverlay(overlay);
+    if (window.ResizeObserver && !overlay.dataset.observed) {
+      overlay.dataset.observed = 'true';
+      new ResizeObserver(function () {
+        positionOverlay(overlay);
+      }).observe(overlay);
+    }
+  }
+
+  function positionOverlays(root) {
+    root.querySelectorAll('pre.prism-single-block > .analysis-overlay').forEach(observe);
+  }
+
+  if (document.readyState === 'loading') {
+    document.addEventListener('DOMContentLoaded', function () {
+      positionOverlays(document);
+    });
+  }
+  else {
+    positionOverlays(document);
+  }
+  document.addEventListener('prism:loaded', function (event) {
+    positionOverlays(event.target);
+  });
+  if (typeof Prism !== 'undefined') {
+    // highlighting replaces the rows of the line numbers and the content of the code
+    Prism.hooks.add('complete', function (env) {
+      const pre = env.element && env.element.closest('pre.prism-single-block');
+      if (pre) {
+        pre.querySelectorAll(':scope > .analysis-overlay').forEach(positionOverlay);
+      }
+    });
+  }
+})();
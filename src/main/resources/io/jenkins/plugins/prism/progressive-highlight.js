@@ -0,0 +1,87 @@
+/* global Prism */
+/**
+ * Highlights the deferred chunks of source code views when the browser is idle. The chunks next to the marked lines
+ * are highlighted first, chunks of lines that have been loaded on demand are highlighted from top to bottom. Each
+ * chunk is highlighted in a separate task, so the page remains responsive even for large files.
+ */
+(function () {
+  const lineHeight = 1.5; // em, see the line-height of Prism themes
+
+  const schedule = window.requestIdleCallback || function (callback) {
+    return setTimeout(function () {
+      callback({
+        timeRemaining: function () {
+          return 0;
+        }
+      });
+    }, 1);
+  };
+
+  function prepareChunk(chunk) {
+    chunk.style.counterReset = 'linenumber ' + (parseInt(chunk.dataset.start, 10) - 1);
+    chunk.style.containIntrinsicSize = 'auto ' + (parseInt(chunk.dataset.lines, 10) * lineHeight) + 'em';
+  }
+
+  function highlightChunk(chunk) {
+    chunk.classList.remove('prism-deferred');
+    chunk.className += ' ' + chunk.dataset.classes;
+    if (typeof Prism !== 'undefined') {
+      Prism.highlightElement(chunk);
+    }
+  }
+
+  function getMarkerIndex(codes) {
+    const index = codes.findIndex(function (code) {
+      return code.classList.contains('highlight');
+    });
+    return index < 0 ? 0 : index;
+  }
+
+  function highlightDeferredChunks(root) {
+    root.querySelectorAll('code.prism-chunk').forEach(prepareChunk);
+
+    const queue = [];
+    const pres = root.matches && root.matches('pre') ? [root] : root.querySelectorAll('pre');
+    pres.forEach(function (pre) {
+      const codes = Array.from(pre.querySelectorAll('code.prism-chunk, code.highlight'));
+      const markerIndex = getMarkerIndex(codes);
+      codes.forEach(function (code, index) {
+        if (code.classList.contains('prism-deferred')) {
+          queue.push({chunk: code, distance: Math.abs(index - markerIndex)});
+        }
+      });
+    });
+    queue.sort(function (a, b) {
+      return a.distance - b.distance;
+    });
+
+    function work(deadline) {
+      do {
+        const next = queue.shift();
+        if (!next) {
+          return;
+        }
+        highlightChunk(next.chunk);
+      } while (deadline.timeRemaining() > 0);
+      schedule(work);
+    }
+    if (queue.length > 0) {
+      schedule(work);
+    }
+  }
+
+  if (document.readyState === 'loading') {
+    document.addEventListener('DOMContentLoaded', function () {
+      highlightDeferredChunks(document);
+    });
+  }
+  else {
+    highlightDeferredChunks(document);
+  }
+  document.addEventListener('prism:loaded', function (event) {
+    highlightDeferredChunks(event.target);
+  });
+  document.addEventListener('prism:range-loaded', function (event) {
+    highlightDeferredChunks(event.target);
+  });
+})();
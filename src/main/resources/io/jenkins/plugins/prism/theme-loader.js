@@ -0,0 +1,63 @@
+/**
+ * Adds the combined stylesheet of the selected Prism theme to the head of the page. If the browser prefers a dark color
+ * scheme and a dark mode theme has been selected, then the stylesheet of the dark mode theme is used. If the default
+ * theme is used, then the theme manager of Jenkins may choose a Prism theme that matches the Jenkins theme.
+ */
+(function () {
+  const loader = document.getElementById('prism-theme-loader');
+  if (!loader) {
+    return;
+  }
+  const rootUrl = loader.dataset.rootUrl;
+  const themeUrls = JSON.parse(loader.dataset.themeUrls || '{}');
+
+  function getThemeManagerUrl() {
+    if (loader.dataset.themeManager !== 'true' || !window.getThemeManagerProperty) {
+      return undefined;
+    }
+    const themeName = window.getThemeManagerProperty('prism-api', 'theme');
+    return themeName ? themeUrls[`prism-${themeName}.css`] : undefined;
+  }
+
+  function getStylesheets() {
+    const themeManagerUrl = getThemeManagerUrl();
+    if (themeManagerUrl) {
+      return [{ url: themeManagerUrl }];
+    }
+    if (loader.dataset.darkStylesheetUrl) {
+      return [
+        { url: loader.dataset.stylesheetUrl, media: 'not all and (prefers-color-scheme: dark)' },
+        { url: loader.dataset.darkStylesheetUrl, media: '(prefers-color-scheme: dark)' }
+      ];
+    }
+    return [{ url: loader.dataset.stylesheetUrl }];
+  }
+
+  function setTheme() {
+    const stylesheets = getStylesheets();
+    const links = Array.from(document.head.querySelectorAll('link.prism-theme'));
+    if (links.length === stylesheets.length
+        && links.every((link, index) => link.getAttribute('href') === `${rootUrl}/${stylesheets[index].url}`)) {
+      return;
+    }
+    links.forEach(link => link.remove());
+    stylesheets.forEach(stylesheet => {
+      const link = document.createElement('link');
+      link.className = 'prism-theme';
+      link.rel = 'stylesheet';
+      link.type = 'text/css';
+      link.href = `${rootUrl}/${stylesheet.url}`;
+      if (stylesheet.media) {
+        link.media = stylesheet.media;
+      }
+      document.head.appendChild(link);
+    });
+  }
+
+  setTheme();
+  // the theme manager might not be loaded yet
+  document.addEventListener('DOMContentLoaded', setTheme);
+  if (window.getThemeManagerProperty && window.isSystemRespectingTheme) {
+    window.matchMedia('(prefers-color-scheme: dark)').addEventListener('change', setTheme);
+  }
+})();
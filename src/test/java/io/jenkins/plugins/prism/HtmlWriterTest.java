@@ -0,0 +1,56 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests the class {@link HtmlWriter}.
+ *
+ * @author Ullrich Hafner
+ */
+class HtmlWriterTest {
+    @Test
+    void shouldWriteCompactMarkup() {
+        var html = HtmlWriter.create();
+
+        html.startTag("pre", "first", "second").attribute("data-start", 5).closeStartTag()
+                .startTag("code").closeStartTag()
+                .text("if (a < b && c > d) { \"quoted\" }")
+                .endTag("code")
+                .element("span", "<b>", "notice")
+                .raw("<br>")
+                .endTag("pre");
+
+        assertThat(html.toHtml()).isEqualTo("<pre class=\"first second\" data-start=\"5\"><code>"
+                + "if (a &lt; b &amp;&amp; c &gt; d) { &quot;quoted&quot; }</code>"
+                + "<span class=\"notice\">&lt;b&gt;</span><br></pre>");
+    }
+
+    @Test
+    void shouldEscapeAttributesAndRangesOfText() {
+        var html = HtmlWriter.create();
+
+        html.startTag("div").attribute("title", "\"><script>").closeStartTag()
+                .text("0123<5>789", 3, 7)
+                .endTag("div");
+
+        assertThat(html.toHtml()).isEqualTo("<div title=\"&quot;&gt;&lt;script&gt;\">3&lt;5&gt;</div>");
+    }
+
+    @Test
+    void shouldReuseBufferOnlyAfterItHasBeenReleased() {
+        var outer = HtmlWriter.create();
+        outer.raw("outer");
+
+        var nested = HtmlWriter.create();
+        nested.raw("nested");
+        assertThat(nested.toHtml()).isEqualTo("nested");
+
+        outer.raw('!');
+        assertThat(outer.toHtml()).isEqualTo("outer!");
+
+        var next = HtmlWriter.create();
+        assertThat(next.raw("next").toHtml()).isEqualTo("next");
+    }
+}
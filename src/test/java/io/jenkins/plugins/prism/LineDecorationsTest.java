@@ -0,0 +1,65 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests the class {@link LineDecorations}.
+ *
+ * @author Ullrich Hafner
+ */
+class LineDecorationsTest {
+    @Test
+    void shouldNotDecorateAnyLine() {
+        assertThat(LineDecorations.NONE.isEmpty()).isTrue();
+        assertThat(LineDecorations.NONE.getCssClass(1)).isNull();
+    }
+
+    @Test
+    void shouldSelectCssClassOfPalette() {
+        int[] indexes = {0, 1, 2, 7};
+        var decorations = LineDecorations.fromPalette(indexes, "hot", "cold");
+        indexes[1] = 2;
+
+        assertThat(decorations.isEmpty()).isFalse();
+        assertThat(decorations.getCssClass(0)).isNull();
+        assertThat(decorations.getCssClass(1)).isNull();
+        assertThat(decorations.getCssClass(2)).isEqualTo("hot");
+        assertThat(decorations.getCssClass(3)).isEqualTo("cold");
+        assertThat(decorations.getCssClass(4)).isNull();
+        assertThat(decorations.getCssClass(5)).isNull();
+    }
+
+    @Test
+    void shouldDecorateCoverage() {
+        var decorations = LineDecorations.fromHits(new int[] {-1, 0, 5}, "prism-line-missed", "prism-line-covered");
+
+        assertThat(decorations.getCssClass(1)).isNull();
+        assertThat(decorations.getCssClass(2)).isEqualTo("prism-line-missed");
+        assertThat(decorations.getCssClass(3)).isEqualTo("prism-line-covered");
+        assertThat(decorations.getCssClass(4)).isNull();
+    }
+
+    @Test
+    void shouldDecorateSetOfLines() {
+        var lines = new BitSet();
+        lines.set(2);
+        var decorations = LineDecorations.fromLines(lines, "changed");
+        lines.set(3);
+
+        assertThat(decorations.getCssClass(2)).isEqualTo("changed");
+        assertThat(decorations.getCssClass(3)).isNull();
+        assertThat(decorations.getCssClass(-1)).isNull();
+    }
+
+    @Test
+    void shouldRejectInvalidCssClasses() {
+        assertThatIllegalArgumentException().isThrownBy(
+                () -> LineDecorations.fromLines(new BitSet(), "\"><script>"));
+        assertThatIllegalArgumentException().isThrownBy(
+                () -> LineDecorations.fromPalette(new int[0], new String[65]));
+    }
+}
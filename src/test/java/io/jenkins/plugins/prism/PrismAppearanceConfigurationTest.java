@@ -3,6 +3,7 @@ package io.jenkins.plugins.prism;
 import org.junit.jupiter.api.Test;
 
 import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
 
 import io.jenkins.plugins.util.GlobalConfigurationFacade;
 import io.jenkins.plugins.util.JenkinsFacade;
@@ -27,6 +28,42 @@ class PrismAppearanceConfigurationTest {
         assertThat(configuration.doFillThemeItems()).extracting(o -> o.value).contains(PrismTheme.PRISM.name());
     }
 
+    @Test
+    void shouldProvideStylesheetsForLightAndDarkMode() {
+        PrismAppearanceConfiguration configuration = createConfiguration();
+
+        assertThat(configuration.getDarkTheme()).isEmpty();
+        assertThat(configuration.getDarkStylesheetUrl()).isEmpty();
+        assertThat(configuration.getStylesheetUrl()).startsWith("prism-css/").endsWith("/PRISM.css");
+        assertThat(configuration.isThemeManagerEnabled()).isTrue();
+
+        configuration.setDarkTheme(PrismTheme.TOMORROW_NIGHT.name());
+        assertThat(configuration.getDarkTheme()).isEqualTo(PrismTheme.TOMORROW_NIGHT.name());
+        assertThat(configuration.getDarkStylesheetUrl()).endsWith("/TOMORROW_NIGHT.css");
+        assertThat(configuration.isThemeManagerEnabled()).isFalse();
+
+        configuration.setDarkTheme("UNKNOWN");
+        assertThat(configuration.getDarkTheme()).isEmpty();
+
+        assertThat(configuration.doFillDarkThemeItems()).extracting(o -> o.value)
+                .contains("", PrismTheme.TWILIGHT.name());
+    }
+
+    @Test
+    void shouldProvideStylesheetsOfAllThemesForThemeManager() {
+        PrismAppearanceConfiguration configuration = createConfiguration();
+
+        var urls = JSONObject.fromObject(configuration.getThemeStylesheetUrls());
+
+        assertThat(urls.keySet()).hasSize(PrismTheme.values().length).contains("default.css", "prism-tomorrow.css");
+        assertThat(urls.getString("prism-tomorrow.css")).startsWith("prism-css/").endsWith("/TOMORROW_NIGHT.css");
+        assertThat(urls.getString("default.css")).isEqualTo(configuration.getStylesheetUrl());
+
+        configuration.setTheme(PrismTheme.COY);
+
+        assertThat(configuration.isThemeManagerEnabled()).isFalse();
+    }
+
     private PrismAppearanceConfiguration createConfiguration() {
         JenkinsFacade jenkins = mock(JenkinsFacade.class);
         when(jenkins.hasPermission(Jenkins.ADMINISTER)).thenReturn(true);
@@ -100,6 +100,54 @@ class PrismConfigurationTest {
         assertThat(log.getErrorMessages()).isEmpty();
     }
 
+    @Test
+    void shouldCreateRenderingTiers() {
+        PrismConfiguration configuration = createConfiguration();
+
+        assertThat(configuration.getRenderingTiers()).isEqualTo(RenderingTiers.DEFAULT);
+
+        configuration.setMatchBracesMaxLines(1);
+        configuration.setMatchBracesMaxSize(2);
+        configuration.setClientLineNumbersMaxLines(3);
+        configuration.setClientLineNumbersMaxSize(4);
+        configuration.setHighlightingMaxLines(5);
+        configuration.setHighlightingMaxSize(-1);
+
+        assertThat(configuration.getRenderingTiers()).isEqualTo(new RenderingTiers(
+                new RenderingTiers.Limit(1, 2048), new RenderingTiers.Limit(3, 4096), new RenderingTiers.Limit(5, 0)));
+    }
+
+    @Test
+    void shouldCreatePrinterWithConfiguredLimits() {
+        PrismConfiguration configuration = createConfiguration();
+
+        assertThat(configuration.getMaxLineLength()).isEqualTo(SourcePrinter.DEFAULT_MAX_LINE_LENGTH);
+        assertThat(configuration.getSlowRenderThreshold()).isEqualTo(SourcePrinter.DEFAULT_SLOW_RENDER_THRESHOLD);
+
+        configuration.setMaxLineLength(200);
+        configuration.setSlowRenderThreshold(-1);
+
+        assertThat(configuration.getMaxLineLength()).isEqualTo(200);
+        assertThat(configuration.getSlowRenderThreshold()).isZero();
+
+        var printer = configuration.createPrinter(1_000);
+        assertThat(printer.getCharacterBudget()).isEqualTo(1_000);
+        assertThat(printer.getConfigurationKey()).endsWith(",200")
+                .isNotEqualTo(new SourcePrinter(1_000, RenderingTiers.DEFAULT).getConfigurationKey());
+
+        configuration.setMaxLineLength(0);
+
+        assertThat(configuration.getMaxLineLength()).isOne();
+
+        assertThat(configuration.isSingleBlock()).isFalse();
+        String splitKey = configuration.createPrinter(1_000).getConfigurationKey();
+
+        configuration.setSingleBlock(true);
+
+        assertThat(configuration.isSingleBlock()).isTrue();
+        assertThat(configuration.createPrinter(1_000).getConfigurationKey()).isNotEqualTo(splitKey);
+    }
+
     private String getWorkspaceChild(final String expected) {
         return PATH_UTIL.createAbsolutePath(NORMALIZED, expected);
     }
@@ -0,0 +1,32 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests the class {@link PrismMetrics}.
+ *
+ * @author Ullrich Hafner
+ */
+class PrismMetricsTest {
+    @Test
+    void shouldRecordTimersAndCounters() {
+        var metrics = new PrismMetrics();
+
+        assertThat(metrics.getCount(PrismMetrics.RENDER)).isZero();
+        assertThat(metrics.getCounter(PrismMetrics.RENDER_LINES)).isZero();
+
+        metrics.stop(PrismMetrics.RENDER, System.nanoTime());
+        metrics.stop(PrismMetrics.RENDER, System.nanoTime());
+        metrics.increment(PrismMetrics.RENDER_LINES, 10);
+        metrics.increment(PrismMetrics.RENDER_LINES, 5);
+
+        assertThat(metrics.getCount(PrismMetrics.RENDER)).isEqualTo(2);
+        assertThat(metrics.getCounter(PrismMetrics.RENDER_LINES)).isEqualTo(15);
+
+        var json = metrics.toJson();
+        assertThat(json.getJSONObject("timers").getJSONObject(PrismMetrics.RENDER).getLong("count")).isEqualTo(2);
+        assertThat(json.getJSONObject("counters").getLong(PrismMetrics.RENDER_LINES)).isEqualTo(15);
+    }
+}
@@ -0,0 +1,34 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests the class {@link PrismStylesheet}.
+ *
+ * @author Ullrich Hafner
+ */
+class PrismStylesheetTest {
+    @Test
+    void shouldCombineThemeWithPluginAndCustomStylesheets() {
+        var stylesheet = PrismStylesheet.of(PrismTheme.COY);
+
+        assertThat(new String(stylesheet.getContent(), StandardCharsets.UTF_8))
+                .contains("/* plugins/line-numbers/prism-line-numbers.css */",
+                        "/* themes/prism-coy.css */",
+                        "/* custom-prism.css */")
+                .doesNotContain("prism-okaidia.css");
+        assertThat(stylesheet.getHash()).hasSize(16).matches("[0-9a-f]+");
+        assertThat(stylesheet.getUrl()).isEqualTo("prism-css/" + stylesheet.getHash() + "/COY.css");
+    }
+
+    @Test
+    void shouldCacheStylesheetOfEachTheme() {
+        assertThat(PrismStylesheet.of(PrismTheme.PRISM)).isSameAs(PrismStylesheet.of(PrismTheme.PRISM));
+        assertThat(PrismStylesheet.of(PrismTheme.PRISM).getHash())
+                .isNotEqualTo(PrismStylesheet.of(PrismTheme.TWILIGHT).getHash());
+    }
+}
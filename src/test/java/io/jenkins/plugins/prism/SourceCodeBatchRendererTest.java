@@ -0,0 +1,137 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.jenkins.plugins.prism.Marker.MarkerBuilder;
+import io.jenkins.plugins.prism.SourceCodeBatchRenderer.Result;
+import io.jenkins.plugins.prism.SourceCodeBatchRenderer.Status;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests the class {@link SourceCodeBatchRenderer}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeBatchRendererTest {
+    private static final Marker MARKER = new MarkerBuilder().withLineStart(2).build();
+
+    @Test
+    void shouldRenderAllFiles(@TempDir final Path folder) throws IOException, InterruptedException {
+        Path file = folder.resolve("File.java");
+        Files.writeString(file, "class File {\n}\n", StandardCharsets.UTF_8);
+
+        List<SourceCodeBatchRenderer.Job> jobs = new ArrayList<>();
+        jobs.add(SourceCodeBatchRenderer.of("File.java", file, StandardCharsets.UTF_8, MARKER));
+        for (int i = 0; i < 10; i++) {
+            jobs.add(SourceCodeBatchRenderer.of("Reader" + i + ".java", new StringReader("line 1\nline 2\n"), MARKER));
+        }
+
+        List<Result> results = new ArrayList<>();
+        new SourceCodeBatchRenderer(2, Duration.ofMinutes(1), SourcePrinter::new).render(jobs, results::add);
+
+        assertThat(results).hasSize(11).allSatisfy(result -> {
+            assertThat(result.status()).isEqualTo(Status.RENDERED);
+            assertThat(result.html()).contains("<pre");
+            assertThat(result.errorMessage()).isNull();
+        });
+        assertThat(results).extracting(Result::fileName).contains("File.java", "Reader0.java", "Reader9.java");
+    }
+
+    @Test
+    void shouldReportFailedAndTimedOutFiles() throws InterruptedException {
+        List<SourceCodeBatchRenderer.Job> jobs = List.of(
+                SourceCodeBatchRenderer.of("Blocked.java", new BlockingReader(), MARKER),
+                SourceCodeBatchRenderer.of("Failed.java", new FailingReader(), MARKER),
+                SourceCodeBatchRenderer.of("Rendered.java", new StringReader("line 1\nline 2\n"), MARKER));
+
+        List<Result> results = new ArrayList<>();
+        new SourceCodeBatchRenderer(3, Duration.ofMillis(200), SourcePrinter::new).render(jobs, results::add);
+
+        assertThat(results).hasSize(3);
+        assertThat(results).filteredOn(result -> "Blocked.java".equals(result.fileName()))
+                .singleElement().extracting(Result::status).isEqualTo(Status.TIMED_OUT);
+        assertThat(results).filteredOn(result -> "Failed.java".equals(result.fileName()))
+                .singleElement().satisfies(result -> {
+                    assertThat(result.status()).isEqualTo(Status.FAILED);
+                    assertThat(result.errorMessage()).contains("Cannot read file");
+                });
+        assertThat(results).filteredOn(result -> "Rendered.java".equals(result.fileName()))
+                .singleElement().extracting(Result::status).isEqualTo(Status.RENDERED);
+    }
+
+    @Test
+    void shouldInterruptReadingOfTimedOutFiles() throws InterruptedException {
+        var reader = new EndlessReader();
+        List<Result> results = new ArrayList<>();
+        new SourceCodeBatchRenderer(1, Duration.ofMillis(200), SourcePrinter::new)
+                .render(List.of(SourceCodeBatchRenderer.of("Endless.java", reader, MARKER)), results::add);
+
+        assertThat(results).singleElement().extracting(Result::status).isEqualTo(Status.TIMED_OUT);
+        assertThat(reader.closed.await(10, TimeUnit.SECONDS)).as("Reader has not been closed").isTrue();
+    }
+
+    /** Provides an endless number of lines and ignores interrupts, like the stream of a local file. */
+    private static class EndlessReader extends Reader {
+        private final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public int read(final char[] buffer, final int offset, final int length) {
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1);
+            while (System.nanoTime() < end) {
+                Thread.onSpinWait();
+            }
+            buffer[offset] = '\n';
+            return 1;
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    private static class BlockingReader extends Reader {
+        @Override
+        public int read(final char[] buffer, final int offset, final int length) throws IOException {
+            try {
+                new CountDownLatch(1).await();
+                return -1;
+            }
+            catch (InterruptedException exception) {
+                throw new InterruptedIOException("Interrupted");
+            }
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+
+    private static class FailingReader extends Reader {
+        @Override
+        public int read(final char[] buffer, final int offset, final int length) throws IOException {
+            throw new IOException("Cannot read file");
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the class {@link SourceCodeCleanupQueue}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeCleanupQueueTest {
+    private static final String DIRECTORY = "sources";
+
+    @Test
+    void shouldCoalesceRequestsForTheSameJob() {
+        List<Runnable> tasks = new ArrayList<>();
+        var queue = new SourceCodeCleanupQueue(tasks::add);
+
+        Run<?, ?> build = createRun("job");
+        List<String> executed = new ArrayList<>();
+
+        var log = new FilteredLog("Errors");
+        queue.schedule(build, DIRECTORY, l -> executed.add("first"), log);
+        queue.schedule(build, DIRECTORY, l -> executed.add("second"), log);
+        queue.schedule(createRun("other"), DIRECTORY, l -> executed.add("other"), log);
+
+        assertThat(tasks).hasSize(2);
+        assertThat(queue.getPendingRequestsCount()).isEqualTo(2);
+        assertThat(log.getInfoMessages()).contains(
+                "Scheduled cleaning of source code files in old builds",
+                "Cleaning of source code files in old builds is already scheduled");
+
+        tasks.forEach(Runnable::run);
+
+        assertThat(executed).containsExactly("second", "other");
+        assertThat(queue.getPendingRequestsCount()).isZero();
+    }
+
+    @Test
+    void shouldReportFailuresWithoutPropagatingThem() {
+        List<Runnable> tasks = new ArrayList<>();
+        var queue = new SourceCodeCleanupQueue(tasks::add);
+
+        queue.schedule(createRun("job"), DIRECTORY, l -> {
+            throw new IllegalStateException("failure");
+        }, new FilteredLog("Errors"));
+
+        assertThatNoException().isThrownBy(() -> tasks.forEach(Runnable::run));
+        assertThat(queue.getPendingRequestsCount()).isZero();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Run<?, ?> createRun(final String jobName) {
+        Job job = mock(Job.class);
+        when(job.getFullName()).thenReturn(jobName);
+        Run run = mock(Run.class);
+        when(run.getParent()).thenReturn(job);
+        when(run.getDisplayName()).thenReturn("#1");
+        return run;
+    }
+}
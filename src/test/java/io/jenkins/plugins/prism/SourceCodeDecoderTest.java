@@ -0,0 +1,131 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.IOUtils;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests the class {@link SourceCodeDecoder}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeDecoderTest {
+    private static final String UMLAUTS = "Grüße € 𝄞";
+    private static final Charset LATIN_1 = StandardCharsets.ISO_8859_1;
+
+    @TempDir
+    private Path folder;
+
+    @Test
+    void shouldReadReaderUpToLimit() throws IOException {
+        assertThat(SourceCodeDecoder.read(new StringReader(UMLAUTS), 100)).hasToString(UMLAUTS);
+        assertThat(SourceCodeDecoder.read(new StringReader("x".repeat(100_000)), 70_000)).hasSize(70_000);
+    }
+
+    @Test
+    void shouldSkipCharactersOfLongLines() {
+        String content = "first\r\n" + "x".repeat(100_000) + "\rthird\n\nlast";
+
+        assertThat(SourceCodeDecoder.lines(new StringReader(content), 10))
+                .containsExactly("first", "xxxxxxxxxx", "third", "", "last");
+        assertThat(SourceCodeDecoder.lines(new StringReader("a\nb\n"), 10)).containsExactly("a", "b");
+        assertThat(SourceCodeDecoder.lines(new StringReader(""), 10)).isEmpty();
+    }
+
+    @Test
+    void shouldDetectByteOrderMarks() throws IOException {
+        assertThat(decode(concat(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF},
+                UMLAUTS.getBytes(StandardCharsets.UTF_8)))).isEqualTo(UMLAUTS);
+        assertThat(decode(concat(new byte[] {(byte) 0xFE, (byte) 0xFF},
+                UMLAUTS.getBytes(StandardCharsets.UTF_16BE)))).isEqualTo(UMLAUTS);
+        assertThat(decode(concat(new byte[] {(byte) 0xFF, (byte) 0xFE},
+                UMLAUTS.getBytes(StandardCharsets.UTF_16LE)))).isEqualTo(UMLAUTS);
+    }
+
+    @Test
+    void shouldDetectUtf8WithoutByteOrderMark() {
+        assertThat(SourceCodeDecoder.detectCharset(UMLAUTS.getBytes(StandardCharsets.UTF_8), LATIN_1))
+                .isEqualTo(StandardCharsets.UTF_8);
+        assertThat(SourceCodeDecoder.detectCharset("plain ASCII".getBytes(StandardCharsets.UTF_8), LATIN_1))
+                .isEqualTo(LATIN_1);
+        assertThat(SourceCodeDecoder.detectCharset("Grüße".getBytes(LATIN_1), StandardCharsets.UTF_8))
+                .isEqualTo(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void shouldFallbackIfContentIsNoValidUtf8() throws IOException {
+        String latin = "Grüße aus München";
+
+        assertThat(SourceCodeDecoder.detectCharset(latin.getBytes(LATIN_1), LATIN_1)).isEqualTo(LATIN_1);
+        assertThat(decode(latin.getBytes(LATIN_1))).isEqualTo(latin);
+    }
+
+    @Test
+    void shouldRejectMalformedUtf8Sequences() {
+        assertThat(SourceCodeDecoder.containsUtf8Sequences(new byte[] {(byte) 0xC0, (byte) 0x80}, true)).isFalse();
+        assertThat(SourceCodeDecoder.containsUtf8Sequences(new byte[] {(byte) 0xED, (byte) 0xA0, (byte) 0x80}, true))
+                .isFalse();
+        assertThat(SourceCodeDecoder.containsUtf8Sequences(new byte[] {(byte) 0xC3}, true)).isFalse();
+        assertThat(SourceCodeDecoder.containsUtf8Sequences(new byte[] {(byte) 0xC3, (byte) 0xBC}, true)).isTrue();
+    }
+
+    @Test
+    void shouldDecodeLargeFilesInChunks() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int line = 0; line < 20_000; line++) {
+            content.append(line).append(": ").append(UMLAUTS).append('\n');
+        }
+        Path file = folder.resolve("large.txt");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+
+        assertThat(Files.size(file)).isGreaterThan(SourceCodeDecoder.DETECTION_PREFIX);
+        assertThat(SourceCodeDecoder.decode(file, LATIN_1).toString()).isEqualTo(content.toString());
+    }
+
+    @Test
+    void shouldStopDecodingAtCharacterLimit() throws IOException {
+        byte[] content = "0123456789".repeat(20_000).getBytes(StandardCharsets.UTF_8);
+
+        assertThat(SourceCodeDecoder.decode(new ByteArrayInputStream(content), LATIN_1, 100_005).toString())
+                .hasSize(100_005).startsWith("0123456789");
+        assertThat(SourceCodeDecoder.decode(new ByteArrayInputStream(content), LATIN_1, 5)).hasToString("01234");
+    }
+
+    @Test
+    void shouldOpenReaderWithDetectedCharset() throws IOException {
+        Path file = folder.resolve("bom.txt");
+        Files.write(file, concat(new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF},
+                UMLAUTS.getBytes(StandardCharsets.UTF_8)));
+
+        try (var reader = SourceCodeDecoder.openReader(file, LATIN_1)) {
+            assertThat(IOUtils.toString(reader)).isEqualTo(UMLAUTS);
+        }
+    }
+
+    @Test
+    void shouldDecodeEmptyContent() throws IOException {
+        assertThat(decode(new byte[0])).isEmpty();
+    }
+
+    private String decode(final byte[] bytes) throws IOException {
+        return SourceCodeDecoder.decode(new ByteArrayInputStream(bytes), LATIN_1).toString();
+    }
+
+    private byte[] concat(final byte[] first, final byte[] second) {
+        byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
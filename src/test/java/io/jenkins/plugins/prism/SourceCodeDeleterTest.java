@@ -0,0 +1,61 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests the class {@link SourceCodeDeleter}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeDeleterTest {
+    @TempDir
+    private Path buildDirectory;
+
+    @Test
+    void shouldDeleteNestedFolders() throws IOException {
+        Path sources = buildDirectory.resolve("sources");
+        for (int folder = 0; folder < 10; folder++) {
+            Path child = Files.createDirectories(sources.resolve("folder-" + folder).resolve("nested"));
+            for (int file = 0; file < 10; file++) {
+                Files.writeString(child.resolve("file-" + file + ".java"), "content");
+                Files.writeString(child.getParent().resolve("file-" + file + ".java"), "content");
+            }
+        }
+        Path sibling = Files.writeString(buildDirectory.resolve("build.xml"), "build");
+
+        Path trash = buildDirectory.resolve("trash");
+
+        new SourceCodeDeleter().delete(sources, trash);
+
+        assertThat(sources).doesNotExist();
+        assertThat(sibling).exists();
+        assertThat(trash).isEmptyDirectory();
+    }
+
+    @Test
+    void shouldSweepRemainingFoldersInTrash() throws IOException {
+        Path trash = buildDirectory.resolve("trash");
+        Path leftover = Files.createDirectories(trash.resolve("sources-1.prism-trash").resolve("nested"));
+        Files.writeString(leftover.resolve("file.java"), "content");
+        Path unrelated = Files.writeString(trash.resolve("unrelated.txt"), "content");
+
+        new SourceCodeDeleter().sweep(trash);
+
+        assertThat(trash.resolve("sources-1.prism-trash")).doesNotExist();
+        assertThat(unrelated).exists();
+    }
+
+    @Test
+    void shouldIgnoreMissingFolder() {
+        assertThatNoException().isThrownBy(() -> new SourceCodeDeleter().delete(buildDirectory.resolve("missing"),
+                buildDirectory.resolve("trash")));
+        assertThatNoException().isThrownBy(() -> new SourceCodeDeleter().sweep(buildDirectory.resolve("trash")));
+    }
+}
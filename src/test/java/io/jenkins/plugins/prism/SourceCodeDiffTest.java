@@ -0,0 +1,136 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.jenkins.plugins.prism.SourceCodeDiff.Hunk;
+import io.jenkins.plugins.prism.SourceCodeDiff.LineType;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests the class {@link SourceCodeDiff}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeDiffTest {
+    @Test
+    void shouldHandleEmptyVersions() {
+        assertThat(new SourceCodeDiff(List.of(), List.of()).getEditScript()).isEmpty();
+        assertThat(new SourceCodeDiff(List.of(), List.of("a", "b")).getEditScript())
+                .containsExactly(LineType.INSERTED, LineType.INSERTED);
+        assertThat(new SourceCodeDiff(List.of("a", "b"), List.of()).getEditScript())
+                .containsExactly(LineType.DELETED, LineType.DELETED);
+    }
+
+    @Test
+    void shouldFindMinimalEditScript() {
+        var diff = new SourceCodeDiff(List.of("a", "b", "c", "a", "b", "b", "a"),
+                List.of("c", "b", "a", "b", "a", "c"));
+
+        assertThat(diff.getDistance()).isEqualTo(5);
+        assertThatScriptIsValid(List.of("a", "b", "c", "a", "b", "b", "a"),
+                List.of("c", "b", "a", "b", "a", "c"), diff);
+    }
+
+    @Test
+    void shouldFindMinimalEditScriptForRandomInput() {
+        var random = new Random(4711);
+        for (int i = 0; i < 2_000; i++) {
+            List<String> oldVersion = createRandomLines(random);
+            List<String> newVersion = createRandomLines(random);
+
+            var diff = new SourceCodeDiff(oldVersion, newVersion);
+
+            assertThat(diff.getDistance())
+                    .as("Distance of %s and %s", oldVersion, newVersion)
+                    .isEqualTo(oldVersion.size() + newVersion.size() - 2 * computeLcs(oldVersion, newVersion));
+            assertThatScriptIsValid(oldVersion, newVersion, diff);
+        }
+    }
+
+    @Test
+    void shouldCreateHunksWithContext() {
+        List<String> oldVersion = new ArrayList<>();
+        for (int line = 1; line <= 20; line++) {
+            oldVersion.add("line " + line);
+        }
+        List<String> newVersion = new ArrayList<>(oldVersion);
+        newVersion.set(2, "changed 3");
+        newVersion.add(15, "inserted");
+
+        List<Hunk> hunks = new SourceCodeDiff(oldVersion, newVersion).getHunks(2, 0, 0);
+
+        assertThat(hunks).hasSize(2);
+        assertThat(hunks.get(0)).satisfies(hunk -> {
+            assertThat(hunk.oldStart()).isOne();
+            assertThat(hunk.newStart()).isOne();
+            assertThat(hunk.skippedLines()).isZero();
+            assertThat(hunk.getOldCount()).isEqualTo(5);
+            assertThat(hunk.getNewCount()).isEqualTo(5);
+        });
+        assertThat(hunks.get(1)).satisfies(hunk -> {
+            assertThat(hunk.oldStart()).isEqualTo(14);
+            assertThat(hunk.newStart()).isEqualTo(14);
+            assertThat(hunk.skippedLines()).isEqualTo(8);
+            assertThat(hunk.lines()).containsExactly(LineType.UNCHANGED, LineType.UNCHANGED,
+                    LineType.INSERTED, LineType.UNCHANGED, LineType.UNCHANGED);
+        });
+    }
+
+    @Test
+    void shouldAlwaysShowMarkedLines() {
+        List<String> lines = List.of("1", "2", "3", "4", "5", "6", "7", "8", "9", "10");
+
+        assertThat(new SourceCodeDiff(lines, lines).getHunks(1, 0, 0)).isEmpty();
+
+        List<Hunk> hunks = new SourceCodeDiff(lines, lines).getHunks(1, 5, 6);
+        assertThat(hunks).hasSize(1);
+        assertThat(hunks.get(0).newStart()).isEqualTo(4);
+        assertThat(hunks.get(0).getNewCount()).isEqualTo(4);
+        assertThat(hunks.get(0).skippedLines()).isEqualTo(3);
+    }
+
+    private void assertThatScriptIsValid(final List<String> oldVersion, final List<String> newVersion,
+            final SourceCodeDiff diff) {
+        int oldIndex = 0;
+        int newIndex = 0;
+        for (LineType type : diff.getEditScript()) {
+            switch (type) {
+                case UNCHANGED -> {
+                    assertThat(oldVersion.get(oldIndex)).isEqualTo(newVersion.get(newIndex));
+                    oldIndex++;
+                    newIndex++;
+                }
+                case DELETED -> oldIndex++;
+                case INSERTED -> newIndex++;
+            }
+        }
+        assertThat(oldIndex).isEqualTo(oldVersion.size());
+        assertThat(newIndex).isEqualTo(newVersion.size());
+    }
+
+    private List<String> createRandomLines(final Random random) {
+        List<String> lines = new ArrayList<>();
+        int size = random.nextInt(20);
+        for (int i = 0; i < size; i++) {
+            lines.add(String.valueOf(random.nextInt(4)));
+        }
+        return lines;
+    }
+
+    private int computeLcs(final List<String> left, final List<String> right) {
+        int[][] lengths = new int[left.size() + 1][right.size() + 1];
+        for (int i = 1; i <= left.size(); i++) {
+            for (int j = 1; j <= right.size(); j++) {
+                lengths[i][j] = left.get(i - 1).equals(right.get(j - 1))
+                        ? lengths[i - 1][j - 1] + 1
+                        : Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+            }
+        }
+        return lengths[left.size()][right.size()];
+    }
+}
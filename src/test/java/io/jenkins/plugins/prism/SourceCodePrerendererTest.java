@@ -0,0 +1,112 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+import io.jenkins.plugins.prism.Marker.MarkerBuilder;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the class {@link SourceCodePrerenderer}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodePrerendererTest {
+    private static final String FILE_NAME = "Hello.java";
+
+    @TempDir
+    private Path jobDirectory;
+
+    @Test
+    void shouldRenderFragmentsAfterBuildHasBeenFinalized() throws IOException {
+        Run<?, ?> build = createRun();
+        when(build.isBuilding()).thenReturn(true);
+
+        var store = new SourceCodeStore("sources");
+        try (var session = store.open(build)) {
+            session.add(FILE_NAME, new ByteArrayInputStream("class Hello {}".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        List<Runnable> tasks = new ArrayList<>();
+        var prerenderer = new SourceCodePrerenderer(tasks::add);
+        var marker = new MarkerBuilder().withLineStart(1).build();
+
+        prerenderer.schedule(build, store, StandardCharsets.UTF_8, FILE_NAME, marker);
+        assertThat(tasks).isEmpty();
+
+        prerenderer.onFinalized(build);
+        assertThat(tasks).hasSize(1);
+        assertThat(prerenderer.find(build, store, FILE_NAME, marker)).isEmpty();
+
+        tasks.forEach(Runnable::run);
+
+        assertThat(prerenderer.find(build, store, FILE_NAME, marker)).hasValueSatisfying(
+                html -> assertThat(html).contains("class Hello {}"));
+        assertThat(prerenderer.find(build, store, FILE_NAME, new MarkerBuilder().withLineStart(2).build()))
+                .isEmpty();
+    }
+
+    @Test
+    void shouldNotFindFragmentsOfOtherConfiguration() throws IOException {
+        Run<?, ?> build = createRun();
+        var store = createStore(build);
+
+        List<Runnable> tasks = new ArrayList<>();
+        var prerenderer = new SourceCodePrerenderer(tasks::add);
+        var marker = new MarkerBuilder().withLineStart(1).build();
+
+        prerenderer.schedule(build, store, StandardCharsets.UTF_8, FILE_NAME, marker);
+        tasks.forEach(Runnable::run);
+
+        assertThat(prerenderer.find(build, store, FILE_NAME, marker)).isPresent();
+        assertThat(new SourceCodePrerenderer(tasks::add, () -> 1_000).find(build, store, FILE_NAME, marker))
+                .isEmpty();
+    }
+
+    @Test
+    void shouldDiscardFragmentsOfDeletedBuild() throws IOException {
+        Run<?, ?> build = createRun();
+        when(build.isBuilding()).thenReturn(true);
+        var store = createStore(build);
+
+        List<Runnable> tasks = new ArrayList<>();
+        var prerenderer = new SourceCodePrerenderer(tasks::add);
+
+        prerenderer.schedule(build, store, StandardCharsets.UTF_8, FILE_NAME, new MarkerBuilder().build());
+        prerenderer.onDeleted(build);
+        prerenderer.onFinalized(build);
+
+        assertThat(tasks).isEmpty();
+    }
+
+    private SourceCodeStore createStore(final Run<?, ?> build) throws IOException {
+        var store = new SourceCodeStore("sources");
+        try (var session = store.open(build)) {
+            session.add(FILE_NAME, new ByteArrayInputStream("class Hello {}".getBytes(StandardCharsets.UTF_8)));
+        }
+        return store;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Run<?, ?> createRun() {
+        Job job = mock(Job.class);
+        when(job.getRootDir()).thenReturn(jobDirectory.toFile());
+        Run run = mock(Run.class);
+        when(run.getParent()).thenReturn(job);
+        when(run.getExternalizableId()).thenReturn("job#1");
+        when(run.getRootDir()).thenReturn(jobDirectory.resolve("builds/1").toFile());
+        return run;
+    }
+}
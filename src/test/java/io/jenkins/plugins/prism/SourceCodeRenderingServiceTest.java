@@ -0,0 +1,101 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import io.jenkins.plugins.prism.SourceCodeRenderingService.PendingState;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests the class {@link SourceCodeRenderingService}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeRenderingServiceTest {
+    private static final String HTML = "<pre>source</pre>";
+    private static final Function<Throwable, String> ERROR_VIEW
+            = exception -> "<pre>" + exception.getMessage() + "</pre>";
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicReference<String> user = new AtomicReference<>("alice");
+
+    @AfterEach
+    void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldReturnViewThatHasBeenRenderedWithinDeadline() {
+        var service = new SourceCodeRenderingService(executor, () -> 60_000, user::get);
+
+        var rendering = service.render(() -> HTML, ERROR_VIEW);
+
+        assertThat(rendering.isCompleted()).isTrue();
+        assertThat(rendering.html()).isEqualTo(HTML);
+        assertThat(rendering.id()).isNull();
+    }
+
+    @Test
+    void shouldProvideViewThatMissedDeadlineForTheSameUserOnly() throws InterruptedException {
+        var service = new SourceCodeRenderingService(executor, () -> 10, user::get);
+        var latch = new CountDownLatch(1);
+
+        var rendering = service.render(() -> {
+            latch.await();
+            return HTML;
+        }, ERROR_VIEW);
+
+        assertThat(rendering.isCompleted()).isFalse();
+        assertThat(rendering.html()).isNull();
+        String id = rendering.id();
+        assertThat(service.poll(id)).isEqualTo(PendingState.LOADING);
+        assertThat(service.take(id)).isEmpty();
+        assertThat(service.poll("unknown")).isEqualTo(PendingState.UNKNOWN);
+        assertThat(service.poll(null)).isEqualTo(PendingState.UNKNOWN);
+
+        latch.countDown();
+        while (service.poll(id) == PendingState.LOADING) {
+            Thread.sleep(10);
+        }
+
+        user.set("bob");
+        assertThat(service.poll(id)).isEqualTo(PendingState.UNKNOWN);
+        assertThat(service.take(id)).isEmpty();
+
+        user.set("alice");
+        assertThat(service.poll(id)).isEqualTo(PendingState.DONE);
+        assertThat(service.take(id)).contains(HTML);
+        assertThat(service.take(id)).isEmpty();
+    }
+
+    @Test
+    void shouldShowErrorViewIfRenderingFails() throws InterruptedException {
+        var service = new SourceCodeRenderingService(executor, () -> 60_000, user::get);
+
+        var rendering = service.render(() -> {
+            throw new IllegalArgumentException("broken");
+        }, ERROR_VIEW);
+
+        assertThat(rendering.isCompleted()).isTrue();
+        assertThat(rendering.html()).isEqualTo("<pre>broken</pre>");
+
+        var slow = new SourceCodeRenderingService(executor, () -> 10, user::get);
+        var latch = new CountDownLatch(1);
+        var pending = slow.render(() -> {
+            latch.await();
+            throw new IllegalStateException("failed later");
+        }, ERROR_VIEW);
+        latch.countDown();
+        while (slow.poll(pending.id()) == PendingState.LOADING) {
+            Thread.sleep(10);
+        }
+        assertThat(slow.take(pending.id())).contains("<pre>failed later</pre>");
+    }
+}
@@ -0,0 +1,242 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.hm.hafner.util.FilteredLog;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+import io.jenkins.plugins.prism.SourceCodeRetention.CleanupOldBuilds;
+import io.jenkins.plugins.prism.SourceCodeRetention.KeepLastBuilds;
+import io.jenkins.plugins.prism.SourceCodeRetention.KeepRecentBuilds;
+import io.jenkins.plugins.prism.SourceCodeRetention.KeepWithinQuota;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the class {@link SourceCodeRetention}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeRetentionTest {
+    private static final String DIRECTORY = "sources";
+
+    @TempDir
+    private Path jobDirectory;
+
+    @Test
+    void shouldScanOnlyBuildsThatHaveNotBeenScannedYet() throws IOException {
+        Job<?, ?> job = createJob();
+        Run<?, ?> first = createRun(job, 1, null);
+        Run<?, ?> second = createRun(job, 2, first);
+        Run<?, ?> third = createRun(job, 3, second);
+
+        var cleanup = new CleanupOldBuilds(mock(SourceCodeCleanupQueue.class));
+        var log = new FilteredLog("Errors");
+
+        cleanup.deleteSourcesOfPreviousBuilds(third, DIRECTORY, log);
+
+        assertThat(getSources(first)).doesNotExist();
+        assertThat(getSources(second)).doesNotExist();
+        assertThat(getSources(third)).exists();
+        assertThat(SourceCodeIndex.read(job, DIRECTORY).getScannedUntil()).isEqualTo(3);
+        assertThat(SourceCodeIndex.read(job, DIRECTORY).getPendingBuilds()).containsExactly(3);
+        assertThat(log.getErrorMessages()).isEmpty();
+
+        Run<?, ?> fourth = createRun(job, 4, third);
+        clearInvocations(first, second);
+
+        cleanup.deleteSourcesOfPreviousBuilds(fourth, DIRECTORY, log);
+
+        assertThat(getSources(third)).doesNotExist();
+        assertThat(getSources(fourth)).exists();
+        verifyNoInteractions(first);
+        verify(second, never()).getRootDir();
+        assertThat(SourceCodeIndex.read(job, DIRECTORY).getScannedUntil()).isEqualTo(4);
+        assertThat(SourceCodeIndex.read(job, DIRECTORY).getPendingBuilds()).containsExactly(4);
+    }
+
+    @Test
+    void shouldKeepRunningBuildsInIndex() throws IOException {
+        Job<?, ?> job = createJob();
+        Run<?, ?> first = createRun(job, 1, null);
+        Run<?, ?> second = createRun(job, 2, first);
+        when(first.isBuilding()).thenReturn(true);
+
+        var cleanup = new CleanupOldBuilds(mock(SourceCodeCleanupQueue.class));
+        cleanup.deleteSourcesOfPreviousBuilds(second, DIRECTORY, new FilteredLog("Errors"));
+
+        assertThat(getSources(first)).exists();
+        assertThat(SourceCodeIndex.read(job, DIRECTORY).getPendingBuilds()).containsExactly(1, 2);
+
+        SourceCodeIndex.remove(job, 1);
+
+        assertThat(SourceCodeIndex.read(job, DIRECTORY).getPendingBuilds()).containsExactly(2);
+    }
+
+    @Test
+    void shouldKeepLastBuilds() throws IOException {
+        Run<?, ?>[] builds = createBuilds(5);
+
+        new KeepLastBuilds(mock(SourceCodeCleanupQueue.class), () -> 3)
+                .deleteSourcesOfPreviousBuilds(builds[4], DIRECTORY, new FilteredLog("Errors"));
+
+        assertThat(builds).map(this::getSources).map(Files::exists)
+                .containsExactly(false, false, true, true, true);
+    }
+
+    @Test
+    void shouldKeepRecentBuilds() throws IOException {
+        Run<?, ?>[] builds = createBuilds(4);
+        long now = System.currentTimeMillis();
+        when(builds[0].getTimeInMillis()).thenReturn(now - TimeUnit.DAYS.toMillis(20));
+        when(builds[1].getTimeInMillis()).thenReturn(now - TimeUnit.DAYS.toMillis(10));
+        when(builds[2].getTimeInMillis()).thenReturn(now - TimeUnit.DAYS.toMillis(1));
+
+        new KeepRecentBuilds(mock(SourceCodeCleanupQueue.class), () -> 5)
+                .deleteSourcesOfPreviousBuilds(builds[3], DIRECTORY, new FilteredLog("Errors"));
+
+        assertThat(builds).map(this::getSources).map(Files::exists)
+                .containsExactly(false, false, true, true);
+    }
+
+    @Test
+    void shouldKeepBuildsWithinQuota() throws IOException {
+        Run<?, ?>[] builds = createBuilds(4);
+        for (Run<?, ?> build : builds) {
+            Files.write(getSources(build).resolve("file.txt"), new byte[400 * 1024]);
+        }
+
+        var cleanup = new KeepWithinQuota(mock(SourceCodeCleanupQueue.class), () -> 1);
+        cleanup.deleteSourcesOfPreviousBuilds(builds[3], DIRECTORY, new FilteredLog("Errors"));
+
+        assertThat(builds).map(this::getSources).map(Files::exists)
+                .containsExactly(false, false, true, true);
+
+        var index = SourceCodeIndex.read(builds[0].getParent(), DIRECTORY);
+        assertThat(index.getPendingBuilds()).containsExactly(3, 4);
+        assertThat(index.getTotalSize()).isEqualTo(800 * 1024);
+    }
+
+    @Test
+    void shouldDeleteAllBuildsAfterFirstBuildThatExceedsQuota() throws IOException {
+        Run<?, ?>[] builds = createBuilds(4);
+        Files.write(getSources(builds[0]).resolve("file.txt"), new byte[100 * 1024]);
+        Files.write(getSources(builds[1]).resolve("file.txt"), new byte[100 * 1024]);
+        Files.write(getSources(builds[2]).resolve("file.txt"), new byte[800 * 1024]);
+        Files.write(getSources(builds[3]).resolve("file.txt"), new byte[400 * 1024]);
+
+        var cleanup = new KeepWithinQuota(mock(SourceCodeCleanupQueue.class), () -> 1);
+        cleanup.deleteSourcesOfPreviousBuilds(builds[3], DIRECTORY, new FilteredLog("Errors"));
+
+        assertThat(builds).map(this::getSources).map(Files::exists)
+                .containsExactly(false, false, false, true);
+    }
+
+    @Test
+    void shouldUseRecordedSizeOfStoredFiles() throws IOException {
+        Run<?, ?>[] builds = createBuilds(3);
+        var store = new SourceCodeStore(DIRECTORY);
+        for (Run<?, ?> build : builds) {
+            try (var session = store.open(build)) {
+                var content = new byte[400 * 1024];
+                Arrays.fill(content, (byte) build.getNumber());
+                session.add("file.txt", new ByteArrayInputStream(content));
+            }
+        }
+        var recorded = SourceCodeIndex.read(builds[0].getParent(), DIRECTORY);
+        assertThat(recorded.getPendingBuilds()).containsExactly(1, 2, 3);
+        assertThat(recorded.getSize(1)).isGreaterThan(400 * 1024);
+
+        var cleanup = new KeepWithinQuota(mock(SourceCodeCleanupQueue.class), () -> 1);
+        cleanup.deleteSourcesOfPreviousBuilds(builds[2], DIRECTORY, new FilteredLog("Errors"));
+
+        assertThat(builds).map(store::hasSources).containsExactly(false, true, true);
+    }
+
+    @Test
+    void shouldCountSharedContentsOnlyOnce() throws IOException {
+        Run<?, ?>[] builds = createBuilds(4);
+        var store = new SourceCodeStore(DIRECTORY);
+        for (Run<?, ?> build : builds) {
+            try (var session = store.open(build)) {
+                session.add("file.txt", new ByteArrayInputStream(new byte[400 * 1024]));
+                session.add("other.txt", new ByteArrayInputStream(new byte[] {(byte) build.getNumber()}));
+            }
+        }
+        assertThat(SourceCodeIndex.read(builds[0].getParent(), DIRECTORY).getTotalSize())
+                .isGreaterThan(1024 * 1024);
+
+        var cleanup = new KeepWithinQuota(mock(SourceCodeCleanupQueue.class), () -> 1);
+        cleanup.deleteSourcesOfPreviousBuilds(builds[3], DIRECTORY, new FilteredLog("Errors"));
+
+        assertThat(builds).map(store::hasSources).containsExactly(true, true, true, true);
+    }
+
+    @Test
+    void shouldNotComputeUnknownSizeOfScannedBuildsAgain() throws IOException {
+        Run<?, ?>[] builds = createBuilds(3);
+        for (Run<?, ?> build : builds) {
+            Files.write(getSources(build).resolve("file.txt"), new byte[800 * 1024]);
+        }
+        var unknown = new TreeMap<Integer, Long>();
+        unknown.put(1, SourceCodeIndex.UNKNOWN_SIZE);
+        unknown.put(2, SourceCodeIndex.UNKNOWN_SIZE);
+        SourceCodeIndex.write(builds[0].getParent(), DIRECTORY, new SourceCodeIndex(2, unknown));
+
+        var cleanup = new KeepWithinQuota(mock(SourceCodeCleanupQueue.class), () -> 1);
+        cleanup.deleteSourcesOfPreviousBuilds(builds[2], DIRECTORY, new FilteredLog("Errors"));
+
+        assertThat(builds).map(this::getSources).map(Files::exists).containsExactly(true, true, true);
+        var index = SourceCodeIndex.read(builds[0].getParent(), DIRECTORY);
+        assertThat(index.getSize(1)).isEqualTo(SourceCodeIndex.UNKNOWN_SIZE);
+        assertThat(index.getSize(2)).isEqualTo(SourceCodeIndex.UNKNOWN_SIZE);
+        assertThat(index.getSize(3)).isEqualTo(800 * 1024);
+    }
+
+    private Run<?, ?>[] createBuilds(final int count) throws IOException {
+        Job<?, ?> job = createJob();
+        Run<?, ?>[] builds = new Run<?, ?>[count];
+        for (int i = 0; i < count; i++) {
+            builds[i] = createRun(job, i + 1, i == 0 ? null : builds[i - 1]);
+        }
+        return builds;
+    }
+
+    private Path getSources(final Run<?, ?> build) {
+        return build.getRootDir().toPath().resolve(DIRECTORY);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Job<?, ?> createJob() {
+        Job job = mock(Job.class);
+        when(job.getRootDir()).thenReturn(jobDirectory.toFile());
+        return job;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Run<?, ?> createRun(final Job job, final int number, final Run<?, ?> previous) throws IOException {
+        Path buildDirectory = jobDirectory.resolve("builds").resolve(String.valueOf(number));
+        Files.createDirectories(buildDirectory.resolve(DIRECTORY));
+
+        Run run = mock(Run.class);
+        when(run.getParent()).thenReturn(job);
+        when(run.getNumber()).thenReturn(number);
+        when(run.getRootDir()).thenReturn(buildDirectory.toFile());
+        when(run.getDisplayName()).thenReturn("#" + number);
+        when(run.getPreviousBuild()).thenReturn(previous);
+        when(job.getBuildByNumber(number)).thenReturn(run);
+        return run;
+    }
+}
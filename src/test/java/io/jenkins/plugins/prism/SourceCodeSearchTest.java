@@ -0,0 +1,155 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+import io.jenkins.plugins.prism.SourceCodeSearch.FileHits;
+import io.jenkins.plugins.prism.SourceCodeSearch.Hit;
+import io.jenkins.plugins.prism.SourceCodeSearchIndex.Stamp;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the classes {@link SourceCodeSearch} and {@link SourceCodeSearchIndex}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeSearchTest {
+    private static final String DIRECTORY = "sources";
+    private static final String HELLO = "src/Hello.java";
+    private static final String COPY = "src/copy/Hello.java";
+    private static final String WORLD = "src/World.java";
+
+    @TempDir
+    private Path jobDirectory;
+
+    @Test
+    void shouldFindCandidatesByTrigrams(@TempDir final Path folder) throws IOException {
+        var files = new TreeMap<String, Path>();
+        files.put("a.txt", write(folder, "a.txt", "Hello World"));
+        files.put("b.txt", write(folder, "b.txt", "hello\nworld"));
+        files.put("c.txt", write(folder, "c.txt", "nothing"));
+
+        var index = SourceCodeSearchIndex.create(files, StandardCharsets.UTF_8, new Stamp(0, 0));
+
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.findCandidates("hello")).containsExactly(0, 1);
+        assertThat(index.findCandidates("WORLD")).containsExactly(0, 1);
+        assertThat(index.findCandidates("lo wo")).containsExactly(0);
+        assertThat(index.findCandidates("lo\nwo")).isEmpty();
+        assertThat(index.findCandidates("missing")).isEmpty();
+        assertThat(index.findCandidates("he")).isEmpty();
+    }
+
+    @Test
+    void shouldSkipTrigramsThatSpanLines() {
+        assertThat(SourceCodeSearchIndex.extractTrigrams("abab")).hasSize(2);
+        assertThat(SourceCodeSearchIndex.extractTrigrams("ab\ncd")).isEmpty();
+        assertThat(SourceCodeSearchIndex.extractTrigrams("ab")).isEmpty();
+    }
+
+    @Test
+    void shouldFindLinesOfStoredFiles() throws IOException {
+        var build = createRun(1);
+        var store = new SourceCodeStore(DIRECTORY);
+        try (var session = store.open(build)) {
+            add(session, HELLO, "class Hello {\n    String greeting = \"Hello\";\n}\n");
+            add(session, COPY, "class Hello {\n    String greeting = \"Hello\";\n}\n");
+            add(session, WORLD, "class World {\n    String hello;\n}\n");
+        }
+
+        var search = new SourceCodeSearch(build, store, StandardCharsets.UTF_8, true);
+
+        var hits = List.of(new Hit(1, 7, "class Hello {"), new Hit(2, 24, "String greeting = \"Hello\";"));
+        assertThat(search.search("Hello", false).files()).containsExactly(
+                new FileHits(HELLO, hits), new FileHits(COPY, hits));
+        assertThat(search.search("Hello", true).files()).extracting(FileHits::fileName)
+                .containsExactly(HELLO, WORLD, COPY);
+        assertThat(search.search("World", false).files()).singleElement()
+                .extracting(FileHits::fileName).isEqualTo(WORLD);
+        assertThat(store.getManifest(build).resolveSibling(SourceCodeSearchIndex.FILE_NAME)).exists();
+
+        try (var session = store.open(build)) {
+            add(session, WORLD, "class World {\n}\n");
+        }
+        assertThat(store.getManifest(build).resolveSibling(SourceCodeSearchIndex.FILE_NAME)).doesNotExist();
+        assertThat(search.search("Hello", true).files()).extracting(FileHits::fileName)
+                .containsExactly(HELLO, COPY);
+
+        store.release(build);
+        assertThat(store.getManifest(build).resolveSibling(SourceCodeSearchIndex.FILE_NAME)).doesNotExist();
+    }
+
+    @Test
+    void shouldCreateIndexOfBuildOnlyOnceForConcurrentSearches() throws Exception {
+        var build = createRun(1);
+        var other = createRun(2);
+        var store = new SourceCodeStore(DIRECTORY);
+        for (Run<?, ?> run : List.of(build, other)) {
+            try (var session = store.open(run)) {
+                add(session, HELLO, "class Hello {\n}\n");
+            }
+        }
+
+        var executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SourceCodeSearchIndex>> indexes = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                var run = i % 2 == 0 ? build : other;
+                indexes.add(executor.submit(() -> SourceCodeSearchIndex.get(run, store, StandardCharsets.UTF_8)));
+            }
+
+            assertThat(indexes.get(2).get()).isSameAs(indexes.get(0).get())
+                    .isSameAs(SourceCodeSearchIndex.get(build, store, StandardCharsets.UTF_8));
+            assertThat(indexes.get(3).get()).isSameAs(indexes.get(1).get())
+                    .isNotSameAs(indexes.get(0).get());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldMarkHit() {
+        var marker = SourceCodeSearch.createMarker(2, 24, 5);
+
+        assertThat(marker.getLineStart()).isEqualTo(2);
+        assertThat(marker.getLineEnd()).isEqualTo(2);
+        assertThat(marker.getColumnStart()).isEqualTo(24);
+        assertThat(marker.getColumnEnd()).isEqualTo(28);
+    }
+
+    private Path write(final Path folder, final String fileName, final String content) throws IOException {
+        return Files.writeString(folder.resolve(fileName), content, StandardCharsets.UTF_8);
+    }
+
+    private void add(final SourceCodeStore.Session session, final String fileName, final String content)
+            throws IOException {
+        session.add(fileName, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Run<?, ?> createRun(final int number) {
+        Job job = mock(Job.class);
+        when(job.getRootDir()).thenReturn(jobDirectory.toFile());
+        Run run = mock(Run.class);
+        when(run.getParent()).thenReturn(job);
+        when(run.getRootDir()).thenReturn(jobDirectory.resolve("builds").resolve(String.valueOf(number)).toFile());
+        return run;
+    }
+}
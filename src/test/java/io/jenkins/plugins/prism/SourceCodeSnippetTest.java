@@ -0,0 +1,80 @@
+package io.jenkins.plugins.prism;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+import io.jenkins.plugins.prism.Marker.MarkerBuilder;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests the class {@link SourceCodeSnippet}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeSnippetTest {
+    private static final String FILE_NAME = "Snippet.java";
+
+    @Test
+    void shouldCreateSnippetAroundMarker() {
+        var marker = new MarkerBuilder().withLineStart(5).withLineEnd(6).build();
+
+        var snippet = SourceCodeSnippet.create(FILE_NAME, new StringReader(createLines(20)), marker, 2, true);
+
+        assertThat(snippet.isVisible()).isTrue();
+        var document = Jsoup.parse(snippet.getHtml());
+        assertThat(document.getElementsByTag("pre").attr("data-start")).isEqualTo("3");
+        assertThat(document.getElementsByTag("code").text())
+                .isEqualToIgnoringWhitespace("line 3 line 4 line 5 line 6 line 7 line 8");
+        assertThat(document.getElementsByClass("highlight").text()).isEqualToIgnoringWhitespace("line 5 line 6");
+
+        var json = snippet.toJson();
+        assertThat(json.getString("fileName")).isEqualTo(FILE_NAME);
+        assertThat(json.getInt("lineStart")).isEqualTo(3);
+        assertThat(json.getInt("lineEnd")).isEqualTo(8);
+        assertThat(json.getString("html")).isEqualTo(snippet.getHtml());
+    }
+
+    @Test
+    void shouldLimitSnippetToStartOfFile() {
+        var marker = new MarkerBuilder().withLineStart(1).build();
+
+        var snippet = SourceCodeSnippet.create(FILE_NAME, new StringReader(createLines(20)), marker, 3, true);
+
+        assertThat(snippet.toJson().getInt("lineStart")).isEqualTo(1);
+        assertThat(Jsoup.parse(snippet.getHtml()).getElementsByTag("code").text())
+                .isEqualToIgnoringWhitespace("line 1 line 2 line 3 line 4");
+    }
+
+    @Test
+    void shouldSkipCharactersOfHugeLines() {
+        var marker = new MarkerBuilder().withLineStart(2).build();
+        String minified = "x".repeat(1024 * 1024) + "\nmarked\nlast\n";
+
+        var snippet = SourceCodeSnippet.create(FILE_NAME, new StringReader(minified), marker, 1, true);
+
+        var document = Jsoup.parse(snippet.getHtml());
+        assertThat(document.getElementsByClass("highlight").text()).isEqualTo("marked");
+        assertThat(snippet.getHtml().length()).isLessThan(128 * 1024);
+    }
+
+    @Test
+    void shouldHideSnippetWithoutPermission() {
+        var marker = new MarkerBuilder().withLineStart(5).build();
+
+        var snippet = SourceCodeSnippet.create(FILE_NAME, new StringReader(createLines(20)), marker, 2, false);
+
+        assertThat(snippet.isVisible()).isFalse();
+        assertThat(snippet.getHtml()).isEmpty();
+    }
+
+    private String createLines(final int count) {
+        StringBuilder lines = new StringBuilder();
+        for (int line = 1; line <= count; line++) {
+            lines.append("line ").append(line).append('\n');
+        }
+        return lines.toString();
+    }
+}
@@ -0,0 +1,169 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the class {@link SourceCodeStore}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeStoreTest {
+    private static final String DIRECTORY = "sources";
+    private static final String FILE_NAME = "src/main/java/Hello.java";
+    private static final String CONTENT = "class Hello {}";
+
+    @TempDir
+    private Path jobDirectory;
+
+    @Test
+    void shouldStoreIdenticalContentOnlyOnce() throws IOException {
+        var job = createJob();
+        var first = createRun(job, 1);
+        var second = createRun(job, 2);
+
+        var store = new SourceCodeStore(DIRECTORY);
+        assertThat(store.hasSources(first)).isFalse();
+
+        store(store, first, CONTENT);
+        store(store, second, CONTENT);
+
+        assertThat(store.hasSources(first)).isTrue();
+        assertThat(store.find(first, FILE_NAME)).isPresent().isEqualTo(store.find(second, FILE_NAME));
+        assertThat(read(store, second)).isEqualTo(CONTENT);
+        assertThat(store.find(first, "other.java")).isEmpty();
+        assertThatExceptionOfType(NoSuchFileException.class)
+                .isThrownBy(() -> store.openReader(first, "other.java", StandardCharsets.UTF_8));
+
+        var blob = store.find(first, FILE_NAME).orElseThrow();
+
+        store.release(first);
+
+        assertThat(store.hasSources(first)).isFalse();
+        assertThat(blob).exists();
+        assertThat(read(store, second)).isEqualTo(CONTENT);
+
+        SourceCodeStore.releaseAll(second);
+
+        assertThat(store.hasSources(second)).isFalse();
+        assertThat(blob).doesNotExist();
+    }
+
+    @Test
+    void shouldReleaseContentsOfDirectoriesWithSpecialCharacters() throws IOException {
+        var job = createJob();
+        var build = createRun(job, 1);
+        var nested = new SourceCodeStore("src/main");
+        var spaces = new SourceCodeStore("my sources");
+        var sanitized = new SourceCodeStore("src_main");
+        store(nested, build, CONTENT);
+        store(spaces, build, "class Spaces {}");
+        store(sanitized, build, "class Sanitized {}");
+
+        var blobs = List.of(nested.find(build, FILE_NAME).orElseThrow(), spaces.find(build, FILE_NAME).orElseThrow(),
+                sanitized.find(build, FILE_NAME).orElseThrow());
+        assertThat(blobs.get(2).getParent().getParent()).isEqualTo(blobs.get(0).getParent().getParent());
+
+        SourceCodeStore.releaseAll(build);
+
+        assertThat(nested.hasSources(build)).isFalse();
+        assertThat(spaces.hasSources(build)).isFalse();
+        assertThat(sanitized.hasSources(build)).isFalse();
+        assertThat(blobs).allSatisfy(blob -> assertThat(blob).doesNotExist());
+    }
+
+    @Test
+    void shouldKeepDistinctContents() throws IOException {
+        var job = createJob();
+        var first = createRun(job, 1);
+        var second = createRun(job, 2);
+
+        var store = new SourceCodeStore(DIRECTORY);
+        store(store, first, CONTENT);
+        store(store, second, "class Hello { int i; }");
+
+        assertThat(store.find(first, FILE_NAME)).isNotEqualTo(store.find(second, FILE_NAME));
+
+        store.release(first);
+
+        assertThat(read(store, second)).isEqualTo("class Hello { int i; }");
+    }
+
+    @Test
+    void shouldStoreFileNamesWithLineBreaksAndTabs() throws IOException {
+        var build = createRun(createJob(), 1);
+        var store = new SourceCodeStore(DIRECTORY);
+        String fileName = "src\\main\tjava\nHello\r.java";
+        try (var session = store.open(build)) {
+            session.add(fileName, new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        assertThat(store.findAll(build)).containsOnlyKeys(fileName);
+        assertThat(SourceCodeStore.unescape(SourceCodeStore.escape(fileName))).isEqualTo(fileName);
+    }
+
+    @Test
+    void shouldDeleteReplacedContentOfSession() throws IOException {
+        var build = createRun(createJob(), 1);
+        var store = new SourceCodeStore(DIRECTORY);
+        try (var session = store.open(build)) {
+            session.add(FILE_NAME, new ByteArrayInputStream("first".getBytes(StandardCharsets.UTF_8)));
+            assertThat(store.getManifest(build)).doesNotExist();
+            session.add(FILE_NAME, new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        assertThat(read(store, build)).isEqualTo(CONTENT);
+        var blob = store.find(build, FILE_NAME).orElseThrow();
+        try (var files = Files.walk(blob.getParent().getParent())) {
+            assertThat(files.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().endsWith(".txt"))).containsExactly(blob);
+        }
+
+        store.release(build);
+        assertThat(blob).doesNotExist();
+    }
+
+    private void store(final SourceCodeStore store, final Run<?, ?> build, final String content) throws IOException {
+        try (var session = store.open(build)) {
+            session.add(FILE_NAME, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        }
+    }
+
+    private String read(final SourceCodeStore store, final Run<?, ?> build) throws IOException {
+        try (Reader reader = store.openReader(build, FILE_NAME, StandardCharsets.UTF_8)) {
+            return IOUtils.toString(reader);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private Job createJob() {
+        Job job = mock(Job.class);
+        when(job.getRootDir()).thenReturn(jobDirectory.toFile());
+        return job;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Run<?, ?> createRun(final Job job, final int number) {
+        Run run = mock(Run.class);
+        when(run.getParent()).thenReturn(job);
+        when(run.getRootDir()).thenReturn(jobDirectory.resolve("builds").resolve(String.valueOf(number)).toFile());
+        return run;
+    }
+}
@@ -0,0 +1,134 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import hudson.model.Job;
+import hudson.model.Run;
+
+import io.jenkins.plugins.prism.Marker.MarkerBuilder;
+import io.jenkins.plugins.prism.SourceCodeRenderingService.PendingState;
+import io.jenkins.plugins.util.GlobalConfigurationFacade;
+import io.jenkins.plugins.util.JenkinsFacade;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the class {@link SourceCodeViewModel}.
+ *
+ * @author Ullrich Hafner
+ */
+class SourceCodeViewModelTest {
+    @Test
+    void shouldEvaluatePermissionOncePerJob() {
+        Job<?, ?> permitted = mock(Job.class);
+        Job<?, ?> denied = mock(Job.class);
+
+        JenkinsFacade jenkins = mock(JenkinsFacade.class);
+        when(jenkins.hasPermission(Job.WORKSPACE, permitted)).thenReturn(true);
+        when(jenkins.hasPermission(Job.WORKSPACE, denied)).thenReturn(false);
+
+        Run<?, ?> first = createRun(permitted);
+        Run<?, ?> second = createRun(permitted);
+        Run<?, ?> third = createRun(denied);
+
+        var decisions = SourceCodeViewModel.hasPermissionToViewSourceCode(
+                List.of(first, second, third), jenkins, createConfiguration(true));
+
+        assertThat(decisions).containsExactly(entry(first, true), entry(second, true), entry(third, false));
+        verify(jenkins).hasPermission(Job.WORKSPACE, permitted);
+        verify(jenkins).hasPermission(Job.WORKSPACE, denied);
+    }
+
+    @Test
+    void shouldSkipPermissionCheckIfSourceCodeIsNotProtected() {
+        Job<?, ?> job = mock(Job.class);
+        JenkinsFacade jenkins = mock(JenkinsFacade.class);
+
+        Run<?, ?> run = createRun(job);
+
+        var decisions = SourceCodeViewModel.hasPermissionToViewSourceCode(
+                List.of(run), jenkins, createConfiguration(false));
+
+        assertThat(decisions).containsExactly(entry(run, true));
+        verifyNoInteractions(jenkins);
+    }
+
+    @Test
+    void shouldReadSourceCodeInRenderingTask() throws InterruptedException {
+        var executor = Executors.newSingleThreadExecutor();
+        try {
+            var service = new SourceCodeRenderingService(executor, () -> 100, () -> "user");
+            var reader = new BlockingReader("first\nsecond\n");
+
+            long start = System.nanoTime();
+            var rendering = SourceCodeViewModel.renderInBackground(service, SourcePrinter::new, "file.txt",
+                    () -> reader, reader, new MarkerBuilder().withLineStart(2).build());
+
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(10_000);
+            assertThat(rendering.isCompleted()).isFalse();
+            assertThat(service.poll(rendering.id())).isEqualTo(PendingState.LOADING);
+            assertThat(reader.closed.getCount()).isOne();
+
+            reader.readable.countDown();
+
+            assertThat(reader.closed.await(10, TimeUnit.SECONDS)).isTrue();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(service.take(rendering.id())).hasValueSatisfying(
+                    html -> assertThat(html).contains("first").contains("second"));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Run<?, ?> createRun(final Job<?, ?> parent) {
+        Run run = mock(Run.class);
+        when(run.getParent()).thenReturn(parent);
+        return run;
+    }
+
+    private PrismConfiguration createConfiguration(final boolean protectSourceCode) {
+        PrismConfiguration configuration = new PrismConfiguration(mock(GlobalConfigurationFacade.class));
+        configuration.setProtectSourceCodeByPermission(protectSourceCode);
+        return configuration;
+    }
+
+    /** A reader that blocks until the content is readable, like the stream of a file on a busy agent. */
+    private static class BlockingReader extends Reader {
+        private final CountDownLatch readable = new CountDownLatch(1);
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final Reader content;
+
+        BlockingReader(final String content) {
+            this.content = new StringReader(content);
+        }
+
+        @Override
+        public int read(final char[] buffer, final int offset, final int length) throws IOException {
+            try {
+                readable.await();
+                return content.read(buffer, offset, length);
+            }
+            catch (InterruptedException exception) {
+                throw new InterruptedIOException("Interrupted");
+            }
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+}
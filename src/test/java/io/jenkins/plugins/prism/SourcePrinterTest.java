@@ -2,6 +2,8 @@ package io.jenkins.plugins.prism;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
 import org.jsoup.select.Elements;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -9,8 +11,15 @@ import org.junit.jupiter.api.Test;
 import edu.hm.hafner.util.ResourceTest;
 
 import io.jenkins.plugins.prism.Marker.MarkerBuilder;
+import io.jenkins.plugins.prism.RenderingTiers.Limit;
 import io.jenkins.plugins.util.JenkinsFacade;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.*;
@@ -269,11 +278,11 @@ class SourcePrinterTest extends ResourceTest {
     @Test
     @org.junitpioneer.jupiter.Issue("JENKINS-73298")
     void shouldSkipSyntaxHighlightingForLargeFiles() {
-        Marker issue = new MarkerBuilder().withLineStart(2_500).build();
+        Marker issue = new MarkerBuilder().withLineStart(10_000).build();
         SourcePrinter printer = new SourcePrinter();
 
         Document document = Jsoup.parse(printer.render("sample.xml",
-                Stream.generate(() -> "line").limit(5_001), issue));
+                Stream.generate(() -> "line").limit(20_001), issue));
 
         assertThat(document.getElementsByTag("code").first())
                 .isNotNull();
@@ -286,16 +295,497 @@ class SourcePrinterTest extends ResourceTest {
     @Test
     @org.junitpioneer.jupiter.Issue("JENKINS-73298")
     void shouldKeepSyntaxHighlightingForFilesWithinLimit() {
-        Marker issue = new MarkerBuilder().withLineStart(2_500).build();
+        Marker issue = new MarkerBuilder().withLineStart(10_000).build();
         SourcePrinter printer = new SourcePrinter();
 
         Document document = Jsoup.parse(printer.render("sample.xml",
-                Stream.generate(() -> "line").limit(5_000), issue));
+                Stream.generate(() -> "line").limit(20_000), issue));
 
-        assertThat(document.getElementsByTag("code").first())
+        assertThat(document.select("code.highlight").first())
                 .isNotNull();
-        assertThat(document.getElementsByTag("code").first().classNames())
-                .contains("language-markup", "line-numbers", "match-braces");
+        assertThat(document.select("code.highlight").first().classNames())
+                .contains("language-markup")
+                .doesNotContain("line-numbers", "match-braces");
+        assertThat(document.getElementsByClass("prism-gutter")).isNotEmpty();
+    }
+
+    @Test
+    void shouldDisableExpensiveFeaturesFirst() {
+        var tiers = new RenderingTiers(Limit.of(10, 100), Limit.of(20, 100), Limit.of(30, 100));
+
+        assertThat(renderMarkedCode(tiers, 10).classNames())
+                .containsExactly("language-java", "line-numbers", "highlight", "match-braces");
+        assertThat(renderMarkedCode(tiers, 11).classNames())
+                .containsExactly("language-java", "line-numbers", "highlight");
+        assertThat(renderMarkedCode(tiers, 21).classNames())
+                .containsExactly("language-java", "highlight");
+        assertThat(renderMarkedCode(tiers, 31).classNames())
+                .containsExactly("highlight");
+
+        var smallSize = new RenderingTiers(Limit.of(10, 100), Limit.of(20, 100), new Limit(30, 40));
+        assertThat(renderMarkedCode(smallSize, 10).classNames())
+                .containsExactly("highlight");
+    }
+
+    private Element renderMarkedCode(final RenderingTiers tiers, final int lines) {
+        var printer = new SourcePrinter(createJenkinsFacade(), new SymbolCache(), Integer.MAX_VALUE, tiers);
+        Marker issue = new MarkerBuilder().withLineStart(2).build();
+
+        return Jsoup.parse(printer.render("sample.java", Stream.generate(() -> "line").limit(lines), issue))
+                .select("code.highlight").first();
+    }
+
+    @Test
+    void shouldRenderLineNumbersOnServer() {
+        Marker issue = new MarkerBuilder().withLineStart(3).withLineEnd(4).build();
+        var tiers = new RenderingTiers(Limit.of(100, 100), Limit.of(0, 0), Limit.of(100, 100));
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade(), new SymbolCache(), Integer.MAX_VALUE, tiers);
+
+        Document document = Jsoup.parse(printer.render("sample.java",
+                Stream.of("line 1", "line 2", "line 3", "line 4", "line 5"), issue));
+
+        assertThat(document.getElementsByClass("line-numbers")).isEmpty();
+        assertThat(document.select(".prism-numbered > .prism-gutter")).extracting(Element::wholeText)
+                .containsExactly("1\n2\n", "3\n4\n", "5\n");
+        assertThat(document.select(".prism-numbered > code")).extracting(Element::wholeText)
+                .containsExactly("line 1\nline 2\n", "line 3\nline 4\n", "line 5\n");
+        assertThat(document.select(".prism-numbered > code").get(1).classNames())
+                .containsExactly("language-java", "highlight", "match-braces");
+    }
+
+    @Test
+    void shouldRenderGutterNextToEachChunk() {
+        Marker issue = new MarkerBuilder().withLineStart(600).build();
+        var tiers = new RenderingTiers(Limit.of(0, 0), Limit.of(0, 0), Limit.of(10_000, 10_000));
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade(), new SymbolCache(), Integer.MAX_VALUE, tiers);
+
+        Document document = Jsoup.parse(printer.render("sample.java",
+                Stream.generate(() -> "line").limit(1_200), issue));
+
+        Elements blocks = document.select("pre > span.prism-numbered");
+        assertThat(blocks).hasSize(5).hasSameSizeAs(document.getElementsByTag("code"));
+        for (Element block : blocks) {
+            assertThat(block.children()).hasSize(2);
+            Element gutter = block.child(0);
+            Element code = block.child(1);
+            assertThat(gutter.tagName()).isEqualTo("span");
+            assertThat(gutter.classNames()).containsExactly("prism-gutter");
+            assertThat(gutter.attr("aria-hidden")).isEqualTo("true");
+            assertThat(code.tagName()).isEqualTo("code");
+
+            String[] numbers = gutter.wholeText().split("\n");
+            assertThat(numbers).hasSameSizeAs(code.wholeText().split("\n"));
+            if (code.hasAttr("data-start")) {
+                assertThat(numbers[0]).isEqualTo(code.attr("data-start"));
+            }
+        }
+        assertThat(blocks).extracting(block -> block.child(0).wholeText().split("\n")[0])
+                .containsExactly("1", "501", "600", "601", "1101");
+    }
+
+    @Test
+    void shouldRenderMarkedLinesInSingleBlock() {
+        Marker issue = new MarkerBuilder().withLineStart(2).withLineEnd(3).withTitle(MESSAGE).build();
+        var printer = new SourcePrinter(createJenkinsFacade(), new SymbolCache(), Integer.MAX_VALUE,
+                RenderingTiers.DEFAULT, true);
+
+        Document document = Jsoup.parse(printer.render("sample.java",
+                Stream.of("/* line 1", "line 2", "line 3 */", "line 4"), issue));
+
+        Element pre = document.getElementsByTag("pre").first();
+        assertThat(pre).isNotNull();
+        assertThat(pre.attr("data-line")).isEqualTo("2-3");
+        assertThat(pre.getElementsByTag("code")).singleElement().satisfies(code -> {
+            assertThat(code.classNames()).containsExactly("language-java", "line-numbers", "match-braces");
+            assertThat(code.wholeText()).isEqualTo("/* line 1\nline 2\nline 3 */\nline 4\n");
+        });
+        assertThat(pre.getElementsByClass("analysis-overlay")).singleElement().satisfies(overlay -> {
+            assertThat(overlay.attr("data-line-end")).isEqualTo("3");
+            assertThat(overlay.getElementsByClass("analysis-warning-title").text()).isEqualTo(MESSAGE);
+        });
+        assertThat(pre.getElementsByClass("analysis-overlay-spacer")).singleElement().satisfies(spacer -> {
+            assertThat(spacer.parent()).isEqualTo(pre.getElementsByTag("code").first());
+            assertThat(spacer.previousSibling()).isInstanceOfSatisfying(TextNode.class,
+                    text -> assertThat(text.getWholeText()).isEqualTo("/* line 1\nline 2\nline 3 */\n"));
+            assertThat(spacer.childNodes()).isEmpty();
+        });
+        assertThat(document.getElementsByClass("highlight")).isEmpty();
+    }
+
+    @Test
+    void shouldNotRenderSingleBlockWithServerSideLineNumbers() {
+        Marker issue = new MarkerBuilder().withLineStart(2).withLineEnd(3).withTitle(MESSAGE).build();
+        var tiers = new RenderingTiers(Limit.of(1, 100), Limit.of(1, 100), Limit.of(100, 100));
+        var printer = new SourcePrinter(createJenkinsFacade(), new SymbolCache(), Integer.MAX_VALUE, tiers, true);
+
+        Document document = Jsoup.parse(printer.render("sample.java",
+                Stream.of("/* line 1", "line 2", "line 3 */", "line 4"), issue));
+
+        assertThat(document.getElementsByClass("prism-single-block")).isEmpty();
+        assertThat(document.getElementsByClass("analysis-overlay-spacer")).isEmpty();
+        assertThat(document.getElementsByClass("prism-gutter")).isNotEmpty();
+        assertThat(document.getElementsByClass("highlight")).isNotEmpty();
+    }
+
+    @Test
+    void shouldNotSplitLargeSingleBlockIntoChunks() {
+        Marker issue = new MarkerBuilder().withLineStart(600).withTitle(MESSAGE).build();
+        var printer = new SourcePrinter(createJenkinsFacade(), new SymbolCache(), Integer.MAX_VALUE,
+                RenderingTiers.DEFAULT, true);
+
+        Document document = Jsoup.parse(printer.render("sample.java",
+                Stream.generate(() -> "line").limit(1_200), issue));
+
+        Element pre = document.getElementsByTag("pre").first();
+        assertThat(pre).isNotNull();
+        assertThat(pre.attr("data-line")).isEqualTo("600");
+        assertThat(pre.children()).first().satisfies(code -> {
+            assertThat(code.tagName()).isEqualTo("code");
+            assertThat(code.classNames()).doesNotContain("prism-chunk", "prism-deferred");
+        });
+        assertThat(pre.getElementsByTag("code")).hasSize(1);
+    }
+
+    @Test
+    void shouldMarkColumnsInSingleBlock() {
+        Marker issue = new MarkerBuilder().withLineStart(2).withColumnStart(1).withColumnEnd(4).build();
+        var printer = new SourcePrinter(createJenkinsFacade(), new SymbolCache(), Integer.MAX_VALUE,
+                RenderingTiers.DEFAULT, true);
+
+        Document document = Jsoup.parse(printer.render("sample.java", Stream.of("line 1", "line 2"), issue));
+
+        assertThat(document.getElementsByTag("pre").attr("data-line")).isEqualTo("2");
+        assertThat(document.getElementsByClass("code-mark").text()).isEqualTo("line");
+    }
+
+    @Test
+    void shouldSplitLargeFilesIntoChunksThatAreHighlightedProgressively() {
+        Marker issue = new MarkerBuilder().withLineStart(600).build();
+        SourcePrinter printer = new SourcePrinter();
+
+        Document document = Jsoup.parse(printer.render("sample.java",
+                Stream.generate(() -> "line").limit(1_200), issue));
+
+        Elements code = document.getElementsByTag("code");
+        assertThat(code).hasSize(5);
+        assertThat(code).extracting(element -> element.attr("data-start"))
+                .containsExactly("1", "501", "", "601", "1101");
+        assertThat(code).extracting(element -> element.hasClass("prism-deferred"))
+                .containsExactly(true, false, false, false, true);
+
+        assertThat(code.get(0).classNames()).doesNotContain("language-java");
+        assertThat(code.get(0).attr("data-classes")).isEqualTo("language-java line-numbers match-braces");
+        assertThat(code.get(0).attr("data-lines")).isEqualTo("500");
+        assertThat(code.get(1).classNames()).contains("language-java", "prism-chunk");
+        assertThat(code.get(1).attr("data-lines")).isEqualTo("99");
+        assertThat(code.get(2).classNames()).contains("highlight").doesNotContain("prism-chunk");
+        assertThat(code.get(4).attr("data-lines")).isEqualTo("100");
+        assertThat(code.text().split(" ")).hasSize(1_200);
+    }
+
+    @Test
+    void shouldStopReadingWhenCharacterBudgetIsExhausted() {
+        Marker marker = new MarkerBuilder().withLineStart(2).withTitle(MESSAGE).build();
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade(), 100);
+
+        Stream<String> endless = Stream.iterate(1, line -> line + 1).map(line -> String.format("line %04d", line));
+        Document document = Jsoup.parse(printer.render("endless.txt", endless, marker));
+
+        assertThat(document.getElementsByTag("code").text()).endsWith("line 0010");
+        assertThat(document.getElementsByClass("prism-truncated").attr("data-next-line")).isEqualTo("11");
+        assertThat(document.getElementsByClass("prism-truncated").text())
+                .isEqualTo("Only the first 10 lines have been loaded.");
+    }
+
+    @Test
+    void shouldStartAtMarkerWhenMarkerIsBeyondCharacterBudget() {
+        Marker marker = new MarkerBuilder().withLineStart(50).withTitle(MESSAGE).build();
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade(), 100);
+
+        Stream<String> endless = Stream.iterate(1, line -> line + 1).map(line -> String.format("line %04d", line));
+        Document document = Jsoup.parse(printer.render("endless.txt", endless, marker));
+
+        assertThat(document.getElementsByClass("prism-skipped").text())
+                .isEqualTo("The first 49 lines have been skipped since they exceed the maximum rendered size.");
+        assertThat(document.getElementsByTag("pre").attr("data-start")).isEqualTo("50");
+        assertThat(document.getElementsByClass("highlight").text()).isEqualTo("line 0050");
+        assertThat(document.getElementsByTag("code").text()).startsWith("line 0050").endsWith("line 0059");
+        assertThat(document.getElementsByClass("prism-truncated").attr("data-next-line")).isEqualTo("60");
+    }
+
+    @Test
+    void shouldStartContentAtMarkerWhenMarkerIsBeyondCharacterBudget() {
+        Marker marker = new MarkerBuilder().withLineStart(50).withTitle(MESSAGE).build();
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade(), 100);
+
+        String content = IntStream.rangeClosed(1, 80)
+                .mapToObj(line -> String.format("line %04d\r\n", line))
+                .collect(Collectors.joining());
+        Document document = Jsoup.parse(printer.render("file.txt", content, true, marker));
+
+        assertThat(document.getElementsByClass("prism-skipped").text())
+                .isEqualTo("The first 49 lines have been skipped since they exceed the maximum rendered size.");
+        assertThat(document.getElementsByTag("pre").attr("data-start")).isEqualTo("50");
+        assertThat(document.getElementsByClass("highlight").text()).isEqualTo("line 0050");
+        assertThat(document.getElementsByTag("code").text()).startsWith("line 0050").endsWith("line 0059");
+        assertThat(document.getElementsByClass("prism-truncated").attr("data-next-line")).isEqualTo("60");
+    }
+
+    @Test
+    void shouldOmitTruncationNoticeIfRangesAreNotAvailable() {
+        Marker marker = new MarkerBuilder().withLineStart(50).withTitle(MESSAGE).build();
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade(), 100);
+
+        Stream<String> endless = Stream.iterate(1, line -> line + 1).map(line -> String.format("line %04d", line));
+        Document document = Jsoup.parse(printer.render("endless.txt", endless, marker, LineDecorations.NONE, false));
+
+        assertThat(document.getElementsByClass("highlight").text()).isEqualTo("line 0050");
+        assertThat(document.getElementsByTag("code").text()).endsWith("line 0059");
+        assertThat(document.getElementsByClass("prism-truncated")).isEmpty();
+    }
+
+    @Test
+    void shouldSkipIncompleteLineOfTruncatedContent() {
+        Marker marker = new MarkerBuilder().build();
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade());
+
+        Document complete = Jsoup.parse(printer.render("file.txt", "one\ntwo\nthr", true, marker));
+        assertThat(complete.getElementsByTag("code").text()).isEqualToIgnoringWhitespace("one two thr");
+        assertThat(complete.getElementsByClass("prism-truncated")).isEmpty();
+
+        Document truncated = Jsoup.parse(printer.render("file.txt", "one\ntwo\nthr", false, marker));
+        assertThat(truncated.getElementsByTag("code").text()).isEqualToIgnoringWhitespace("one two");
+        assertThat(truncated.getElementsByClass("prism-truncated").attr("data-next-line")).isEqualTo("3");
+    }
+
+    @Test
+    void shouldRenderRangeOfLines() {
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade(), 100);
+
+        Stream<String> endless = Stream.iterate(1, line -> line + 1).map(line -> String.format("line %04d", line));
+        Document document = Jsoup.parse(printer.renderRange("endless.txt", endless, 11));
+
+        assertThat(document.getElementsByTag("pre").attr("data-start")).isEqualTo("11");
+        assertThat(document.getElementsByTag("code").text()).startsWith("line 0011").endsWith("line 0020");
+        assertThat(document.getElementsByClass("prism-truncated").attr("data-next-line")).isEqualTo("21");
+
+        Document last = Jsoup.parse(printer.renderRange("file.txt", Stream.of("1", "2", "3"), 2));
+        assertThat(last.getElementsByTag("code").text()).isEqualToIgnoringWhitespace("23");
+        assertThat(last.getElementsByClass("prism-truncated")).isEmpty();
+    }
+
+    @Test
+    void shouldSplitLargeRangesIntoChunks() {
+        SourcePrinter printer = new SourcePrinter();
+
+        Document document = Jsoup.parse(printer.renderRange("sample.java",
+                Stream.generate(() -> "line").limit(1_800), 601));
+
+        Elements code = document.getElementsByTag("code");
+        assertThat(code).extracting(element -> element.attr("data-start"))
+                .containsExactly("601", "1101", "1601");
+        assertThat(code).extracting(element -> element.hasClass("prism-deferred"))
+                .containsExactly(false, true, true);
+        assertThat(code.get(2).attr("data-lines")).isEqualTo("200");
+        assertThat(code.text().split(" ")).hasSize(1_200);
+    }
+
+    @Test
+    void shouldNotSplitChunksWithinMultiLineTokens() {
+        SourcePrinter printer = new SourcePrinter();
+
+        var lines = new ArrayList<String>();
+        lines.addAll(Collections.nCopies(497, "String a = \"/*\"; // /*"));
+        lines.add("/*");
+        lines.addAll(Collections.nCopies(8, " * comment"));
+        lines.add(" */");
+        lines.add("String b = \"\"\"");
+        lines.addAll(Collections.nCopies(500, "    text"));
+        lines.add("    \"\"\";");
+        lines.addAll(Collections.nCopies(191, "int c;"));
+        Document document = Jsoup.parse(printer.renderRange("sample.java", lines.stream(), 1));
+
+        Elements code = document.getElementsByTag("code");
+        assertThat(code).extracting(element -> element.attr("data-start"))
+                .containsExactly("1", "508", "1010");
+        assertThat(code).extracting(element -> element.attr("data-lines"))
+                .containsExactly("507", "502", "191");
+        assertThat(code.get(0).text()).endsWith("*/");
+        assertThat(code.get(1).text()).endsWith("\"\"\";");
+
+        var unterminated = Stream.concat(Stream.of("/*"), Stream.generate(() -> " * comment").limit(1_199));
+        Elements split = Jsoup.parse(printer.renderRange("sample.java", unterminated, 1)).getElementsByTag("code");
+        assertThat(split).extracting(element -> element.attr("data-lines"))
+                .containsExactly("1000", "200");
+    }
+
+    @Test
+    void shouldDecorateLinesWithMergedRuns() {
+        Marker marker = new MarkerBuilder().withLineStart(3).withTitle(MESSAGE).build();
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade());
+        var decorations = LineDecorations.fromHits(new int[] {1, 2, 0, -1, 0, 0}, "missed", "covered");
+
+        Document document = Jsoup.parse(printer.render(FILE_NAME, "1\n2\n3\n4\n5\n6\n", true, marker,
+                decorations));
+
+        Elements covered = document.getElementsByClass("covered");
+        assertThat(covered).hasSize(1);
+        assertThat(covered.first().wholeText()).isEqualTo("1\n2\n");
+        Elements missed = document.getElementsByClass("missed");
+        assertThat(missed).hasSize(2);
+        assertThat(missed.get(0).wholeText()).isEqualTo("3\n");
+        assertThat(missed.get(1).wholeText()).isEqualTo("5\n6\n");
+        assertThat(document.getElementsByClass("prism-decoration")).hasSize(3);
+        assertThat(document.getElementsByTag("code").text()).isEqualToIgnoringWhitespace("123456");
+    }
+
+    @Test
+    void shouldDecorateRangeOfLines() {
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade());
+        var lines = new BitSet();
+        lines.set(3);
+
+        Document document = Jsoup.parse(printer.renderRange(FILE_NAME, Stream.of("1", "2", "3", "4"), 2,
+                LineDecorations.fromLines(lines, "hot")));
+
+        assertThat(document.getElementsByClass("hot")).singleElement()
+                .extracting(Element::wholeText).isEqualTo("3\n");
+    }
+
+    @Test
+    void shouldRenderMinifiedFilesWithoutSyntaxHighlighting() {
+        Marker marker = new MarkerBuilder().withLineStart(2).withTitle(MESSAGE).build();
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade());
+
+        String minified = "var a=1;".repeat(1_000);
+        Document document = Jsoup.parse(printer.render("minified.js",
+                Stream.of("// header", minified, "// footer"), marker));
+
+        Elements code = document.getElementsByTag("code");
+        assertThat(code).hasSize(3).allSatisfy(element -> {
+            assertThat(element.classNames()).contains("prism-long-lines")
+                    .doesNotContain("language-javascript", "line-numbers", "match-braces");
+        });
+        assertThat(code.get(1).classNames()).contains("highlight");
+        assertThat(document.getElementsByClass("prism-long-line")).hasSize(1);
+        assertThat(document.select(".prism-long-line > summary").text()).isEqualTo("... 7000 more characters");
+        assertThat(code.get(1).text()).isEqualToIgnoringWhitespace(minified.substring(0, 1_000)
+                + "... 7000 more characters"
+                + minified.substring(1_000));
+        assertThat(document.getElementsByClass("analysis-warning-title").text()).isEqualTo(MESSAGE);
+    }
+
+    @Test
+    void shouldStopReadingAfterLastLineOfSnippet() {
+        Marker marker = new MarkerBuilder().withLineStart(10).withTitle(MESSAGE).build();
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade());
+
+        Stream<String> endless = Stream.iterate(1, line -> line + 1).map(line -> "int line" + line + ";");
+        Document document = Jsoup.parse(printer.renderSnippet("Endless.java", endless, marker, 2));
+
+        assertThat(document.getElementsByTag("code").text())
+                .isEqualToIgnoringWhitespace("int line8; int line9; int line10; int line11; int line12;");
+        assertThat(document.getElementsByClass("analysis-warning")).isEmpty();
+    }
+
+    @Test
+    void shouldRenderDecodedContentLikeStreamOfLines() {
+        Marker marker = new MarkerBuilder().withLineStart(7).withLineEnd(9).withTitle(MESSAGE).build();
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade());
+
+        String content = toString("format-java.txt");
+        String expected = printer.render(FILE_NAME, asStream("format-java.txt"), marker);
+
+        assertThat(printer.render(FILE_NAME, content, marker)).isEqualTo(expected);
+        assertThat(printer.render(FILE_NAME, content.replace("\n", "\r\n"), marker)).isEqualTo(expected);
+        assertThat(printer.render(FILE_NAME, content.replace("\n", "\r"), marker)).isEqualTo(expected);
+    }
+
+    @Test
+    void shouldRenderOnlyChangedHunksOfDiff() {
+        List<String> oldVersion = new ArrayList<>();
+        for (int line = 1; line <= 30; line++) {
+            oldVersion.add("int a" + line + " = " + line + ";");
+        }
+        List<String> newVersion = new ArrayList<>(oldVersion);
+        newVersion.set(14, "int changed = 15;");
+        newVersion.add(20, "int inserted = 0;");
+
+        Marker marker = new MarkerBuilder().withLineStart(21).withTitle(MESSAGE).build();
+        SourcePrinter printer = new SourcePrinter(createJenkinsFacade());
+
+        Document document = Jsoup.parse(printer.renderDiff("Diff.java", oldVersion, newVersion, marker, 3));
+
+        assertThat(document.getElementsByClass("diff-hunk-header").eachText())
+                .containsExactly("@@ -12,12 +12,13 @@");
+        assertThat(document.getElementsByClass("diff-collapsed")).hasSize(2);
+        assertThat(document.getElementsByClass("diff-deleted").text()).isEqualTo("int a15 = 15;");
+        assertThat(document.getElementsByClass("diff-inserted").eachText())
+                .containsExactly("int changed = 15;", "int inserted = 0;");
+        assertThat(document.getElementsByClass("diff-marked").text()).isEqualTo("int inserted = 0;");
+        assertThat(document.getElementsByClass("diff-marked").attr("data-gutter")).contains("21 +");
+        assertThat(document.getElementsByClass("analysis-warning-title").text()).isEqualTo(MESSAGE);
+        assertThat(document.getElementsByTag("code").first()).satisfies(
+                code -> assertThat(code.classNames()).contains("language-java"));
+    }
+
+    @Test
+    void shouldSelectFeaturesOfDiffUsingRenderingTiers() {
+        List<String> oldVersion = new ArrayList<>();
+        for (int line = 1; line <= 30; line++) {
+            oldVersion.add("int a" + line + " = " + line + ";");
+        }
+        List<String> newVersion = new ArrayList<>(oldVersion);
+        newVersion.set(14, "int changed = 15;");
+        Marker marker = new MarkerBuilder().withLineStart(15).build();
+
+        var small = new RenderingTiers(Limit.of(5, 100), Limit.of(5, 100), Limit.of(10, 100));
+        var plain = Jsoup.parse(new SourcePrinter(createJenkinsFacade(), new SymbolCache(), Integer.MAX_VALUE, small)
+                .renderDiff("Diff.java", oldVersion, newVersion, marker, 3));
+        assertThat(plain.getElementsByTag("code")).isNotEmpty()
+                .allSatisfy(code -> assertThat(code.classNames()).isEmpty());
+
+        var large = new RenderingTiers(Limit.of(5, 100), Limit.of(5, 100), Limit.of(100, 100));
+        var highlighted = Jsoup.parse(new SourcePrinter(createJenkinsFacade(), new SymbolCache(), Integer.MAX_VALUE,
+                large).renderDiff("Diff.java", oldVersion, newVersion, marker, 3));
+        assertThat(highlighted.getElementsByTag("code")).isNotEmpty()
+                .allSatisfy(code -> assertThat(code.classNames()).containsExactly("language-java"));
+    }
+
+    @Test
+    void shouldSkipHunksOfDiffThatExceedCharacterBudget() {
+        List<String> oldVersion = new ArrayList<>();
+        for (int line = 1; line <= 100; line++) {
+            oldVersion.add("int a" + line + " = " + line + ";");
+        }
+        List<String> newVersion = new ArrayList<>(oldVersion);
+        newVersion.set(9, "int changed = 10;");
+        newVersion.set(89, "int changed = 90;");
+        Marker marker = new MarkerBuilder().withLineStart(10).build();
+
+        var printer = new SourcePrinter(createJenkinsFacade(), new SymbolCache(), 80);
+        Document document = Jsoup.parse(printer.renderDiff("Diff.java", oldVersion, newVersion, marker, 3, true));
+
+        assertThat(document.getElementsByClass("diff-hunk-header")).hasSize(1);
+        assertThat(document.getElementsByClass("diff-inserted").eachText()).containsExactly("int changed = 10;");
+        assertThat(document.getElementsByClass("prism-skipped")).hasSize(2);
+    }
+
+    @Test
+    void shouldLoadCollapseSymbolOnlyOnce() {
+        JenkinsFacade jenkins = createJenkinsFacade();
+        when(jenkins.getSymbol(any())).thenReturn("<svg class=\"analysis-collapse-icon\"></svg>");
+        var cache = new SymbolCache();
+        Marker issue = new MarkerBuilder().withLineStart(2).withTitle(MESSAGE).withDescription(DESCRIPTION).build();
+
+        SourcePrinter printer = new SourcePrinter(jenkins, cache, Integer.MAX_VALUE);
+        for (int i = 0; i < 3; i++) {
+            Document document = Jsoup.parse(printer.render(FILE_NAME, asStream("format-java.txt"), issue));
+            assertThat(document.getElementsByTag("svg").hasClass("analysis-collapse-icon")).isTrue();
+        }
+
+        verify(jenkins, times(1)).getSymbol(any());
+        assertThat(cache.size()).isOne();
     }
 
     private JenkinsFacade createJenkinsFacade() {
@@ -376,6 +866,32 @@ class SourcePrinterTest extends ResourceTest {
                     .contains("text that could be code");
         }
 
+        @Test
+        void shouldEscapeTextAndReplacePlaceHolders() {
+            var marker = new SourcePrinter.ColumnMarker("MARK");
+            var html = HtmlWriter.create();
+
+            var marked = marker.markColumns("if (a<b && c) {", 5, 12);
+            marker.appendEscaped(html, marked, 0, marked.length());
+
+            assertThat(html.toHtml()).isEqualTo("if (<span class='code-mark'>a&lt;b &amp;&amp; c</span>) {");
+        }
+
+        @Test
+        void shouldReplaceOverlayPlaceHolderOnlyWithinRange() {
+            var marker = new SourcePrinter.ColumnMarker("MARK");
+            var text = "a<b\n" + marker.markOverlay() + "c>d\n";
+            int overlay = text.indexOf(marker.markOverlay());
+
+            var first = HtmlWriter.create();
+            marker.appendEscaped(first, text, 0, overlay + 3);
+            assertThat(first.toHtml()).isEqualTo("a&lt;b\n" + marker.markOverlay().substring(0, 3));
+
+            var all = HtmlWriter.create();
+            marker.appendEscaped(all, text, 0, text.length());
+            assertThat(all.toHtml()).isEqualTo("a&lt;b\n<span class='analysis-overlay-spacer'></span>c&gt;d\n");
+        }
+
         @Test
         void givenColumnStartIsAfterLineEndThenDoNotMark() {
             assertThat(new SourcePrinter.ColumnMarker("MARK")
@@ -0,0 +1,59 @@
+package io.jenkins.plugins.prism;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Tests the class {@link SymbolCache}.
+ *
+ * @author Ullrich Hafner
+ */
+class SymbolCacheTest {
+    private static final String SVG = "<svg></svg>";
+
+    @Test
+    void shouldLoadEachSymbolOnlyOnce() {
+        var cache = new SymbolCache();
+        var loaded = new AtomicInteger();
+
+        assertThat(cache.get("symbol", "plugin", "icon-md", () -> load(loaded))).isEqualTo(SVG);
+        assertThat(cache.get("symbol", "plugin", "icon-md", () -> load(loaded))).isEqualTo(SVG);
+        assertThat(loaded).hasValue(1);
+
+        assertThat(cache.get("symbol", "plugin", "icon-lg", () -> load(loaded))).isEqualTo(SVG);
+        assertThat(cache.get("symbol", "other", "icon-md", () -> load(loaded))).isEqualTo(SVG);
+        assertThat(loaded).hasValue(3);
+        assertThat(cache.size()).isEqualTo(3);
+
+        cache.clear();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get("symbol", "plugin", "icon-md", () -> load(loaded))).isEqualTo(SVG);
+        assertThat(loaded).hasValue(4);
+    }
+
+    @Test
+    void shouldNotCacheMissingSymbols() {
+        var cache = new SymbolCache();
+
+        assertThat(cache.get("missing", "plugin", "icon-md", () -> null)).isEmpty();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedSymbols() {
+        var cache = new SymbolCache();
+        for (int i = 0; i < 1000; i++) {
+            cache.get("symbol-" + i, "plugin", "icon-md", () -> SVG);
+        }
+
+        assertThat(cache.size()).isEqualTo(256);
+    }
+
+    private String load(final AtomicInteger loaded) {
+        loaded.incrementAndGet();
+        return SVG;
+    }
+}